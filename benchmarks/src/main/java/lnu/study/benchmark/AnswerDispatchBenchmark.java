@@ -0,0 +1,115 @@
+package lnu.study.benchmark;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lnu.study.dto.AudioToSendDTO;
+import lnu.study.dto.DocumentToSendDTO;
+import lnu.study.dto.PhotoToSendDTO;
+import lnu.study.dto.VideoToSendDTO;
+import lnu.study.utils.TypeIdRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Вартість декодування і вибору обробника для однієї відповіді з ANSWER_MESSAGE:
+ * колишній ланцюжок typeId.equals(...) з objectMapper.readValue і копією всього тіла для прев'ю
+ * проти TypeIdRegistry, через який AnswerConsumerImpl обробляє відповіді.
+ * Запуск: mvn -pl benchmarks -am package, потім java -jar benchmarks/target/benchmarks.jar AnswerDispatch
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AnswerDispatchBenchmark {
+
+    private static final String UNKNOWN_TYPE_ID = "lnu.study.dto.UnknownDTO";
+
+    // Перший, середній і останній тип у колишньому ланцюжку, а також невідомий тип з вкладенням у тілі
+    @Param({"SendMessage", "DocumentToSendDTO", "VideoToSendDTO", "unknown"})
+    private String type;
+
+    private ObjectMapper objectMapper;
+    private TypeIdRegistry<Void> registry;
+    private String typeId;
+    private byte[] body;
+    // Куди обробники реєстру кладуть декодоване повідомлення; бенчмарк повертає його JMH
+    private Object decoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        // Так само, як бін ObjectMapper у dispatcher
+        objectMapper = new ObjectMapper();
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+        registry = new TypeIdRegistry<Void>(objectMapper)
+                .register(SendMessage.class, this::accept)
+                .register(PhotoToSendDTO.class, this::accept)
+                .register(DocumentToSendDTO.class, this::accept)
+                .register(AudioToSendDTO.class, this::accept)
+                .register(VideoToSendDTO.class, this::accept);
+
+        Object payload = switch (type) {
+            case "SendMessage" -> new SendMessage("123456789", "Файл успішно конвертовано");
+            case "DocumentToSendDTO" -> DocumentToSendDTO.builder()
+                    .chatId("123456789").fileName("report.pdf").caption("Конвертовано в PDF")
+                    .blobRef("2b7e1516-28ae-d2a6-abf7-158809cf4f3c")
+                    .build();
+            case "VideoToSendDTO" -> VideoToSendDTO.builder()
+                    .chatId("123456789").fileName("clip.mp4").duration(12).width(1280).height(720)
+                    .blobRef("2b7e1516-28ae-d2a6-abf7-158809cf4f3c")
+                    .build();
+            // Вкладення, передане байтами в тілі: саме такі повідомлення старий код копіював цілком заради прев'ю
+            case "unknown" -> DocumentToSendDTO.builder()
+                    .chatId("123456789").fileName("scan.pdf").documentBytes(new byte[256 * 1024])
+                    .build();
+            default -> throw new IllegalArgumentException("Unknown benchmark type: " + type);
+        };
+        typeId = "unknown".equals(type) ? UNKNOWN_TYPE_ID : payload.getClass().getName();
+        body = objectMapper.writeValueAsBytes(payload);
+    }
+
+    @Benchmark
+    public Object equalsChain() throws IOException {
+        if (typeId.equals(SendMessage.class.getName())) {
+            return objectMapper.readValue(body, SendMessage.class);
+        } else if (typeId.equals(PhotoToSendDTO.class.getName())) {
+            return objectMapper.readValue(body, PhotoToSendDTO.class);
+        } else if (typeId.equals(DocumentToSendDTO.class.getName())) {
+            return objectMapper.readValue(body, DocumentToSendDTO.class);
+        } else if (typeId.equals(AudioToSendDTO.class.getName())) {
+            return objectMapper.readValue(body, AudioToSendDTO.class);
+        } else if (typeId.equals(VideoToSendDTO.class.getName())) {
+            return objectMapper.readValue(body, VideoToSendDTO.class);
+        }
+        // Аргумент log.warn обчислювався завжди: усе тіло копіювалося в String
+        return new String(body).substring(0, Math.min(100, body.length));
+    }
+
+    @Benchmark
+    public Object typeIdRegistry() throws IOException {
+        if (!registry.dispatch(typeId, body, null)) {
+            // Рівень WARN увімкнений, тож toString() викликається, але декодує лише перші 100 байтів
+            return TypeIdRegistry.preview(body).toString();
+        }
+        return decoded;
+    }
+
+    private void accept(Object message, Void context) {
+        decoded = message;
+    }
+}
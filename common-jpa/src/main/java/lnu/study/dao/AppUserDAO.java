@@ -1,12 +1,22 @@
 package lnu.study.dao;
 
 import lnu.study.entity.AppUser;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface AppUserDAO extends JpaRepository<AppUser, Long> {
+    // Канал Postgres NOTIFY про зміни користувача (payload "<джерело>:<telegramUserId>") для кешів node
+    String CHANGE_CHANNEL = "app_user_changed";
+
     Optional<AppUser> findByTelegramUserId(Long Id);
     Optional<AppUser> findById(Long Id);
     Optional<AppUser> findByEmail(String Id);
+
+    // Keyset-пагінація для розсилок: наступна сторінка починається після останнього id, без OFFSET
+    List<AppUser> findByIdGreaterThanAndTelegramUserIdIsNotNullOrderByIdAsc(Long id, Pageable limit);
+
+    long countByTelegramUserIdIsNotNull();
 }
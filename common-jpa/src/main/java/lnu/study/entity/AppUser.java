@@ -32,8 +32,4 @@ public class AppUser {
     @Enumerated(EnumType.STRING)
     private UserState state;
 
-    private String pendingFileId;
-    private String pendingOriginalFileName;
-    private String pendingFileType;
-
 }
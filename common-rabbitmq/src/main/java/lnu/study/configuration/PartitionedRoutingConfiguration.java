@@ -0,0 +1,45 @@
+package lnu.study.configuration;
+
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.CustomExchange;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static lnu.study.model.RabbitQueue.UPDATE_PARTITION_EXCHANGE;
+import static lnu.study.model.RabbitQueue.partitionQueue;
+
+/**
+ * Топологія для rabbit.routing.mode=PARTITIONED. Потребує плагіна rabbitmq_consistent_hash_exchange.
+ */
+@Configuration
+@ConditionalOnProperty(name = "rabbit.routing.mode", havingValue = "PARTITIONED")
+public class PartitionedRoutingConfiguration {
+
+    @Bean
+    public Declarables partitionedUpdateDeclarables(@Value("${rabbit.partitions.count:4}") int partitions) {
+        CustomExchange exchange = new CustomExchange(UPDATE_PARTITION_EXCHANGE, "x-consistent-hash", true, false);
+        List<Declarable> declarables = new ArrayList<>();
+        declarables.add(exchange);
+        for (int i = 0; i < partitions; i++) {
+            // Single active consumer: лише один споживач (серед усіх інстансів node) читає розділ
+            Queue queue = QueueBuilder.durable(partitionQueue(i))
+                    .singleActiveConsumer()
+                    .build();
+            // Для consistent-hash routing key прив'язки - це вага розділу
+            Binding binding = BindingBuilder.bind(queue).to(exchange).with("1").noargs();
+            declarables.add(queue);
+            declarables.add(binding);
+        }
+        return new Declarables(declarables);
+    }
+}
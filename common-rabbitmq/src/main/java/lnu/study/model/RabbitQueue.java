@@ -20,5 +20,30 @@ public class RabbitQueue {
 
     public static final String AUDIO_MESSAGE_UPDATE = "audio_message_update";
 
+    // Альбом (спільний media_group_id), зібраний dispatcher в одне повідомлення зі списком Update
+    public static final String MEDIA_GROUP_UPDATE = "media_group_update";
+
+    // Масові розсилки: окрема черга, щоб не затримувати відповіді користувачам у ANSWER_MESSAGE
+    public static final String BROADCAST_MESSAGE = "broadcast_message";
+
+    // Режим PARTITIONED: x-consistent-hash обмінник за chatId і N черг-розділів
+    public static final String UPDATE_PARTITION_EXCHANGE = "update_partition_exchange";
+
+    public static final String UPDATE_PARTITION_QUEUE_PREFIX = "update_partition_";
+
+    // Заголовок з назвою "типової" черги, щоб node знав, яким методом обробляти оновлення
+    public static final String UPDATE_TYPE_HEADER = "x-update-type";
+
+    public static final String UPDATE_ID_HEADER = "x-update-id";
+
+    // Заголовок з chatId одержувача відповіді: dispatcher обробляє відповіді різних чатів паралельно
+    public static final String CHAT_ID_HEADER = "x-chat-id";
+
+    // Dispatcher уже відповів на оновлення у відповіді вебхука: node лише зберігає його, без відповіді
+    public static final String ANSWERED_INLINE_HEADER = "x-answered-inline";
+
+    public static String partitionQueue(int partition) {
+        return UPDATE_PARTITION_QUEUE_PREFIX + partition;
+    }
 
 }
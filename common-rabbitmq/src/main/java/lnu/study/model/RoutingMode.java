@@ -0,0 +1,8 @@
+package lnu.study.model;
+
+public enum RoutingMode {
+    // Окрема черга для кожного типу оновлень (початкова схема)
+    QUEUE_PER_TYPE,
+    // Всі оновлення одного чату потрапляють в одну чергу-розділ, що зберігає їх порядок
+    PARTITIONED
+}
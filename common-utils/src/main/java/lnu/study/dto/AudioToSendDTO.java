@@ -14,5 +14,8 @@ public class AudioToSendDTO {
     private byte[] audioBytes;
     private String fileName;
     private String caption; // Опціонально, наприклад, "Сконвертовано: original_name.mp3"
-
-}
\ No newline at end of file
+    // Посилання на вкладення в BlobStore; якщо задане, байти не передаються через RabbitMQ
+    private String blobRef;
+    // Підписане посилання rest-service, за яким Telegram сам завантажує файл; вкладення за blobRef - запасний варіант
+    private String fileUrl;
+}
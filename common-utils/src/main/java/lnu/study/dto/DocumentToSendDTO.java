@@ -12,4 +12,8 @@ public class DocumentToSendDTO {
     private byte[] documentBytes;
     private String fileName;
     private String caption;
-}
\ No newline at end of file
+    // Посилання на вкладення в BlobStore; якщо задане, байти не передаються через RabbitMQ
+    private String blobRef;
+    // Підписане посилання rest-service, за яким Telegram сам завантажує файл; вкладення за blobRef - запасний варіант
+    private String fileUrl;
+}
@@ -0,0 +1,17 @@
+package lnu.study.dto;
+
+import lombok.*;
+
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ProgressMessageDTO {
+    private String chatId;
+    // Усі статуси однієї операції (конвертація, архів) показуються в одному повідомленні, яке dispatcher редагує
+    private String operationId;
+    private String text;
+    // Останній статус операції: після нього dispatcher забуває про повідомлення
+    private boolean done;
+}
@@ -17,5 +17,8 @@ public class VideoToSendDTO {
     private Integer duration;
     private Integer width;
     private Integer height;
-
-}
\ No newline at end of file
+    // Посилання на вкладення в BlobStore; якщо задане, байти не передаються через RabbitMQ
+    private String blobRef;
+    // Підписане посилання rest-service, за яким Telegram сам завантажує файл; вкладення за blobRef - запасний варіант
+    private String fileUrl;
+}
@@ -0,0 +1,95 @@
+package lnu.study.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Спільне сховище вкладень (claim-check): node записує файл і передає через RabbitMQ лише посилання,
+ * dispatcher читає файл за посиланням і видаляє його після відправки.
+ */
+public class BlobStore {
+
+    private static final Pattern REF_PATTERN = Pattern.compile("[0-9a-f\\-]{36}");
+
+    private final Path root;
+
+    // Каталог створюється під час першого запису: сервіс з вимкненими claim-check і посиланнями його не потребує
+    public BlobStore(String directory) {
+        this.root = Path.of(directory).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Записує вміст у сховище. Файл з'являється атомарно, тому читач не побачить його недописаним.
+     * @return посилання на вкладення
+     */
+    public String put(byte[] content) throws IOException {
+        String ref = UUID.randomUUID().toString();
+        Files.createDirectories(root);
+        Path tmp = root.resolve(ref + ".tmp");
+        Files.write(tmp, content);
+        Files.move(tmp, root.resolve(ref), StandardCopyOption.ATOMIC_MOVE);
+        return ref;
+    }
+
+    public File resolve(String ref) {
+        if (ref == null || !REF_PATTERN.matcher(ref).matches()) {
+            throw new IllegalArgumentException("Invalid blob reference: " + ref);
+        }
+        return root.resolve(ref).toFile();
+    }
+
+    /**
+     * Видаляє файл, якщо він належить сховищу. Інші файли не чіпає.
+     */
+    public boolean deleteIfOwned(File file) {
+        if (file == null) {
+            return false;
+        }
+        Path path = file.toPath().toAbsolutePath().normalize();
+        if (!root.equals(path.getParent())) {
+            return false;
+        }
+        try {
+            return Files.deleteIfExists(path);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Прибирає вкладення, які так і не були відправлені (наприклад, після остаточної помилки Bot API).
+     * @return кількість видалених файлів
+     */
+    public int deleteOlderThan(Duration age) throws IOException {
+        Instant threshold = Instant.now().minus(age);
+        int deleted = 0;
+        if (!Files.isDirectory(root)) {
+            return deleted;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(root)) {
+            for (Path file : files) {
+                FileTime modified;
+                try {
+                    modified = Files.getLastModifiedTime(file);
+                } catch (NoSuchFileException e) {
+                    // Файл уже видалив dispatcher після відправки
+                    continue;
+                }
+                if (modified.toInstant().isBefore(threshold) && Files.deleteIfExists(file)) {
+                    deleted++;
+                }
+            }
+        }
+        return deleted;
+    }
+}
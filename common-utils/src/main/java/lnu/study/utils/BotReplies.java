@@ -0,0 +1,18 @@
+package lnu.study.utils;
+
+/**
+ * Тексти відповідей, які не залежать від стану користувача. Спільні для node і dispatcher:
+ * швидкий шлях dispatcher відповідає ними без node, тож тексти мають збігатися.
+ */
+public class BotReplies {
+
+    public static final String HELP = "Доступні команди:\n"
+            + "/help - допомога\n"
+            + "/cancel - скасувати поточну дію\n"
+            + "/registration - реєстрація\n"
+            + "/convert_file - увімкнути режим конвертації файлів\n"
+            + "/create_archive - увімкнути режим архіватора\n"
+            + "/generate_link - перейти в режим файлообмінника (вимкнути конвертацію)";
+
+    public static final String UNSUPPORTED_MESSAGE_TYPE = "Unsupported message type!";
+}
@@ -0,0 +1,64 @@
+package lnu.study.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Обробники повідомлень RabbitMQ за заголовком __TypeId__. Для кожного типу один раз створюється
+ * ObjectReader, тож тіло декодується прямо з байтів без пошуку десеріалізатора на кожне повідомлення.
+ * Типи реєструються до початку споживання, далі реєстр лише читається.
+ * @param <C> контекст повідомлення, який передається обробнику разом із декодованим тілом
+ */
+public class TypeIdRegistry<C> {
+
+    private final ObjectMapper objectMapper;
+    private final Map<String, BodyHandler<C>> handlers = new HashMap<>();
+
+    public TypeIdRegistry(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    // ObjectReader потокобезпечний і вже містить розв'язаний десеріалізатор
+    public <T> TypeIdRegistry<C> register(Class<T> type, BiConsumer<T, C> handler) {
+        ObjectReader reader = objectMapper.readerFor(type);
+        handlers.put(type.getName(), (body, context) -> handler.accept(reader.readValue(body), context));
+        return this;
+    }
+
+    /**
+     * @return false, якщо для typeId немає обробника
+     */
+    public boolean dispatch(String typeId, byte[] body, C context) throws IOException {
+        BodyHandler<C> handler = handlers.get(typeId);
+        if (handler == null) {
+            return false;
+        }
+        handler.handle(body, context);
+        return true;
+    }
+
+    /**
+     * Прев'ю тіла для логів: декодує не більше 100 байтів і лише тоді, коли рівень логування його виводить.
+     */
+    public static Object preview(byte[] body) {
+        return new BodyPreview(body);
+    }
+
+    @FunctionalInterface
+    private interface BodyHandler<C> {
+        void handle(byte[] body, C context) throws IOException;
+    }
+
+    private record BodyPreview(byte[] body) {
+        @Override
+        public String toString() {
+            return new String(body, 0, Math.min(100, body.length), StandardCharsets.UTF_8);
+        }
+    }
+}
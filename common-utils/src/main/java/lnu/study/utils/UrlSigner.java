@@ -0,0 +1,62 @@
+package lnu.study.utils;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * Підпис короткоживучих посилань на вкладення: node підписує посилання, rest-service перевіряє підпис і термін дії.
+ */
+public class UrlSigner {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+
+    public UrlSigner(String secret) {
+        this.key = secret == null || secret.isBlank()
+                ? null
+                : new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+    }
+
+    // Без секрету посилання не видаються і не приймаються
+    public boolean isConfigured() {
+        return key != null;
+    }
+
+    public String sign(String ref, long expiresAtEpochSeconds) {
+        if (key == null) {
+            throw new IllegalStateException("URL signing secret is not configured");
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(mac(ref + ":" + expiresAtEpochSeconds));
+    }
+
+    public boolean verify(String ref, long expiresAtEpochSeconds, String signature, long nowEpochSeconds) {
+        if (key == null || ref == null || signature == null || nowEpochSeconds > expiresAtEpochSeconds) {
+            return false;
+        }
+        byte[] expected = mac(ref + ":" + expiresAtEpochSeconds);
+        byte[] actual;
+        try {
+            actual = Base64.getUrlDecoder().decode(signature);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        // Порівняння за сталий час, щоб підпис не можна було підібрати за часом відповіді
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    private byte[] mac(String data) {
+        try {
+            // Mac не потокобезпечний, тому створюється на кожен підпис
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot compute " + ALGORITHM, e);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package lnu.study.configuration;
+
+import lnu.study.utils.BlobStore;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@Log4j2
+@Configuration
+public class BlobStoreConfiguration {
+
+    @Bean
+    public BlobStore blobStore(@Value("${answers.blob.dir}") String blobDir) {
+        return new BlobStore(blobDir);
+    }
+
+    // Вкладення, які не вдалося відправити, інакше залишились би в каталозі назавжди
+    @Bean(destroyMethod = "shutdownNow")
+    public ScheduledExecutorService blobSweeper(BlobStore blobStore,
+                                                @Value("${answers.blob.ttl-hours:24}") long ttlHours) {
+        ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "blob-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(() -> {
+            try {
+                int deleted = blobStore.deleteOlderThan(Duration.ofHours(ttlHours));
+                if (deleted > 0) {
+                    log.warn("Deleted {} unsent blobs older than {} h", deleted, ttlHours);
+                }
+            } catch (IOException e) {
+                log.error("Blob sweep failed: {}", e.getMessage(), e);
+            }
+        }, 1, 60, TimeUnit.MINUTES);
+        return sweeper;
+    }
+}
@@ -5,6 +5,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import static lnu.study.model.RabbitQueue.ANSWER_CALLBACK_QUEUE;
@@ -29,37 +30,55 @@ public class RabbitConfiguration {
     }
 
     @Bean
-    public Queue textMessageQueue() {
-        return new Queue(TEXT_MESSAGE_UPDATE);
+    public Queue answerMessageQueue() {
+        return new Queue(ANSWER_MESSAGE);
     }
 
     @Bean
-    public Queue docMessageQueue() {
-        return new Queue(DOC_MESSAGE_UPDATE);
+    public Queue answerCallbackQueueListener() { // Назва методу може бути іншою, головне - назва черги
+        return new Queue(ANSWER_CALLBACK_QUEUE);
     }
 
     @Bean
-    public Queue photoMessageQueue() {
-        return new Queue(PHOTO_MESSAGE_UPDATE);
+    public Queue broadcastMessageQueue() {
+        return new Queue(BROADCAST_MESSAGE);
     }
 
-    @Bean
-    public Queue answerMessageQueue() {
-        return new Queue(ANSWER_MESSAGE);
-    }
+    /**
+     * Черги за типом оновлення потрібні лише для rabbit.routing.mode=QUEUE_PER_TYPE;
+     * у режимі PARTITIONED оновлення йдуть через розділи PartitionedRoutingConfiguration.
+     */
+    @Configuration
+    @ConditionalOnProperty(name = "rabbit.routing.mode", havingValue = "QUEUE_PER_TYPE", matchIfMissing = true)
+    static class QueuePerTypeConfiguration {
+        @Bean
+        public Queue textMessageQueue() {
+            return new Queue(TEXT_MESSAGE_UPDATE);
+        }
 
-    @Bean
-    public Queue voiceMessageQueue() {
-        return new Queue(VOICE_MESSAGE_UPDATE);
-    }
+        @Bean
+        public Queue docMessageQueue() {
+            return new Queue(DOC_MESSAGE_UPDATE);
+        }
 
-    @Bean
-    public Queue answerCallbackQueueListener() { // Назва методу може бути іншою, головне - назва черги
-        return new Queue(ANSWER_CALLBACK_QUEUE);
-    }
+        @Bean
+        public Queue photoMessageQueue() {
+            return new Queue(PHOTO_MESSAGE_UPDATE);
+        }
 
-    @Bean
-    public Queue audioMessageUpdateQueue() {
-        return new Queue(AUDIO_MESSAGE_UPDATE);
+        @Bean
+        public Queue voiceMessageQueue() {
+            return new Queue(VOICE_MESSAGE_UPDATE);
+        }
+
+        @Bean
+        public Queue audioMessageUpdateQueue() {
+            return new Queue(AUDIO_MESSAGE_UPDATE);
+        }
+
+        @Bean
+        public Queue mediaGroupUpdateQueue() {
+            return new Queue(MEDIA_GROUP_UPDATE);
+        }
     }
-}
\ No newline at end of file
+}
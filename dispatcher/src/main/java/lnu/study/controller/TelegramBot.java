@@ -2,19 +2,32 @@ package lnu.study.controller;
 
 import jakarta.annotation.PostConstruct;
 import lnu.study.dto.VideoToSendDTO;
+import lnu.study.service.FileIdCache;
+import lnu.study.service.LeaderElection;
+import lnu.study.service.OutboundSendScheduler;
+import lnu.study.service.enums.IngestionMode;
+import lnu.study.service.enums.SendOutcome;
+import lnu.study.service.enums.SendPriority;
+import lnu.study.utils.BlobStore;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.bots.TelegramWebhookBot;
 import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.commands.GetMyCommands;
 import org.telegram.telegrambots.meta.api.methods.commands.SetMyCommands;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.send.SendVideo;
+import org.telegram.telegrambots.meta.api.methods.updates.DeleteWebhook;
+import org.telegram.telegrambots.meta.api.methods.updates.GetWebhookInfo;
 import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
 import org.telegram.telegrambots.meta.api.objects.InputFile;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.PhotoSize;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.commands.BotCommand;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,27 +37,47 @@ import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
 
 
 import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Component
 public class TelegramBot extends TelegramWebhookBot {
 
     private static final Logger log = LogManager.getLogger(TelegramBot.class);
+    // Короткі тексти йдуть у пріоритетну смугу разом з відповідями на callback-запити
+    private static final int SHORT_TEXT_LENGTH = 512;
 
     private final String botName;
     private final String botUri;
     private final UpdateProcessor updateProcessor;
+    private final OutboundSendScheduler outboundSendScheduler;
+    private final BlobStore blobStore;
+    private final FileIdCache fileIdCache;
+    private final IngestionMode ingestionMode;
+    private final LeaderElection leaderElection;
 
     @Autowired
     public TelegramBot(@Value("${bot.name}") String botName,
                        @Value("${bot.token}") String botToken, // botToken використовується для super(botToken)
-                       @Value("${bot.uri}") String botUri,
-                       @Lazy UpdateProcessor updateProcessor) {
+                       @Value("${bot.uri:}") String botUri,
+                       @Lazy UpdateProcessor updateProcessor,
+                       OutboundSendScheduler outboundSendScheduler,
+                       BlobStore blobStore,
+                       FileIdCache fileIdCache,
+                       @Value("${dispatcher.ingestion.mode:WEBHOOK}") IngestionMode ingestionMode,
+                       LeaderElection leaderElection) {
         super(botToken); // Передача токена до батьківського класу
         this.botName = botName;
         this.botUri = botUri;
         this.updateProcessor = updateProcessor;
+        this.outboundSendScheduler = outboundSendScheduler;
+        this.blobStore = blobStore;
+        this.fileIdCache = fileIdCache;
+        this.ingestionMode = ingestionMode;
+        this.leaderElection = leaderElection;
         log.info("TelegramBot initialized with UpdateProcessor.");
     }
 
@@ -59,10 +92,27 @@ public class TelegramBot extends TelegramWebhookBot {
     @PostConstruct
     public void init() {
         log.info("Initializing TelegramBot...");
+        // Вебхук і меню команд реєструє лише одна репліка - та, що тримає lease лідера
+        leaderElection.onLeadershipAcquired(this::registerWithTelegram);
+    }
+
+    private void registerWithTelegram() {
+        log.info("Registering webhook and bot commands as leader replica...");
         try {
-            SetWebhook setWebhook = SetWebhook.builder().url(this.botUri).build();
-            this.setWebhook(setWebhook);
-            log.info("Webhook set successfully to URI: {}", this.botUri);
+            String currentUrl = this.execute(new GetWebhookInfo()).getUrl();
+            if (ingestionMode == IngestionMode.LONG_POLLING) {
+                if (currentUrl != null && !currentUrl.isEmpty()) {
+                    // Поки вебхук встановлено, getUpdates повертає 409 Conflict
+                    this.execute(DeleteWebhook.builder().build());
+                    log.info("Webhook removed, updates are received via long polling");
+                }
+            } else if (this.botUri.equals(currentUrl)) {
+                log.info("Webhook is already set to URI: {}", this.botUri);
+            } else {
+                SetWebhook setWebhook = SetWebhook.builder().url(this.botUri).build();
+                this.setWebhook(setWebhook);
+                log.info("Webhook set successfully to URI: {}", this.botUri);
+            }
 
             setBotCommands();
 
@@ -72,14 +122,15 @@ public class TelegramBot extends TelegramWebhookBot {
     }
 
     private void setBotCommands() {
-        List<BotCommand> commands = new ArrayList<>();
-        commands.add(new BotCommand("/start", "Розпочати роботу"));
-        commands.add(new BotCommand("/help", "Допомога та список команд"));
-        commands.add(new BotCommand("/convert_file", "Увімкнути режим конвертації"));
-        commands.add(new BotCommand("/create_archive", "Увімкнути режим архіватора"));
-        commands.add(new BotCommand("/generate_link", "Увімкнути режим файлообмінника"));
-        commands.add(new BotCommand("/registration", "Реєстрація нового користувача"));
-        commands.add(new BotCommand("/cancel", "Скасувати дію / Вийти з режиму"));
+        List<BotCommand> commands = botCommands();
+        try {
+            if (sameCommands(this.execute(new GetMyCommands()), commands)) {
+                log.info("Bot commands menu is up to date.");
+                return;
+            }
+        } catch (TelegramApiException e) {
+            log.warn("Could not read current bot commands, setting them anyway: {}", e.getMessage());
+        }
 
         SetMyCommands setMyCommandsAction = new SetMyCommands();
         setMyCommandsAction.setCommands(commands);
@@ -92,6 +143,34 @@ public class TelegramBot extends TelegramWebhookBot {
         }
     }
 
+    // Telegram повертає команди без початкового "/"
+    private boolean sameCommands(List<BotCommand> current, List<BotCommand> expected) {
+        if (current == null || current.size() != expected.size()) {
+            return false;
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            String expectedName = expected.get(i).getCommand().replaceFirst("^/", "");
+            String currentName = current.get(i).getCommand().replaceFirst("^/", "");
+            if (!expectedName.equals(currentName)
+                    || !expected.get(i).getDescription().equals(current.get(i).getDescription())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<BotCommand> botCommands() {
+        List<BotCommand> commands = new ArrayList<>();
+        commands.add(new BotCommand("/start", "Розпочати роботу"));
+        commands.add(new BotCommand("/help", "Допомога та список команд"));
+        commands.add(new BotCommand("/convert_file", "Увімкнути режим конвертації"));
+        commands.add(new BotCommand("/create_archive", "Увімкнути режим архіватора"));
+        commands.add(new BotCommand("/generate_link", "Увімкнути режим файлообмінника"));
+        commands.add(new BotCommand("/registration", "Реєстрація нового користувача"));
+        commands.add(new BotCommand("/cancel", "Скасувати дію / Вийти з режиму"));
+        return commands;
+    }
+
     @Override
     public String getBotUsername() {
         return this.botName;
@@ -104,12 +183,20 @@ public class TelegramBot extends TelegramWebhookBot {
     }
 
     public void sendAnswerMessage(SendMessage sendMessage) {
+        sendAnswerMessage(sendMessage, outcome -> {
+        });
+    }
+
+    // onFinished отримує результат і тоді, коли виклик навіть не потрапив у планувальник
+    public void sendAnswerMessage(SendMessage sendMessage, Consumer<SendOutcome> onFinished) {
         if (sendMessage == null) {
             log.error("Attempted to send a null SendMessage object.");
+            onFinished.accept(SendOutcome.FAILED);
             return;
         }
         if (sendMessage.getChatId() == null || sendMessage.getChatId().isEmpty()) {
             log.error("Attempted to send SendMessage with null or empty chatId: {}", sendMessage.getText());
+            onFinished.accept(SendOutcome.FAILED);
             return;
         }
         // Порожнє повідомлення може бути легітимним у деяких випадках (наприклад, для видалення клавіатури),
@@ -118,59 +205,85 @@ public class TelegramBot extends TelegramWebhookBot {
             log.warn("Attempted to send SendMessage with null or empty text to chatId {}.", sendMessage.getChatId());
         }
 
-        try {
+        SendPriority priority = sendMessage.getText() != null && sendMessage.getText().length() > SHORT_TEXT_LENGTH
+                ? SendPriority.NORMAL : SendPriority.HIGH;
+        outboundSendScheduler.submit(sendMessage.getChatId(), priority, () -> {
             execute(sendMessage);
             log.debug("Message sent to chat_id={}: '{}'", sendMessage.getChatId(), sendMessage.getText());
-        } catch (TelegramApiException e) {
-            log.error("Failed to send message to chat_id={}: {}", sendMessage.getChatId(), e.getMessage(), e);
-        }
+        }, onFinished);
     }
 
     public void sendSpecificDocument(SendDocument sendDocument) {
+        sendSpecificDocument(sendDocument, null, outcome -> {
+        });
+    }
+
+    public void sendSpecificDocument(SendDocument sendDocument, String fileUrl, Consumer<SendOutcome> onFinished) {
         if (sendDocument == null) {
             log.warn("Attempted to send null SendDocument object.");
+            onFinished.accept(SendOutcome.FAILED);
             return; }
-        try {
-            execute(sendDocument);
+        InputFile document = sendDocument.getDocument();
+        outboundSendScheduler.submit(sendDocument.getChatId(), SendPriority.BULK, () -> {
+            sendMedia("document", document, fileUrl, sendDocument::setDocument, () -> execute(sendDocument),
+                    sent -> sent.getDocument() != null ? sent.getDocument().getFileId() : null);
             log.debug("Successfully executed SendDocument to chat_id: {}", sendDocument.getChatId());
-        } catch (TelegramApiException e) {
-            log.error("Error executing SendDocument to chat_id {}: {}", sendDocument.getChatId(), e.getMessage(), e);
-        }
+        }, onFinished);
     }
 
     public void sendSpecificPhoto(SendPhoto sendPhoto) {
+        sendSpecificPhoto(sendPhoto, null, outcome -> {
+        });
+    }
+
+    public void sendSpecificPhoto(SendPhoto sendPhoto, String fileUrl, Consumer<SendOutcome> onFinished) {
         if (sendPhoto == null) {
             log.warn("Attempted to send null SendPhoto object.");
+            onFinished.accept(SendOutcome.FAILED);
             return;
         }
-        try {
-            execute(sendPhoto);
+        InputFile photo = sendPhoto.getPhoto();
+        outboundSendScheduler.submit(sendPhoto.getChatId(), SendPriority.BULK, () -> {
+            sendMedia("photo", photo, fileUrl, sendPhoto::setPhoto, () -> execute(sendPhoto), this::largestPhotoFileId);
             log.debug("Successfully executed SendPhoto to chat_id: {}", sendPhoto.getChatId());
-        } catch (TelegramApiException e) {
-            // Додав логування помилки, аналогічно іншим методам
-            log.error("Error executing SendPhoto to chat_id {}: {}", sendPhoto.getChatId(), e.getMessage(), e);
-        }
+        }, onFinished);
     }
     public void sendSpecificAudio(org.telegram.telegrambots.meta.api.methods.send.SendAudio sendAudio) {
+        sendSpecificAudio(sendAudio, null, outcome -> {
+        });
+    }
+
+    public void sendSpecificAudio(org.telegram.telegrambots.meta.api.methods.send.SendAudio sendAudio, String fileUrl, Consumer<SendOutcome> onFinished) {
         if (sendAudio == null) {
             log.warn("Attempted to send null SendAudio object.");
+            onFinished.accept(SendOutcome.FAILED);
             return;
         }
-        try {
-            execute(sendAudio);
+        InputFile audio = sendAudio.getAudio();
+        outboundSendScheduler.submit(sendAudio.getChatId(), SendPriority.BULK, () -> {
+            sendMedia("audio", audio, fileUrl, sendAudio::setAudio, () -> execute(sendAudio),
+                    sent -> sent.getAudio() != null ? sent.getAudio().getFileId() : null);
             log.debug("Successfully executed SendAudio to chat_id: {}", sendAudio.getChatId());
-        } catch (TelegramApiException e) {
-            log.error("Error executing SendAudio to chat_id {}: {}", sendAudio.getChatId(), e.getMessage(), e);
-        }
+        }, onFinished);
     }
     public void sendVideo(VideoToSendDTO dto) {
-        if (dto == null || dto.getChatId() == null || dto.getVideoBytes() == null || dto.getFileName() == null) {
+        sendVideo(dto, outcome -> {
+        });
+    }
+
+    public void sendVideo(VideoToSendDTO dto, Consumer<SendOutcome> onFinished) {
+        if (dto == null || dto.getChatId() == null || (dto.getVideoBytes() == null && dto.getBlobRef() == null) || dto.getFileName() == null) {
             log.error("VideoToSendDTO is invalid: {}", dto);
+            onFinished.accept(SendOutcome.FAILED);
             return;
         }
         SendVideo sendVideo = new SendVideo();
         sendVideo.setChatId(dto.getChatId());
-        sendVideo.setVideo(new InputFile(new ByteArrayInputStream(dto.getVideoBytes()), dto.getFileName()));
+        if (dto.getBlobRef() != null) {
+            sendVideo.setVideo(new InputFile(blobStore.resolve(dto.getBlobRef()), dto.getFileName()));
+        } else {
+            sendVideo.setVideo(new InputFile(new ByteArrayInputStream(dto.getVideoBytes()), dto.getFileName()));
+        }
         if (dto.getCaption() != null && !dto.getCaption().isEmpty()) {
             sendVideo.setCaption(dto.getCaption());
         }
@@ -178,23 +291,108 @@ public class TelegramBot extends TelegramWebhookBot {
         if (dto.getWidth() != null) sendVideo.setWidth(dto.getWidth());
         if (dto.getHeight() != null) sendVideo.setHeight(dto.getHeight());
 
-        try {
-            execute(sendVideo);
+        InputFile video = sendVideo.getVideo();
+        outboundSendScheduler.submit(dto.getChatId(), SendPriority.BULK, () -> {
+            sendMedia("video", video, dto.getFileUrl(), sendVideo::setVideo, () -> execute(sendVideo),
+                    sent -> sent.getVideo() != null ? sent.getVideo().getFileId() : null);
             log.debug("Video DTO sent to chat_id: {}", dto.getChatId());
-        } catch (TelegramApiException e) {
-            log.error("Failed to send Video DTO to chat_id {}: {}", dto.getChatId(), e.getMessage(), e);
-        }
+        }, onFinished);
     }
-    public void executeAnswerCallbackQuery(AnswerCallbackQuery answer) {
+    // Відповідь на callback-запит не рахується в ліміт повідомлень чату, тому виконується одразу
+    // (на пулі CallbackAnswerService), а не через планувальник вихідних повідомлень
+    public boolean executeAnswerCallbackQuery(AnswerCallbackQuery answer) {
         if (answer == null) {
             log.warn("Attempted to execute a null AnswerCallbackQuery object.");
-            return;
+            return false;
         }
         try {
             execute(answer); // Метод execute з батьківського класу TelegramWebhookBot
             log.debug("Successfully executed AnswerCallbackQuery for id: {}", answer.getCallbackQueryId());
+            return true;
         } catch (TelegramApiException e) {
             log.error("Failed to execute AnswerCallbackQuery for id {}: {}", answer.getCallbackQueryId(), e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Відправляє медіа за file_id, якщо такий самий вміст уже завантажувався; далі - за підписаним
+     * посиланням rest-service, якщо node його додав; інакше завантажує файл сам.
+     * file_id з відповіді Telegram запам'ятовується.
+     */
+    private void sendMedia(String kind, InputFile media, String fileUrl, Consumer<InputFile> setMedia,
+                           MediaSend send, Function<Message, String> fileIdOf) throws TelegramApiException {
+        FileIdCache.MediaKey key = fileIdCache.keyOf(kind, media);
+        String cachedFileId = key != null ? fileIdCache.lookup(key) : null;
+        if (cachedFileId != null) {
+            setMedia.accept(new InputFile(cachedFileId));
+            try {
+                send.send();
+                fileIdCache.recordReuse(key);
+                release(media);
+                return;
+            } catch (TelegramApiRequestException e) {
+                // 400 означає, що file_id більше недійсний - завантажуємо файл заново
+                if (e.getErrorCode() == null || e.getErrorCode() != 400) {
+                    throw e;
+                }
+                log.warn("Cached file_id for {} '{}' was rejected: {}", kind, media.getMediaName(), e.getApiResponse());
+                fileIdCache.evict(key);
+            } finally {
+                setMedia.accept(media);
+            }
+        }
+        if (fileUrl != null) {
+            setMedia.accept(new InputFile(fileUrl));
+            try {
+                Message sent = send.send();
+                String fileId = key != null && sent != null ? fileIdOf.apply(sent) : null;
+                if (fileId != null) {
+                    fileIdCache.put(key, fileId);
+                }
+                release(media);
+                return;
+            } catch (TelegramApiRequestException e) {
+                // 400: Telegram не зміг завантажити файл за посиланням (недоступний rest-service, тип файлу) - завантажуємо самі
+                if (e.getErrorCode() == null || e.getErrorCode() != 400) {
+                    throw e;
+                }
+                log.warn("Telegram could not fetch {} '{}' by URL, uploading it instead: {}", kind, media.getMediaName(), e.getApiResponse());
+            } finally {
+                setMedia.accept(media);
+            }
+        }
+        rewind(media);
+        Message sent = send.send();
+        String fileId = key != null && sent != null ? fileIdOf.apply(sent) : null;
+        if (fileId != null) {
+            fileIdCache.put(key, fileId);
+        }
+        release(media);
+    }
+
+    private String largestPhotoFileId(Message sent) {
+        List<PhotoSize> sizes = sent.getPhoto();
+        return sizes == null || sizes.isEmpty() ? null : sizes.get(sizes.size() - 1).getFileId();
+    }
+
+    @FunctionalInterface
+    private interface MediaSend {
+        Message send() throws TelegramApiException;
+    }
+
+    // Вкладення зі спільного сховища більше не потрібне після успішної відправки
+    private void release(InputFile inputFile) {
+        if (inputFile != null && blobStore.deleteIfOwned(inputFile.getNewMediaFile())) {
+            log.debug("Released blob {}", inputFile.getNewMediaFile().getName());
+        }
+    }
+
+    // Після 429 той самий InputFile відправляється повторно, тому потік з байтами треба повернути на початок
+    private void rewind(InputFile inputFile) {
+        InputStream stream = inputFile != null ? inputFile.getNewMediaStream() : null;
+        if (stream instanceof ByteArrayInputStream byteStream) {
+            byteStream.reset();
         }
     }
 }
\ No newline at end of file
@@ -1,16 +1,33 @@
 package lnu.study.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lnu.study.dto.VideoToSendDTO;
+import lnu.study.service.CallbackAnswerService;
+import lnu.study.service.IngestionTracker;
+import lnu.study.service.IngressFloodControl;
+import lnu.study.service.MediaGroupAggregator;
 import lnu.study.service.UpdateProducer;
+import lnu.study.service.enums.SendOutcome;
+import lnu.study.service.enums.UpdateKind;
+import lnu.study.utils.BotReplies;
 import lnu.study.utils.MessageUtils;
+import lnu.study.utils.RawUpdate;
+import lnu.study.utils.UpdateIdWindow;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
 import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
 import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.util.function.Consumer;
 import static lnu.study.model.RabbitQueue.CALLBACK_QUERY_UPDATE;
 
 import static lnu.study.model.RabbitQueue.*;
@@ -21,11 +38,34 @@ public class UpdateProcessor {
 
     private TelegramBot telegramBot;
     private final UpdateProducer updateProducer;
+    private final ObjectMapper objectMapper;
+    private final CallbackAnswerService callbackAnswerService;
+    private final MediaGroupAggregator mediaGroupAggregator;
+    private final IngressFloodControl floodControl;
+    private final IngestionTracker ingestionTracker;
+    private final UpdateIdWindow updateIdWindow;
+    private final Counter duplicateCounter;
 
     @Autowired
-    public UpdateProcessor(UpdateProducer updateProducer) {
+    public UpdateProcessor(UpdateProducer updateProducer,
+                           ObjectMapper objectMapper,
+                           CallbackAnswerService callbackAnswerService,
+                           MediaGroupAggregator mediaGroupAggregator,
+                           IngressFloodControl floodControl,
+                           IngestionTracker ingestionTracker,
+                           MeterRegistry meterRegistry,
+                           @Value("${dispatcher.dedup.horizon:65536}") int dedupHorizon) {
         this.updateProducer = updateProducer;
-        log.info("UpdateProcessor initialized with UpdateProducer.");
+        this.objectMapper = objectMapper;
+        this.callbackAnswerService = callbackAnswerService;
+        this.mediaGroupAggregator = mediaGroupAggregator;
+        this.floodControl = floodControl;
+        this.ingestionTracker = ingestionTracker;
+        this.updateIdWindow = new UpdateIdWindow(dedupHorizon);
+        this.duplicateCounter = Counter.builder("dispatcher.updates.duplicates_suppressed")
+                .description("Повторно доставлені Telegram оновлення, які не були опубліковані")
+                .register(meterRegistry);
+        log.info("UpdateProcessor initialized with UpdateProducer. Dedup horizon: {}", updateIdWindow.getHorizon());
     }
 
     @Autowired
@@ -39,6 +79,18 @@ public class UpdateProcessor {
             log.error("Received update is null");
             return;
         }
+        if (update.getUpdateId() != null && !updateIdWindow.markSeen(update.getUpdateId())) {
+            duplicateCounter.increment();
+            log.info("Duplicate update_id={} suppressed", update.getUpdateId());
+            return;
+        }
+        if (!update.hasMessage() && update.hasCallbackQuery()) {
+            callbackAnswerService.markReceived(update.getCallbackQuery().getId());
+        }
+        floodControl.submit(kindOf(update), MessageUtils.extractChatId(update), () -> route(update));
+    }
+
+    private void route(Update update) {
         if (update.hasMessage()) {
             distributeMessagesByType(update);
         } else if (update.hasCallbackQuery()) {
@@ -50,9 +102,87 @@ public class UpdateProcessor {
         }
     }
 
+    /**
+     * Шлях без повної десеріалізації: з тіла читаються лише поля маршрутизації,
+     * а саме тіло йде в RabbitMQ без змін.
+     * @return прочитані поля маршрутизації; long polling бере з них update_id для наступного offset
+     */
+    public RawUpdate processRawUpdate(byte[] body) throws IOException {
+        return processRawUpdate(RawUpdate.parse(body));
+    }
+
+    public RawUpdate processRawUpdate(RawUpdate rawUpdate) throws IOException {
+        if (rawUpdate.updateId() != null && !updateIdWindow.markSeen(rawUpdate.updateId())) {
+            duplicateCounter.increment();
+            log.info("Duplicate update_id={} suppressed", rawUpdate.updateId());
+            return rawUpdate;
+        }
+        if (rawUpdate.answeredInline()) {
+            // Відповідь уже пішла у відповіді вебхука, а flood control пропустив оновлення в tryAdmitNow
+            if (rawUpdate.kind() == UpdateKind.UNSUPPORTED) {
+                ingestionTracker.settled(rawUpdate.updateId());
+            } else {
+                publishRaw(rawUpdate);
+            }
+            return rawUpdate;
+        }
+        if (rawUpdate.kind() == UpdateKind.UNSUPPORTED) {
+            // Рідкісний випадок: для відповіді потрібен повний Update
+            Update update = objectMapper.readValue(rawUpdate.body(), Update.class);
+            log.error("Unsupported update type or message is null: " + update);
+            ingestionTracker.settled(rawUpdate.updateId());
+            setUnsupportedMessageTypeView(update);
+            return rawUpdate;
+        }
+        if (rawUpdate.kind() == UpdateKind.CALLBACK_QUERY) {
+            callbackAnswerService.markReceived(rawUpdate.callbackQueryId());
+        }
+        if (!floodControl.submit(rawUpdate.kind(), rawUpdate.chatId(), () -> publishRaw(rawUpdate))) {
+            ingestionTracker.settled(rawUpdate.updateId());
+        }
+        return rawUpdate;
+    }
+
+    /**
+     * Дозволяє повторно обробити оновлення, публікацію якого було втрачено: інакше вікно update_id
+     * відсіяло б його як дублікат.
+     */
+    public void forgetUpdate(Integer updateId) {
+        if (updateId != null) {
+            updateIdWindow.forget(updateId);
+        }
+    }
+
+    private void publishRaw(RawUpdate rawUpdate) {
+        if ((rawUpdate.kind() == UpdateKind.PHOTO || rawUpdate.kind() == UpdateKind.DOC)
+                && mediaGroupAggregator.offer(rawUpdate.mediaGroupId(), rawUpdate.chatId(), rawUpdate.updateId(), rawUpdate.body())) {
+            log.debug("update_id={} added to media group {}", rawUpdate.updateId(), rawUpdate.mediaGroupId());
+            return;
+        }
+        updateProducer.produceRaw(rawUpdate.kind().getQueue(), rawUpdate);
+        log.info("{} update_id={} for chat_id {} sent to RabbitMQ queue: {}",
+                rawUpdate.kind(), rawUpdate.updateId(), rawUpdate.chatId(), rawUpdate.kind().getQueue());
+    }
+
+    // Той самий пріоритет типів, що й у distributeMessagesByType
+    private UpdateKind kindOf(Update update) {
+        if (!update.hasMessage()) {
+            return update.hasCallbackQuery() ? UpdateKind.CALLBACK_QUERY : UpdateKind.UNSUPPORTED;
+        }
+        var message = update.getMessage();
+        return message.hasPhoto() ? UpdateKind.PHOTO
+                : message.hasDocument() ? UpdateKind.DOC
+                : message.hasText() ? UpdateKind.TEXT
+                : message.hasVoice() ? UpdateKind.VOICE
+                : message.hasAudio() ? UpdateKind.AUDIO
+                : UpdateKind.UNSUPPORTED;
+    }
+
     private void distributeMessagesByType(Update update) {
         var message = update.getMessage();
-        if (message.hasPhoto()) {
+        if ((message.hasPhoto() || message.hasDocument()) && offerToMediaGroup(update)) {
+            log.debug("update_id={} added to media group {}", update.getUpdateId(), message.getMediaGroupId());
+        } else if (message.hasPhoto()) {
             log.info("Processing photo message from chat_id: {}", message.getChat().getId());
             processPhotoMessage(update);
         } else if (message.hasDocument()) {
@@ -72,8 +202,23 @@ public class UpdateProcessor {
         }
     }
 
+    private boolean offerToMediaGroup(Update update) {
+        var message = update.getMessage();
+        if (message.getMediaGroupId() == null) {
+            return false;
+        }
+        try {
+            return mediaGroupAggregator.offer(message.getMediaGroupId(), message.getChatId(),
+                    update.getUpdateId(), objectMapper.writeValueAsBytes(update));
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize update_id={} for media group, publishing it separately: {}",
+                    update.getUpdateId(), e.getMessage());
+            return false;
+        }
+    }
+
     private void setUnsupportedMessageTypeView(Update update) {
-        var sendMessage = MessageUtils.generateSendMessageWithText(update, "Unsupported message type!");
+        var sendMessage = MessageUtils.generateSendMessageWithText(update, BotReplies.UNSUPPORTED_MESSAGE_TYPE);
         if (sendMessage != null) {
             setView(sendMessage);
         } else {
@@ -82,9 +227,14 @@ public class UpdateProcessor {
     }
 
     public void setView(SendMessage sendMessage) {
+        setView(sendMessage, outcome -> {
+        });
+    }
+
+    public void setView(SendMessage sendMessage, Consumer<SendOutcome> onFinished) {
         log.debug("UpdateProcessor: Attempting to send message via TelegramBot to chat_id: {}", sendMessage.getChatId());
         if (this.telegramBot != null) {
-            telegramBot.sendAnswerMessage(sendMessage);
+            telegramBot.sendAnswerMessage(sendMessage, onFinished);
             log.info("UpdateProcessor: Message passed to TelegramBot for chat_id: {}", sendMessage.getChatId());
         } else {
             log.error("UpdateProcessor: CRITICAL - TelegramBot instance is NULL. Cannot send message to chat_id: {}", sendMessage.getChatId());
@@ -111,41 +261,60 @@ public class UpdateProcessor {
     }
 
     public void setView(SendDocument sendDocument) {
+        setView(sendDocument, null, outcome -> {
+        });
+    }
+
+    public void setView(SendDocument sendDocument, String fileUrl, Consumer<SendOutcome> onFinished) {
         log.debug("UpdateProcessor: Attempting to send SendDocument via TelegramBot to chat_id: {}", sendDocument.getChatId());
         if (this.telegramBot != null) {
-            telegramBot.sendSpecificDocument(sendDocument);
+            telegramBot.sendSpecificDocument(sendDocument, fileUrl, onFinished);
             log.info("UpdateProcessor: SendDocument passed to TelegramBot for chat_id: {}", sendDocument.getChatId());
         } else {
             log.error("UpdateProcessor: CRITICAL - TelegramBot instance is NULL. Cannot send SendDocument to chat_id: {}", sendDocument.getChatId());
+            onFinished.accept(SendOutcome.FAILED);
         }
     }
 
     public void setView(SendPhoto sendPhoto) {
+        setView(sendPhoto, null, outcome -> {
+        });
+    }
+
+    public void setView(SendPhoto sendPhoto, String fileUrl, Consumer<SendOutcome> onFinished) {
         log.debug("UpdateProcessor: Attempting to send SendPhoto via TelegramBot to chat_id: {}", sendPhoto.getChatId());
         if (this.telegramBot != null) {
-            telegramBot.sendSpecificPhoto(sendPhoto);
+            telegramBot.sendSpecificPhoto(sendPhoto, fileUrl, onFinished);
             log.info("UpdateProcessor: SendPhoto passed to TelegramBot for chat_id: {}", sendPhoto.getChatId());
         } else {
             log.error("UpdateProcessor: CRITICAL - TelegramBot instance is NULL. Cannot send SendPhoto to chat_id: {}", sendPhoto.getChatId());
+            onFinished.accept(SendOutcome.FAILED);
         }
     }
-    public void setView(org.telegram.telegrambots.meta.api.methods.send.SendAudio sendAudio) { // Додаємо імпорт, якщо потрібно
+    public void setView(org.telegram.telegrambots.meta.api.methods.send.SendAudio sendAudio) {
+        setView(sendAudio, null, outcome -> {
+        });
+    }
+
+    public void setView(org.telegram.telegrambots.meta.api.methods.send.SendAudio sendAudio, String fileUrl, Consumer<SendOutcome> onFinished) { // Додаємо імпорт, якщо потрібно
         log.debug("UpdateProcessor: Attempting to send SendAudio via TelegramBot to chat_id: {}", sendAudio.getChatId());
         if (this.telegramBot != null) {
-            telegramBot.sendSpecificAudio(sendAudio); // Виклик нового методу в TelegramBot
+            telegramBot.sendSpecificAudio(sendAudio, fileUrl, onFinished); // Виклик нового методу в TelegramBot
             log.info("UpdateProcessor: SendAudio passed to TelegramBot for chat_id: {}", sendAudio.getChatId());
         } else {
             log.error("UpdateProcessor: CRITICAL - TelegramBot instance is NULL. Cannot send SendAudio to chat_id: {}", sendAudio.getChatId());
+            onFinished.accept(SendOutcome.FAILED);
 
         }
     }
-    public void sendVideo(VideoToSendDTO dto) {
+    public void sendVideo(VideoToSendDTO dto, Consumer<SendOutcome> onFinished) {
         log.debug("UpdateProcessor: Attempting to send VideoToSendDTO via TelegramBot to chat_id: {}", dto.getChatId());
         if (this.telegramBot != null) {
-            telegramBot.sendVideo(dto);
+            telegramBot.sendVideo(dto, onFinished);
             log.info("UpdateProcessor: VideoToSendDTO passed to TelegramBot for chat_id: {}", dto.getChatId());
         } else {
             log.error("UpdateProcessor: CRITICAL - TelegramBot instance is NULL. Cannot send VideoToSendDTO to chat_id: {}", dto.getChatId());
+            onFinished.accept(SendOutcome.FAILED);
         }
     }
     private void processAudioFileMessage(Update update) {
@@ -1,24 +1,74 @@
 package lnu.study.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lnu.study.service.StaticReplyService;
+import lnu.study.service.UpdateIngestionService;
+import lnu.study.utils.RawUpdate;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.objects.Update;
 
+import java.io.IOException;
+
+@Log4j2
 @RestController
 public class WebHookController {
 
-    private final UpdateProcessor updateProcessor;
+    private final UpdateIngestionService updateIngestionService;
+    private final StaticReplyService staticReplyService;
+    private final ObjectMapper objectMapper;
+    private final boolean rawPassthrough;
 
-    public WebHookController(UpdateProcessor updateProcessor) {
-        this.updateProcessor = updateProcessor;
+    public WebHookController(UpdateIngestionService updateIngestionService,
+                             StaticReplyService staticReplyService,
+                             ObjectMapper objectMapper,
+                             @Value("${dispatcher.ingestion.raw-passthrough:true}") boolean rawPassthrough) {
+        this.updateIngestionService = updateIngestionService;
+        this.staticReplyService = staticReplyService;
+        this.objectMapper = objectMapper;
+        this.rawPassthrough = rawPassthrough;
     }
 
     @RequestMapping(value = "/callback/update", method = RequestMethod.POST)
-    public ResponseEntity<?> onUpdateReceived(@RequestBody Update update) {
-        updateProcessor.processUpdate(update);
+    public ResponseEntity<?> onUpdateReceived(@RequestBody byte[] body) {
+        RawUpdate rawUpdate;
+        try {
+            rawUpdate = RawUpdate.parse(body);
+        } catch (IOException e) {
+            log.error("Failed to parse webhook update: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+        // Метод Bot API у тілі відповіді на вебхук Telegram виконує сам - це економить окремий виклик
+        BotApiMethod<?> reply = staticReplyService.tryReply(rawUpdate);
+        if (reply != null) {
+            // node все одно отримує оновлення: зберігає користувача і raw_data, а update_id потрапляє у вікно дублікатів
+            if (!updateIngestionService.submitRaw(rawUpdate.markAnsweredInline())) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+            }
+            return ResponseEntity.ok(reply);
+        }
+        // Підтверджуємо вебхук одразу, публікація в RabbitMQ відбувається у фонових потоках
+        boolean accepted;
+        if (rawPassthrough) {
+            accepted = updateIngestionService.submitRaw(rawUpdate);
+        } else {
+            try {
+                accepted = updateIngestionService.submit(objectMapper.readValue(body, Update.class));
+            } catch (IOException e) {
+                log.error("Failed to deserialize webhook update: {}", e.getMessage());
+                return ResponseEntity.badRequest().build();
+            }
+        }
+        if (!accepted) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
         return ResponseEntity.ok().build();
     }
 }
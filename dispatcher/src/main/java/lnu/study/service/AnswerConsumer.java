@@ -1,8 +1,9 @@
 package lnu.study.service;
 
+import com.rabbitmq.client.Channel;
 import org.springframework.amqp.core.Message;
 
 public interface AnswerConsumer {
-    void consume(Message message);
+    void consume(Message message, Channel channel, long deliveryTag);
 
 }
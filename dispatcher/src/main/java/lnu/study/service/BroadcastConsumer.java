@@ -0,0 +1,7 @@
+package lnu.study.service;
+
+import org.springframework.amqp.core.Message;
+
+public interface BroadcastConsumer {
+    void consume(Message message);
+}
@@ -0,0 +1,11 @@
+package lnu.study.service;
+
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
+
+public interface CallbackAnswerService {
+    // Запам'ятовує момент отримання callback-запиту для метрики затримки відповіді
+    void markReceived(String callbackQueryId);
+
+    // Виконує AnswerCallbackQuery на окремому пулі, поза чергою вихідних повідомлень
+    void answer(AnswerCallbackQuery answer);
+}
@@ -0,0 +1,26 @@
+package lnu.study.service;
+
+import org.telegram.telegrambots.meta.api.objects.InputFile;
+
+public interface FileIdCache {
+    /**
+     * Обчислює ключ за вмістом файлу. Потік з байтами після цього повертається на початок.
+     * @return null, якщо вміст неможливо прочитати повторно (такий файл просто завантажується)
+     */
+    MediaKey keyOf(String kind, InputFile media);
+
+    /**
+     * @return file_id раніше відправленого файлу з тим самим вмістом або null
+     */
+    String lookup(MediaKey key);
+
+    void put(MediaKey key, String fileId);
+
+    void evict(MediaKey key);
+
+    // Викликається, коли відправка за file_id вдалася і завантаження не знадобилось
+    void recordReuse(MediaKey key);
+
+    record MediaKey(String value, long sizeBytes) {
+    }
+}
@@ -0,0 +1,32 @@
+package lnu.study.service;
+
+/**
+ * Облік оновлень, отриманих через long polling, до моменту, коли їх можна підтвердити Telegram.
+ * Оновлення вважається завершеним, коли брокер підтвердив публікацію, воно записане в журнал
+ * або свідомо відкинуте. Для оновлень, які не реєструвались (вебхук), виклики нічого не роблять.
+ */
+public interface IngestionTracker {
+    /**
+     * Реєструє отримане оновлення.
+     * @return true, якщо попередня спроба цього оновлення завершилась втратою і його треба обробити повторно
+     */
+    boolean track(Integer updateId);
+
+    // Оновлення підтверджене брокером, записане в журнал або свідомо відкинуте
+    void settled(Integer updateId);
+
+    // Оновлення втрачене: offset не зсувається за нього, і наступний getUpdates поверне його знову
+    void failed(Integer updateId);
+
+    /**
+     * @param next offset після останнього отриманого оновлення
+     * @return найменший update_id, що ще не завершений, або {@code next}, якщо завершені всі
+     */
+    long committableOffset(long next);
+
+    /**
+     * Чекає, поки завершаться всі оновлення з update_id до {@code lastUpdateId} включно.
+     * @return false - не дочекались за timeoutMs або частину оновлень втрачено
+     */
+    boolean awaitSettled(long lastUpdateId, long timeoutMs) throws InterruptedException;
+}
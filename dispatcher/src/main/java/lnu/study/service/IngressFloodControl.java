@@ -0,0 +1,18 @@
+package lnu.study.service;
+
+import lnu.study.service.enums.UpdateKind;
+
+public interface IngressFloodControl {
+    /**
+     * Пропускає публікацію оновлення з урахуванням ліміту чату для цього типу оновлень:
+     * виконує її одразу, відкладає або відкидає з одноразовим повідомленням користувачу.
+     * @return false, якщо оновлення відкинуто і публікації не буде
+     */
+    boolean submit(UpdateKind kind, Long chatId, Runnable publish);
+
+    /**
+     * Витрачає ліміт чату, лише якщо оновлення можна пропустити без затримки.
+     * @return false - оновлення слід передати в {@link #submit}, де спрацює політика типу
+     */
+    boolean tryAdmitNow(UpdateKind kind, Long chatId);
+}
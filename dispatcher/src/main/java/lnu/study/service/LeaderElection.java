@@ -0,0 +1,11 @@
+package lnu.study.service;
+
+public interface LeaderElection {
+    boolean isLeader();
+
+    // Дія виконується щоразу, коли цей інстанс отримує лідерство (одразу, якщо він уже лідер)
+    void onLeadershipAcquired(Runnable action);
+
+    // Дія виконується, коли інстанс втрачає лідерство (наприклад, після обриву з'єднання з RabbitMQ)
+    void onLeadershipLost(Runnable action);
+}
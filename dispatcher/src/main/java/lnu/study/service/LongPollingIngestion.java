@@ -0,0 +1,6 @@
+package lnu.study.service;
+
+public interface LongPollingIngestion {
+    // Наступний offset для getUpdates: найменший update_id, ще не підтверджений брокером чи журналом
+    long getOffset();
+}
@@ -0,0 +1,11 @@
+package lnu.study.service;
+
+public interface MediaGroupAggregator {
+    /**
+     * Додає елемент альбому до групи з тим самим media_group_id.
+     * Група публікується одним повідомленням, коли нові елементи перестають надходити.
+     *
+     * @return false, якщо агрегацію вимкнено і оновлення треба публікувати як звичайно
+     */
+    boolean offer(String mediaGroupId, Long chatId, Integer updateId, byte[] body);
+}
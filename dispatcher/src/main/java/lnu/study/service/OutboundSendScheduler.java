@@ -0,0 +1,31 @@
+package lnu.study.service;
+
+import lnu.study.service.enums.SendOutcome;
+import lnu.study.service.enums.SendPriority;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+
+import java.util.function.Consumer;
+
+public interface OutboundSendScheduler {
+    /**
+     * Ставить виклик Bot API в чергу з урахуванням глобального ліміту та ліміту чату.
+     * @param chatId чат-одержувач; null - виклик не рахується в ліміт чату (наприклад, AnswerCallbackQuery)
+     */
+    default void submit(String chatId, SendPriority priority, SendAction action) {
+        submit(chatId, priority, action, outcome -> {
+        });
+    }
+
+    /**
+     * @param onFinished викликається рівно один раз із результатом виклику: після відправки, остаточної помилки,
+     *                   вичерпаних повторів 429 або зупинки планувальника. Повтори після 429 результатом не вважаються
+     */
+    void submit(String chatId, SendPriority priority, SendAction action, Consumer<SendOutcome> onFinished);
+
+    int getPendingCount();
+
+    @FunctionalInterface
+    interface SendAction {
+        void send() throws TelegramApiException;
+    }
+}
@@ -0,0 +1,11 @@
+package lnu.study.service;
+
+import lnu.study.dto.ProgressMessageDTO;
+
+public interface ProgressMessageService {
+    /**
+     * Показує статус операції: перший статус надсилається новим повідомленням, наступні редагують його.
+     * Статуси, що приходять частіше за вікно злиття, зливаються - у Telegram потрапляє лише останній.
+     */
+    void accept(ProgressMessageDTO progressMessageDTO);
+}
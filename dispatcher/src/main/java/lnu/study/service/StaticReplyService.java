@@ -0,0 +1,13 @@
+package lnu.study.service;
+
+import lnu.study.utils.RawUpdate;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+
+public interface StaticReplyService {
+    /**
+     * Відповідь на оновлення, що не залежить від стану користувача (довідкові команди, непідтримуваний тип).
+     * Повертається у відповіді на вебхук, тож Telegram виконує її без окремого виклику Bot API.
+     * @return null, якщо оновлення треба передати в node звичайним шляхом
+     */
+    BotApiMethod<?> tryReply(RawUpdate rawUpdate);
+}
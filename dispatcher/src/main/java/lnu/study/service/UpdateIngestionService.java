@@ -0,0 +1,21 @@
+package lnu.study.service;
+
+import lnu.study.utils.RawUpdate;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+public interface UpdateIngestionService {
+    /**
+     * Ставить оновлення в буфер для асинхронної обробки.
+     * @return false, якщо оновлення не прийнято (буфер переповнений і політика REJECT)
+     */
+    boolean submit(Update update);
+
+    /**
+     * Ставить в буфер оригінальне тіло вебхука з уже прочитаними полями маршрутизації;
+     * пересилання відбувається у фонових потоках.
+     * @return false, якщо оновлення не прийнято
+     */
+    boolean submitRaw(RawUpdate rawUpdate);
+
+    int getBufferDepth();
+}
@@ -1,9 +1,16 @@
 package lnu.study.service;
 
+import lnu.study.utils.RawUpdate;
 import org.telegram.telegrambots.meta.api.objects.Update;
 
+import java.util.List;
+
 public interface UpdateProducer {
     void produce(String rabbitQueue, Update update);
     void produceVoiceMessage(Update update);
+    // Пересилає оригінальні байти вебхука без повторної серіалізації
+    void produceRaw(String rabbitQueue, RawUpdate rawUpdate);
+    // Публікує тіла Update одного альбому як JSON-масив, node отримує List<Update>
+    void produceMediaGroup(String mediaGroupId, Long chatId, List<Integer> updateIds, List<byte[]> bodies);
 
 }
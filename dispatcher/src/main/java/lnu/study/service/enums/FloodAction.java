@@ -0,0 +1,10 @@
+package lnu.study.service.enums;
+
+public enum FloodAction {
+    // Без обмежень (callback-запити: користувач чекає на відповідь кнопки)
+    ALLOW,
+    // Оновлення понад ліміт відкидаються
+    DROP,
+    // Оновлення понад ліміт публікуються пізніше, у темпі ліміту; надто далекі відкидаються
+    DEFER
+}
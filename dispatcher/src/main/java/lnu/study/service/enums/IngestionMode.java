@@ -0,0 +1,8 @@
+package lnu.study.service.enums;
+
+public enum IngestionMode {
+    // Telegram надсилає оновлення на bot.uri (потрібна публічна HTTPS-адреса)
+    WEBHOOK,
+    // Dispatcher сам забирає оновлення через getUpdates пакетами, публічна адреса не потрібна
+    LONG_POLLING
+}
@@ -0,0 +1,11 @@
+package lnu.study.service.enums;
+
+public enum OverflowPolicy {
+    // Відхилити нове оновлення: вебхук отримає 503 і Telegram повторить доставку пізніше
+    REJECT,
+    // Викинути найстаріше оновлення з буфера, щоб звільнити місце для нового
+    DROP_OLDEST,
+    // Чекати в потоці запиту, поки в буфері чату звільниться місце (не довше dispatcher.ingestion.block-timeout-ms, далі - як REJECT).
+    // Обробка прямо в потоці запиту обігнала б оновлення того ж чату, що вже чекають у буфері
+    BLOCK
+}
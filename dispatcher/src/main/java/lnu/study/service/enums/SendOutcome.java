@@ -0,0 +1,12 @@
+package lnu.study.service.enums;
+
+public enum SendOutcome {
+    // Telegram прийняв виклик
+    SENT,
+    // Telegram відхилив виклик або сталася помилка; повтор не допоможе
+    FAILED,
+    // Повтори після 429 вичерпано
+    RATE_LIMITED,
+    // Планувальник зупинено до виконання виклику
+    STOPPED
+}
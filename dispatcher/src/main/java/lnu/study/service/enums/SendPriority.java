@@ -0,0 +1,12 @@
+package lnu.study.service.enums;
+
+public enum SendPriority {
+    // Відповіді на callback-запити та короткі тексти - користувач чекає на них інтерактивно
+    HIGH,
+    // Звичайні текстові повідомлення
+    NORMAL,
+    // Завантаження медіафайлів, які можуть поступитися місцем швидким відповідям
+    BULK,
+    // Масові розсилки: відправляються лише тоді, коли немає жодного іншого готового виклику
+    BACKGROUND
+}
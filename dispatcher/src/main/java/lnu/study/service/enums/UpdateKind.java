@@ -0,0 +1,24 @@
+package lnu.study.service.enums;
+
+import static lnu.study.model.RabbitQueue.*;
+
+public enum UpdateKind {
+    PHOTO(PHOTO_MESSAGE_UPDATE),
+    DOC(DOC_MESSAGE_UPDATE),
+    TEXT(TEXT_MESSAGE_UPDATE),
+    VOICE(VOICE_MESSAGE_UPDATE),
+    AUDIO(AUDIO_MESSAGE_UPDATE),
+    CALLBACK_QUERY(CALLBACK_QUERY_UPDATE),
+    // Оновлення, для якого немає черги: dispatcher сам відповідає "Unsupported message type!"
+    UNSUPPORTED(null);
+
+    private final String queue;
+
+    UpdateKind(String queue) {
+        this.queue = queue;
+    }
+
+    public String getQueue() {
+        return queue;
+    }
+}
@@ -1,15 +1,30 @@
 package lnu.study.service.impl;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ShutdownSignalException;
 import lnu.study.controller.UpdateProcessor;
 import lnu.study.dto.AudioToSendDTO;
 import lnu.study.dto.DocumentToSendDTO;
 import lnu.study.dto.PhotoToSendDTO;
+import lnu.study.dto.ProgressMessageDTO;
 import lnu.study.dto.VideoToSendDTO;
 import lnu.study.service.AnswerConsumer;
+import lnu.study.service.CallbackAnswerService;
+import lnu.study.service.LeaderElection;
+import lnu.study.service.ProgressMessageService;
+import lnu.study.service.enums.SendOutcome;
+import lnu.study.utils.BlobStore;
+import lnu.study.utils.TypeIdRegistry;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Service;
 import org.telegram.telegrambots.meta.api.methods.send.SendAudio;
 import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
@@ -22,6 +37,8 @@ import static lnu.study.model.RabbitQueue.ANSWER_CALLBACK_QUEUE;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import static lnu.study.model.RabbitQueue.ANSWER_MESSAGE;
 
@@ -29,89 +46,193 @@ import static lnu.study.model.RabbitQueue.ANSWER_MESSAGE;
 @Service
 public class AnswerConsumerImpl implements AnswerConsumer {
 
-    private final UpdateProcessor updateProcessor;
-    private final ObjectMapper objectMapper;
+    private static final String ANSWER_LISTENER_ID = "answerMessageListener";
 
-    public AnswerConsumerImpl(UpdateProcessor updateProcessor, ObjectMapper objectMapper) {
+    private final UpdateProcessor updateProcessor;
+    private final BlobStore blobStore;
+    private final CallbackAnswerService callbackAnswerService;
+    private final ProgressMessageService progressMessageService;
+    private final LeaderElection leaderElection;
+    private final RabbitListenerEndpointRegistry listenerRegistry;
+    // __TypeId__ -> готовий декодер і обробник; заповнюється один раз у конструкторі
+    private final TypeIdRegistry<AnswerAck> handlers;
+
+    public AnswerConsumerImpl(UpdateProcessor updateProcessor,
+                              ObjectMapper objectMapper,
+                              BlobStore blobStore,
+                              CallbackAnswerService callbackAnswerService,
+                              ProgressMessageService progressMessageService,
+                              LeaderElection leaderElection,
+                              RabbitListenerEndpointRegistry listenerRegistry) {
         this.updateProcessor = updateProcessor;
-        this.objectMapper = objectMapper;
+        this.blobStore = blobStore;
+        this.callbackAnswerService = callbackAnswerService;
+        this.progressMessageService = progressMessageService;
+        this.leaderElection = leaderElection;
+        this.listenerRegistry = listenerRegistry;
+
+        this.handlers = new TypeIdRegistry<AnswerAck>(objectMapper)
+                .register(SendMessage.class, this::handleSendMessage)
+                .register(PhotoToSendDTO.class, this::handlePhoto)
+                .register(DocumentToSendDTO.class, this::handleDocument)
+                .register(AudioToSendDTO.class, this::handleAudio)
+                .register(VideoToSendDTO.class, this::handleVideo)
+                .register(ProgressMessageDTO.class, this::handleProgress);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void register() {
+        // Відповіді читає лише лідер: глобальний ліміт Telegram, ліміти чатів і порядок відповідей чату
+        // тримає один планувальник, а статусні повідомлення - одна ProgressMessageService.
+        // Після втрати лідерства непідтверджені відповіді брокер віддасть новому лідеру
+        MessageListenerContainer container = listenerRegistry.getListenerContainer(ANSWER_LISTENER_ID);
+        leaderElection.onLeadershipAcquired(container::start);
+        leaderElection.onLeadershipLost(container::stop);
     }
 
+    /**
+     * Слухач лише декодує відповідь і ставить виклик у планувальник, який зберігає порядок у межах чату.
+     * Брокеру відповідь підтверджується, коли планувальник повідомить результат виклику, тож після падіння
+     * невідправлені відповіді прийдуть знову. Кількість непідтверджених обмежує prefetch і місткість планувальника.
+     */
     @Override
-    @RabbitListener(queues = ANSWER_MESSAGE)
-    public void consume(Message message) {
+    @RabbitListener(id = ANSWER_LISTENER_ID, queues = ANSWER_MESSAGE, ackMode = "MANUAL", autoStartup = "false")
+    public void consume(Message message, Channel channel, @Header(AmqpHeaders.DELIVERY_TAG) long deliveryTag) {
         if (message == null || message.getBody() == null || message.getMessageProperties() == null) {
             log.error("Received invalid message from RabbitMQ: {}", message);
+            ack(channel, deliveryTag);
             return;
         }
 
         String typeId = (String) message.getMessageProperties().getHeaders().get("__TypeId__");
 
         if (typeId == null) {
-            log.warn("Received message without __TypeId__ header. Body preview: {}", new String(message.getBody()).substring(0, Math.min(100, message.getBody().length)));
+            log.warn("Received message without __TypeId__ header. Body preview: {}", TypeIdRegistry.preview(message.getBody()));
+            ack(channel, deliveryTag);
             return;
         }
 
         log.debug("Received message with __TypeId__: {}", typeId);
+        handle(typeId, message, new AnswerAck(channel, deliveryTag));
+    }
 
+    private static void ack(Channel channel, long deliveryTag) {
         try {
-            byte[] body = message.getBody();
-            if (typeId.equals(SendMessage.class.getName())) {
-                SendMessage sendMessage = objectMapper.readValue(body, SendMessage.class);
-                log.debug("Successfully deserialized to SendMessage. Text: '{}'", sendMessage.getText());
-                updateProcessor.setView(sendMessage);
-            } else if (typeId.equals(PhotoToSendDTO.class.getName())) {
-                PhotoToSendDTO photoDTO = objectMapper.readValue(body, PhotoToSendDTO.class);
-                log.debug("Deserialized PhotoToSendDTO: {}", photoDTO.getFileName());
-
-                SendPhoto sendPhoto = new SendPhoto();
-                sendPhoto.setChatId(photoDTO.getChatId());
-                sendPhoto.setPhoto(new InputFile(new ByteArrayInputStream(photoDTO.getPhotoBytes()), photoDTO.getFileName()));
-                if (photoDTO.getCaption() != null && !photoDTO.getCaption().isEmpty()) {
-                    sendPhoto.setCaption(photoDTO.getCaption());
-                }
-                updateProcessor.setView(sendPhoto);
-            } else if (typeId.equals(DocumentToSendDTO.class.getName())) {
-                DocumentToSendDTO documentDTO = objectMapper.readValue(body, DocumentToSendDTO.class);
-                log.debug("Deserialized DocumentToSendDTO: {}", documentDTO.getFileName());
-
-                SendDocument sendDocument = new SendDocument();
-                sendDocument.setChatId(documentDTO.getChatId());
-                sendDocument.setDocument(new InputFile(new ByteArrayInputStream(documentDTO.getDocumentBytes()), documentDTO.getFileName()));
-                if (documentDTO.getCaption() != null && !documentDTO.getCaption().isEmpty()) {
-                    sendDocument.setCaption(documentDTO.getCaption());
-                }
-                updateProcessor.setView(sendDocument);
-            } else if (typeId.equals(AudioToSendDTO.class.getName())) {
-                AudioToSendDTO audioDTO = objectMapper.readValue(body, AudioToSendDTO.class);
-                log.debug("Deserialized AudioToSendDTO: {}", audioDTO.getFileName());
-
-                SendAudio sendAudio = new SendAudio();
-                sendAudio.setChatId(audioDTO.getChatId());
-                sendAudio.setAudio(new InputFile(new ByteArrayInputStream(audioDTO.getAudioBytes()), audioDTO.getFileName()));
-                if (audioDTO.getCaption() != null && !audioDTO.getCaption().isEmpty()) {
-                    sendAudio.setCaption(audioDTO.getCaption());
-                }
-
-                updateProcessor.setView(sendAudio);
-            }
-            else if (typeId.equals(VideoToSendDTO.class.getName())) {
-                VideoToSendDTO videoDTO = objectMapper.readValue(body, VideoToSendDTO.class);
-                log.debug("Successfully deserialized to VideoToSendDTO. Filename: {}", videoDTO.getFileName());
-                updateProcessor.sendVideo(videoDTO);
-            }
-            else {
-                log.warn("Received message with unhandled or unexpected __TypeId__: {}. Body preview: {}", typeId, new String(body).substring(0, Math.min(100, body.length)));
+            channel.basicAck(deliveryTag, false);
+        } catch (IOException | ShutdownSignalException e) {
+            log.warn("Failed to ack answer {}, it will be redelivered: {}", deliveryTag, e.getMessage());
+        }
+    }
+
+    // Відповідь, яку не вдалося декодувати чи передати планувальнику, повтор не виправить - її підтверджуємо
+    private void handle(String typeId, Message message, AnswerAck answerAck) {
+        try {
+            if (!handlers.dispatch(typeId, message.getBody(), answerAck)) {
+                log.warn("Received message with unhandled or unexpected __TypeId__: {}. Body preview: {}", typeId, TypeIdRegistry.preview(message.getBody()));
+                answerAck.accept(SendOutcome.FAILED);
             }
         } catch (IOException e) {
-            log.error("Failed to deserialize message with __TypeId__ '{}': {}. Message body preview: {}", typeId, e.getMessage(), new String(message.getBody()).substring(0, Math.min(100, message.getBody().length)), e);
+            log.error("Failed to deserialize message with __TypeId__ '{}': {}. Message body preview: {}", typeId, e.getMessage(), TypeIdRegistry.preview(message.getBody()), e);
+            answerAck.accept(SendOutcome.FAILED);
         } catch (Exception e) {
-            log.error("Unexpected error processing message with __TypeId__ '{}': {}. Message body preview: {}", typeId, e.getMessage(), new String(message.getBody()).substring(0, Math.min(100, message.getBody().length)), e);
+            log.error("Unexpected error processing message with __TypeId__ '{}': {}. Message body preview: {}", typeId, e.getMessage(), TypeIdRegistry.preview(message.getBody()), e);
+            answerAck.accept(SendOutcome.FAILED);
+        }
+    }
+
+    private void handleSendMessage(SendMessage sendMessage, AnswerAck answerAck) {
+        log.debug("Successfully deserialized to SendMessage. Text: '{}'", sendMessage.getText());
+        updateProcessor.setView(sendMessage, answerAck);
+    }
+
+    private void handlePhoto(PhotoToSendDTO photoDTO, AnswerAck answerAck) {
+        log.debug("Deserialized PhotoToSendDTO: {}", photoDTO.getFileName());
+
+        SendPhoto sendPhoto = new SendPhoto();
+        sendPhoto.setChatId(photoDTO.getChatId());
+        sendPhoto.setPhoto(toInputFile(photoDTO.getPhotoBytes(), photoDTO.getBlobRef(), photoDTO.getFileName()));
+        if (photoDTO.getCaption() != null && !photoDTO.getCaption().isEmpty()) {
+            sendPhoto.setCaption(photoDTO.getCaption());
+        }
+        updateProcessor.setView(sendPhoto, photoDTO.getFileUrl(), answerAck);
+    }
+
+    private void handleDocument(DocumentToSendDTO documentDTO, AnswerAck answerAck) {
+        log.debug("Deserialized DocumentToSendDTO: {}", documentDTO.getFileName());
+
+        SendDocument sendDocument = new SendDocument();
+        sendDocument.setChatId(documentDTO.getChatId());
+        sendDocument.setDocument(toInputFile(documentDTO.getDocumentBytes(), documentDTO.getBlobRef(), documentDTO.getFileName()));
+        if (documentDTO.getCaption() != null && !documentDTO.getCaption().isEmpty()) {
+            sendDocument.setCaption(documentDTO.getCaption());
         }
+        updateProcessor.setView(sendDocument, documentDTO.getFileUrl(), answerAck);
     }
+
+    private void handleAudio(AudioToSendDTO audioDTO, AnswerAck answerAck) {
+        log.debug("Deserialized AudioToSendDTO: {}", audioDTO.getFileName());
+
+        SendAudio sendAudio = new SendAudio();
+        sendAudio.setChatId(audioDTO.getChatId());
+        sendAudio.setAudio(toInputFile(audioDTO.getAudioBytes(), audioDTO.getBlobRef(), audioDTO.getFileName()));
+        if (audioDTO.getCaption() != null && !audioDTO.getCaption().isEmpty()) {
+            sendAudio.setCaption(audioDTO.getCaption());
+        }
+        updateProcessor.setView(sendAudio, audioDTO.getFileUrl(), answerAck);
+    }
+
+    private void handleVideo(VideoToSendDTO videoDTO, AnswerAck answerAck) {
+        log.debug("Successfully deserialized to VideoToSendDTO. Filename: {}", videoDTO.getFileName());
+        updateProcessor.sendVideo(videoDTO, answerAck);
+    }
+
+    // Статуси зливаються і замінюють один одного, тому підтверджуються одразу після прийняття.
+    // Результат операції node надсилає окремою відповіддю, а вона підтверджується лише після відправки
+    private void handleProgress(ProgressMessageDTO progressMessageDTO, AnswerAck answerAck) {
+        progressMessageService.accept(progressMessageDTO);
+        answerAck.acknowledge();
+    }
+
+    // Claim-check: файл зі сховища передається як File і читається потоково під час відправки
+    private InputFile toInputFile(byte[] bytes, String blobRef, String fileName) {
+        if (blobRef != null) {
+            return new InputFile(blobStore.resolve(blobRef), fileName);
+        }
+        return new InputFile(new ByteArrayInputStream(bytes), fileName);
+    }
+
+    // Відповіді на callback не рахуються в ліміти повідомлень, тому їх читають усі репліки
     @RabbitListener(queues = ANSWER_CALLBACK_QUEUE)
     public void consumeAnswerCallbackQuery(AnswerCallbackQuery answer) {
         log.debug("Received AnswerCallbackQuery with id: {}", answer.getCallbackQueryId());
+        callbackAnswerService.answer(answer);
+    }
+
+    // Підтверджує відповідь рівно один раз, коли відомий результат виклику Bot API
+    private static final class AnswerAck implements Consumer<SendOutcome> {
+        private final Channel channel;
+        private final long deliveryTag;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private AnswerAck(Channel channel, long deliveryTag) {
+            this.channel = channel;
+            this.deliveryTag = deliveryTag;
+        }
 
+        @Override
+        public void accept(SendOutcome outcome) {
+            if (outcome == SendOutcome.STOPPED) {
+                // Dispatcher зупиняється: після закриття каналу брокер доставить відповідь знову
+                log.debug("Answer {} was not sent before shutdown, it will be redelivered", deliveryTag);
+                return;
+            }
+            acknowledge();
+        }
+
+        private void acknowledge() {
+            if (done.compareAndSet(false, true)) {
+                ack(channel, deliveryTag);
+            }
+        }
     }
-}
\ No newline at end of file
+}
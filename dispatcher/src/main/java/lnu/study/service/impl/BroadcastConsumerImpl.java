@@ -0,0 +1,118 @@
+package lnu.study.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lnu.study.controller.TelegramBot;
+import lnu.study.service.BroadcastConsumer;
+import lnu.study.service.LeaderElection;
+import lnu.study.service.OutboundSendScheduler;
+import lnu.study.service.enums.SendPriority;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static lnu.study.model.RabbitQueue.BROADCAST_MESSAGE;
+
+@Log4j2
+@Service
+public class BroadcastConsumerImpl implements BroadcastConsumer {
+
+    private static final long PENDING_POLL_MS = 50;
+    private static final String BROADCAST_LISTENER_ID = "broadcastMessageListener";
+
+    private final TelegramBot telegramBot;
+    private final OutboundSendScheduler outboundSendScheduler;
+    private final ObjectReader sendMessageReader;
+    private final int maxPending;
+    private final LeaderElection leaderElection;
+    private final RabbitListenerEndpointRegistry listenerRegistry;
+
+    private final Counter sentCounter;
+    private final Counter blockedCounter;
+    private final Counter failedCounter;
+
+    public BroadcastConsumerImpl(TelegramBot telegramBot,
+                                 OutboundSendScheduler outboundSendScheduler,
+                                 ObjectMapper objectMapper,
+                                 MeterRegistry meterRegistry,
+                                 LeaderElection leaderElection,
+                                 RabbitListenerEndpointRegistry listenerRegistry,
+                                 @Value("${dispatcher.broadcast.max-pending:50}") int maxPending) {
+        this.telegramBot = telegramBot;
+        this.outboundSendScheduler = outboundSendScheduler;
+        this.sendMessageReader = objectMapper.readerFor(SendMessage.class);
+        this.maxPending = maxPending;
+        this.leaderElection = leaderElection;
+        this.listenerRegistry = listenerRegistry;
+        this.sentCounter = counter(meterRegistry, "sent");
+        this.blockedCounter = counter(meterRegistry, "blocked");
+        this.failedCounter = counter(meterRegistry, "failed");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void register() {
+        // Розсилка ділить глобальний ліміт Telegram з відповідями, тому йде через планувальник лідера
+        MessageListenerContainer container = listenerRegistry.getListenerContainer(BROADCAST_LISTENER_ID);
+        leaderElection.onLeadershipAcquired(container::start);
+        leaderElection.onLeadershipLost(container::stop);
+    }
+
+    @Override
+    @RabbitListener(id = BROADCAST_LISTENER_ID, queues = BROADCAST_MESSAGE, concurrency = "1", autoStartup = "false")
+    public void consume(Message message) {
+        SendMessage sendMessage;
+        try {
+            sendMessage = sendMessageReader.readValue(message.getBody());
+        } catch (IOException e) {
+            log.error("Failed to deserialize broadcast message: {}", e.getMessage());
+            return;
+        }
+        try {
+            // Розсилка не займає чергу планувальника: решта місткості залишається для відповідей користувачам,
+            // а необроблені повідомлення розсилки чекають у RabbitMQ
+            while (outboundSendScheduler.getPendingCount() >= maxPending) {
+                TimeUnit.MILLISECONDS.sleep(PENDING_POLL_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        outboundSendScheduler.submit(sendMessage.getChatId(), SendPriority.BACKGROUND, () -> {
+            try {
+                telegramBot.execute(sendMessage);
+                sentCounter.increment();
+            } catch (TelegramApiRequestException e) {
+                Integer code = e.getErrorCode();
+                if (code != null && code == 403) {
+                    // Користувач заблокував бота - це очікуваний результат розсилки, а не помилка
+                    blockedCounter.increment();
+                    log.debug("Broadcast to chat_id={} skipped: bot is blocked", sendMessage.getChatId());
+                    return;
+                }
+                if (code == null || code != 429) {
+                    failedCounter.increment();
+                }
+                throw e;
+            }
+        });
+    }
+
+    private Counter counter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("dispatcher.broadcast.messages")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,122 @@
+package lnu.study.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lnu.study.controller.TelegramBot;
+import lnu.study.service.CallbackAnswerService;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Log4j2
+@Service
+public class CallbackAnswerServiceImpl implements CallbackAnswerService {
+
+    // Telegram перестає приймати відповідь на callback приблизно через 15 секунд
+    private static final long RECEIPT_TTL_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final int RECEIPT_SWEEP_THRESHOLD = 10_000;
+
+    private final TelegramBot telegramBot;
+    private final ExecutorService answerPool;
+    private final Map<String, Long> receivedAt = new ConcurrentHashMap<>();
+
+    private final Timer answerLatencyTimer;
+    private final Timer executeTimer;
+    private final Counter answeredCounter;
+    private final Counter failedCounter;
+
+    public CallbackAnswerServiceImpl(@Lazy TelegramBot telegramBot,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${dispatcher.callback.threads:2}") int threads) {
+        this.telegramBot = telegramBot;
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.answerPool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "callback-answer-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.answerLatencyTimer = Timer.builder("dispatcher.callback.answer_latency")
+                .description("Час від отримання callback-запиту до виконання AnswerCallbackQuery")
+                .publishPercentiles(0.5, 0.99)
+                .serviceLevelObjectives(Duration.ofMillis(100))
+                .register(meterRegistry);
+        this.executeTimer = Timer.builder("dispatcher.callback.execute_latency")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.answeredCounter = Counter.builder("dispatcher.callback.answers")
+                .tag("result", "answered").register(meterRegistry);
+        this.failedCounter = Counter.builder("dispatcher.callback.answers")
+                .tag("result", "failed").register(meterRegistry);
+    }
+
+    @Override
+    public void markReceived(String callbackQueryId) {
+        if (callbackQueryId == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        receivedAt.put(callbackQueryId, now);
+        if (receivedAt.size() > RECEIPT_SWEEP_THRESHOLD) {
+            // Відповіді могли піти через інший інстанс dispatcher - прибираємо застарілі записи
+            receivedAt.values().removeIf(received -> now - received > RECEIPT_TTL_NANOS);
+        }
+    }
+
+    @Override
+    public void answer(AnswerCallbackQuery answer) {
+        if (answer == null || answer.getCallbackQueryId() == null) {
+            log.warn("Attempted to answer a null AnswerCallbackQuery or one without id.");
+            return;
+        }
+        try {
+            answerPool.execute(() -> execute(answer));
+        } catch (RejectedExecutionException e) {
+            failedCounter.increment();
+            log.error("Callback answer pool is shut down. AnswerCallbackQuery for id {} is lost", answer.getCallbackQueryId());
+        }
+    }
+
+    private void execute(AnswerCallbackQuery answer) {
+        long startedAt = System.nanoTime();
+        boolean answered = telegramBot.executeAnswerCallbackQuery(answer);
+        long finishedAt = System.nanoTime();
+        executeTimer.record(finishedAt - startedAt, TimeUnit.NANOSECONDS);
+
+        Long received = receivedAt.remove(answer.getCallbackQueryId());
+        if (!answered) {
+            failedCounter.increment();
+            return;
+        }
+        answeredCounter.increment();
+        if (received != null) {
+            answerLatencyTimer.record(finishedAt - received, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        answerPool.shutdown();
+        try {
+            if (!answerPool.awaitTermination(5, TimeUnit.SECONDS)) {
+                answerPool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            answerPool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
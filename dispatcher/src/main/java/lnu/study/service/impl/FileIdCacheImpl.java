@@ -0,0 +1,122 @@
+package lnu.study.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lnu.study.service.FileIdCache;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.objects.InputFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Log4j2
+@Service
+public class FileIdCacheImpl implements FileIdCache {
+
+    private final Map<String, String> fileIds;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter bytesSavedCounter;
+
+    public FileIdCacheImpl(MeterRegistry meterRegistry,
+                           @Value("${dispatcher.file-id-cache.capacity:10000}") int capacity) {
+        // LRU: при переповненні витісняється файл, який найдовше не відправлявся
+        this.fileIds = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > capacity;
+            }
+        };
+
+        Gauge.builder("dispatcher.file_id_cache.size", this, cache -> cache.size())
+                .register(meterRegistry);
+        this.hitCounter = Counter.builder("dispatcher.file_id_cache.requests")
+                .tag("result", "hit").register(meterRegistry);
+        this.missCounter = Counter.builder("dispatcher.file_id_cache.requests")
+                .tag("result", "miss").register(meterRegistry);
+        this.bytesSavedCounter = Counter.builder("dispatcher.file_id_cache.bytes_saved")
+                .description("Байти, які не довелося завантажувати в Telegram повторно")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public MediaKey keyOf(String kind, InputFile media) {
+        if (media == null || !media.isNew()) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            long size;
+            if (media.getNewMediaFile() != null) {
+                try (InputStream stream = Files.newInputStream(media.getNewMediaFile().toPath())) {
+                    size = digest(stream, digest);
+                }
+            } else if (media.getNewMediaStream() instanceof ByteArrayInputStream stream) {
+                stream.reset();
+                size = digest(stream, digest);
+                stream.reset();
+            } else {
+                return null;
+            }
+            // Ім'я файлу входить у ключ: Telegram показує ім'я з першого завантаження
+            String value = kind + ":" + HexFormat.of().formatHex(digest.digest()) + ":" + media.getMediaName();
+            return new MediaKey(value, size);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            log.warn("Failed to hash {} '{}': {}", kind, media.getMediaName(), e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized String lookup(MediaKey key) {
+        String fileId = fileIds.get(key.value());
+        if (fileId != null) {
+            hitCounter.increment();
+        } else {
+            missCounter.increment();
+        }
+        return fileId;
+    }
+
+    @Override
+    public synchronized void put(MediaKey key, String fileId) {
+        fileIds.put(key.value(), fileId);
+    }
+
+    @Override
+    public synchronized void evict(MediaKey key) {
+        fileIds.remove(key.value());
+    }
+
+    @Override
+    public void recordReuse(MediaKey key) {
+        bytesSavedCounter.increment(key.sizeBytes());
+    }
+
+    private synchronized int size() {
+        return fileIds.size();
+    }
+
+    private long digest(InputStream stream, MessageDigest digest) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long total = 0;
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+            total += read;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,78 @@
+package lnu.study.service.impl;
+
+import lnu.study.service.IngestionTracker;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+@Log4j2
+@Service
+public class IngestionTrackerImpl implements IngestionTracker {
+
+    private enum State { PENDING, SETTLED, FAILED }
+
+    // Лише оновлення, за які offset ще не зсунувся; завершений префікс видаляється в committableOffset
+    private final TreeMap<Integer, State> states = new TreeMap<>();
+
+    @Override
+    public synchronized boolean track(Integer updateId) {
+        if (updateId == null) {
+            return false;
+        }
+        State state = states.putIfAbsent(updateId, State.PENDING);
+        if (state == State.FAILED) {
+            states.put(updateId, State.PENDING);
+            log.info("Reprocessing update_id={} after a failed publish", updateId);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized void settled(Integer updateId) {
+        if (updateId != null && states.replace(updateId, State.SETTLED) != null) {
+            notifyAll();
+        }
+    }
+
+    @Override
+    public synchronized void failed(Integer updateId) {
+        if (updateId != null && states.replace(updateId, State.FAILED) != null) {
+            notifyAll();
+        }
+    }
+
+    @Override
+    public synchronized long committableOffset(long next) {
+        while (!states.isEmpty() && states.firstEntry().getValue() == State.SETTLED) {
+            states.pollFirstEntry();
+        }
+        return states.isEmpty() ? next : Math.min(next, states.firstKey());
+    }
+
+    @Override
+    public synchronized boolean awaitSettled(long lastUpdateId, long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        // Втрачені оновлення вже не зміняться до наступного getUpdates, тож чекаємо лише PENDING
+        while (contains(lastUpdateId, State.PENDING)) {
+            long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMs <= 0) {
+                return false;
+            }
+            wait(remainingMs);
+        }
+        return !contains(lastUpdateId, State.FAILED);
+    }
+
+    private boolean contains(long lastUpdateId, State state) {
+        for (Map.Entry<Integer, State> entry : states.headMap((int) Math.min(lastUpdateId, Integer.MAX_VALUE), true).entrySet()) {
+            if (entry.getValue() == state) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
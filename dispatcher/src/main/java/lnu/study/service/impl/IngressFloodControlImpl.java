@@ -0,0 +1,289 @@
+package lnu.study.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lnu.study.controller.TelegramBot;
+import lnu.study.service.IngressFloodControl;
+import lnu.study.service.enums.FloodAction;
+import lnu.study.service.enums.UpdateKind;
+import lnu.study.utils.ChatFloodLimiter;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Відкладені оновлення публікуються через UpdateProducer та MediaGroupAggregator,
+ * тому цей бін зупиняється раніше за них і встигає передати відкладене.
+ */
+@Log4j2
+@Service
+@DependsOn({"updateProducerImpl", "mediaGroupAggregatorImpl"})
+public class IngressFloodControlImpl implements IngressFloodControl {
+
+    private static final String DEFER_NOTICE = "Забагато файлів за короткий час. Наступні будуть оброблені із затримкою.";
+    private static final String DROP_NOTICE = "Забагато повідомлень за короткий час, частину з них пропущено. Спробуйте трохи пізніше.";
+
+    private final TelegramBot telegramBot;
+    private final boolean enabled;
+    private final Map<UpdateKind, Policy> policies = new EnumMap<>(UpdateKind.class);
+    private final ScheduledExecutorService scheduler;
+    private final MeterRegistry meterRegistry;
+    // Чати з відкладеними оновленнями. Поки черга чату існує, усі нові оновлення цього чату
+    // (зокрема текст і callback) стають у її кінець, тож /cancel не обганяє відкладені файли
+    private final Map<Long, ChatQueue> deferredChats = new HashMap<>();
+    private volatile boolean stopped;
+
+    public IngressFloodControlImpl(@Lazy TelegramBot telegramBot,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${dispatcher.flood.enabled:true}") boolean enabled,
+                                   @Value("${dispatcher.flood.max-defer-seconds:60}") long maxDeferSeconds,
+                                   @Value("${dispatcher.flood.notice-interval-seconds:60}") long noticeIntervalSeconds,
+                                   @Value("${dispatcher.flood.policy.photo:DEFER,0.5,10}") String photoPolicy,
+                                   @Value("${dispatcher.flood.policy.doc:DEFER,0.5,10}") String docPolicy,
+                                   @Value("${dispatcher.flood.policy.audio:DEFER,0.5,5}") String audioPolicy,
+                                   @Value("${dispatcher.flood.policy.voice:DEFER,0.5,5}") String voicePolicy,
+                                   @Value("${dispatcher.flood.policy.text:DROP,2,20}") String textPolicy,
+                                   @Value("${dispatcher.flood.policy.callback:ALLOW}") String callbackPolicy) {
+        this.telegramBot = telegramBot;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "flood-control");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long maxDeferNanos = TimeUnit.SECONDS.toNanos(maxDeferSeconds);
+        long noticeIntervalNanos = TimeUnit.SECONDS.toNanos(noticeIntervalSeconds);
+        register(UpdateKind.PHOTO, photoPolicy, maxDeferNanos, noticeIntervalNanos);
+        register(UpdateKind.DOC, docPolicy, maxDeferNanos, noticeIntervalNanos);
+        register(UpdateKind.AUDIO, audioPolicy, maxDeferNanos, noticeIntervalNanos);
+        register(UpdateKind.VOICE, voicePolicy, maxDeferNanos, noticeIntervalNanos);
+        register(UpdateKind.TEXT, textPolicy, maxDeferNanos, noticeIntervalNanos);
+        register(UpdateKind.CALLBACK_QUERY, callbackPolicy, maxDeferNanos, noticeIntervalNanos);
+
+        // Неактивні чати прибираються і при рості таблиці, періодичне прибирання звільняє пам'ять після сплеску
+        scheduler.scheduleWithFixedDelay(this::evictIdle, 1, 1, TimeUnit.MINUTES);
+        log.info("Ingress flood control enabled: {}. Policies: {}", enabled, policies);
+    }
+
+    @Override
+    public boolean submit(UpdateKind kind, Long chatId, Runnable publish) {
+        if (!enabled || chatId == null || stopped) {
+            publish.run();
+            return true;
+        }
+        Policy policy = kind != null ? policies.get(kind) : null;
+        boolean limited = policy != null && policy.limiter() != null;
+        long now = System.nanoTime();
+        long delay = limited ? policy.limiter().admit(chatId, now) : 0;
+        if (delay == ChatFloodLimiter.REJECTED) {
+            policy.dropped().increment();
+            log.info("Flood control: {} update from chat_id {} dropped", kind, chatId);
+            notice(policy, chatId, now, DROP_NOTICE);
+            return false;
+        }
+        long runAt;
+        synchronized (deferredChats) {
+            ChatQueue queue = deferredChats.get(chatId);
+            if (queue == null && delay == 0) {
+                runAt = now;
+            } else {
+                boolean created = queue == null;
+                if (created) {
+                    queue = new ChatQueue(chatId);
+                    deferredChats.put(chatId, queue);
+                }
+                // Не раніше за попереднє відкладене оновлення чату - порядок зберігається
+                runAt = Math.max(now + delay, queue.lastRunAt);
+                queue.items.addLast(new DeferredPublish(publish, runAt));
+                queue.lastRunAt = runAt;
+                if (created) {
+                    scheduleDrain(queue, runAt - now);
+                }
+            }
+        }
+        if (runAt == now) {
+            publish.run();
+            return true;
+        }
+        if (limited) {
+            policy.deferred().increment();
+            notice(policy, chatId, now, DEFER_NOTICE);
+        }
+        log.debug("Flood control: {} update from chat_id {} deferred by {} ms", kind, chatId, TimeUnit.NANOSECONDS.toMillis(runAt - now));
+        return true;
+    }
+
+    private boolean hasDeferred(Long chatId) {
+        if (chatId == null) {
+            return false;
+        }
+        synchronized (deferredChats) {
+            return deferredChats.containsKey(chatId);
+        }
+    }
+
+    private void scheduleDrain(ChatQueue queue, long delayNanos) {
+        try {
+            scheduler.schedule(() -> drain(queue), Math.max(0, delayNanos), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // Зупинка: черга залишається в deferredChats і буде передана в shutdown()
+            log.debug("Flood control is stopping, chat_id {} will be flushed on shutdown", queue.chatId);
+        }
+    }
+
+    // Публікує готові оновлення чату; черга лишається в таблиці, доки публікація не завершиться
+    private void drain(ChatQueue queue) {
+        List<Runnable> ready = new ArrayList<>();
+        synchronized (deferredChats) {
+            long now = System.nanoTime();
+            while (!queue.items.isEmpty() && queue.items.peekFirst().runAt() <= now) {
+                ready.add(queue.items.pollFirst().publish());
+            }
+        }
+        ready.forEach(this::runSafely);
+        long delay;
+        synchronized (deferredChats) {
+            if (stopped) {
+                return;
+            }
+            if (queue.items.isEmpty()) {
+                deferredChats.remove(queue.chatId);
+                return;
+            }
+            delay = queue.items.peekFirst().runAt() - System.nanoTime();
+        }
+        scheduleDrain(queue, delay);
+    }
+
+    private void runSafely(Runnable publish) {
+        try {
+            publish.run();
+        } catch (RuntimeException e) {
+            log.error("Deferred update publish failed: {}", e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean tryAdmitNow(UpdateKind kind, Long chatId) {
+        Policy policy = kind != null ? policies.get(kind) : null;
+        if (!enabled || chatId == null || policy == null || policy.limiter() == null) {
+            return !hasDeferred(chatId);
+        }
+        return !hasDeferred(chatId) && policy.limiter().tryAdmit(chatId, System.nanoTime());
+    }
+
+    private void notice(Policy policy, long chatId, long now, String text) {
+        if (!policy.limiter().tryNotice(chatId, now)) {
+            return;
+        }
+        // Нове "вікно" обмеження для чату - рахуємо його один раз, як і повідомлення користувачу
+        policy.throttledChats().increment();
+        log.warn("Flood control: chat_id {} exceeded {} limit ({})", chatId, policy.kind(), policy.action());
+        SendMessage sendMessage = new SendMessage();
+        sendMessage.setChatId(String.valueOf(chatId));
+        sendMessage.setText(text);
+        telegramBot.sendAnswerMessage(sendMessage);
+    }
+
+    private void register(UpdateKind kind, String spec, long maxDeferNanos, long noticeIntervalNanos) {
+        // Формат: ДІЯ[,оновлень_за_секунду,сплеск], наприклад "DEFER,0.5,10" або "ALLOW"
+        String[] parts = spec.split(",");
+        FloodAction action = FloodAction.valueOf(parts[0].trim().toUpperCase());
+        ChatFloodLimiter limiter = null;
+        if (action != FloodAction.ALLOW) {
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Flood policy for " + kind + " must be ACTION,rate,burst: " + spec);
+            }
+            limiter = new ChatFloodLimiter(Double.parseDouble(parts[1].trim()), Integer.parseInt(parts[2].trim()),
+                    action == FloodAction.DEFER ? maxDeferNanos : 0, noticeIntervalNanos);
+            ChatFloodLimiter tracked = limiter;
+            Gauge.builder("dispatcher.flood.tracked_chats", () -> tracked.size())
+                    .tag("kind", kind.name())
+                    .register(meterRegistry);
+        }
+        policies.put(kind, new Policy(kind, action, spec.trim(), limiter,
+                counter(kind, "deferred"), counter(kind, "dropped"),
+                Counter.builder("dispatcher.flood.throttled_chats")
+                        .description("Скільки разів чат перевищив ліміт (не частіше ніж раз на інтервал повідомлень)")
+                        .tag("kind", kind.name())
+                        .register(meterRegistry)));
+    }
+
+    private Counter counter(UpdateKind kind, String result) {
+        return Counter.builder("dispatcher.flood.updates")
+                .tag("kind", kind.name())
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private void evictIdle() {
+        long now = System.nanoTime();
+        for (Policy policy : policies.values()) {
+            if (policy.limiter() != null) {
+                policy.limiter().evictIdle(now);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopped = true;
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Відкладені публікації виконуємо одразу і в порядку чату, поки продюсер ще працює
+        List<Runnable> pending = new ArrayList<>();
+        synchronized (deferredChats) {
+            for (ChatQueue queue : deferredChats.values()) {
+                queue.items.forEach(item -> pending.add(item.publish()));
+            }
+            deferredChats.clear();
+        }
+        if (!pending.isEmpty()) {
+            log.info("Flood control: publishing {} deferred updates on shutdown", pending.size());
+        }
+        pending.forEach(this::runSafely);
+    }
+
+    private static final class ChatQueue {
+        private final long chatId;
+        private final ArrayDeque<DeferredPublish> items = new ArrayDeque<>();
+        private long lastRunAt = Long.MIN_VALUE;
+
+        private ChatQueue(long chatId) {
+            this.chatId = chatId;
+        }
+    }
+
+    private record DeferredPublish(Runnable publish, long runAt) {
+    }
+
+    private record Policy(UpdateKind kind, FloodAction action, String spec, ChatFloodLimiter limiter,
+                          Counter deferred, Counter dropped, Counter throttledChats) {
+        @Override
+        public String toString() {
+            return kind + "=" + spec;
+        }
+    }
+}
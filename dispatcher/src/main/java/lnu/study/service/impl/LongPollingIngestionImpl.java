@@ -0,0 +1,251 @@
+package lnu.study.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lnu.study.controller.UpdateProcessor;
+import lnu.study.service.IngestionTracker;
+import lnu.study.service.LeaderElection;
+import lnu.study.service.LongPollingIngestion;
+import lnu.study.utils.RawUpdate;
+import lnu.study.utils.UpdateBatchReader;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Режим dispatcher.ingestion.mode=LONG_POLLING: оновлення забираються через getUpdates пакетами
+ * і проходять той самий конвеєр UpdateProcessor, що й тіла вебхуків.
+ * Offset зсувається лише за оновлення, які брокер підтвердив, журнал зберіг або конвеєр свідомо відкинув;
+ * відкладені контролем флуду, зібрані в альбом чи ті, що чекають повтору, тримають offset на місці.
+ */
+@Log4j2
+@Service
+@ConditionalOnProperty(name = "dispatcher.ingestion.mode", havingValue = "LONG_POLLING")
+public class LongPollingIngestionImpl implements LongPollingIngestion {
+
+    private static final long MIN_BACKOFF_MS = 1_000;
+    private static final long MAX_BACKOFF_MS = 30_000;
+    private static final String ALLOWED_UPDATES = "[\"message\",\"callback_query\"]";
+
+    private final UpdateProcessor updateProcessor;
+    private final IngestionTracker ingestionTracker;
+    private final LeaderElection leaderElection;
+    private final HttpClient httpClient;
+    private final String getUpdatesUrl;
+    private final int batchSize;
+    private final int timeoutSeconds;
+    private final long confirmTimeoutMs;
+    private final Path offsetFile;
+    private final AtomicLong offset = new AtomicLong();
+    private volatile boolean running;
+    private Thread pollerThread;
+
+    private final Counter updatesCounter;
+    private final Counter errorCounter;
+    private final DistributionSummary batchSizeSummary;
+    private final Timer batchPublishTimer;
+
+    public LongPollingIngestionImpl(UpdateProcessor updateProcessor,
+                                    IngestionTracker ingestionTracker,
+                                    LeaderElection leaderElection,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${bot.token}") String botToken,
+                                    @Value("${dispatcher.polling.api-url:https://api.telegram.org}") String apiUrl,
+                                    @Value("${dispatcher.polling.batch-size:100}") int batchSize,
+                                    @Value("${dispatcher.polling.timeout-seconds:30}") int timeoutSeconds,
+                                    @Value("${dispatcher.polling.confirm-timeout-ms:10000}") long confirmTimeoutMs,
+                                    @Value("${dispatcher.polling.offset-file:./data/polling-offset}") String offsetFile) {
+        this.updateProcessor = updateProcessor;
+        this.ingestionTracker = ingestionTracker;
+        this.leaderElection = leaderElection;
+        this.getUpdatesUrl = apiUrl.replaceAll("/+$", "") + "/bot" + botToken + "/getUpdates";
+        // Bot API не віддає більше 100 оновлень за запит
+        this.batchSize = Math.max(1, Math.min(batchSize, 100));
+        this.timeoutSeconds = timeoutSeconds;
+        this.confirmTimeoutMs = confirmTimeoutMs;
+        this.offsetFile = Path.of(offsetFile);
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+
+        Gauge.builder("dispatcher.polling.offset", offset, AtomicLong::get)
+                .register(meterRegistry);
+        this.updatesCounter = Counter.builder("dispatcher.polling.updates")
+                .register(meterRegistry);
+        this.errorCounter = Counter.builder("dispatcher.polling.errors")
+                .register(meterRegistry);
+        this.batchSizeSummary = DistributionSummary.builder("dispatcher.polling.batch_size")
+                .register(meterRegistry);
+        this.batchPublishTimer = Timer.builder("dispatcher.polling.batch_publish")
+                .description("Час від отримання пакета getUpdates до підтвердження всіх його публікацій брокером")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void register() {
+        // Два одночасні getUpdates для одного бота отримують 409 Conflict - опитує лише лідер
+        leaderElection.onLeadershipAcquired(this::start);
+        leaderElection.onLeadershipLost(this::stop);
+    }
+
+    private synchronized void start() {
+        if (running) {
+            return;
+        }
+        offset.set(loadOffset());
+        running = true;
+        pollerThread = new Thread(this::pollLoop, "telegram-long-poll");
+        pollerThread.setDaemon(true);
+        pollerThread.start();
+        log.info("Long polling started: batch size {}, timeout {} s, offset {}", batchSize, timeoutSeconds, offset.get());
+    }
+
+    @Override
+    public long getOffset() {
+        return offset.get();
+    }
+
+    private void pollLoop() {
+        long backoffMs = MIN_BACKOFF_MS;
+        while (running) {
+            try {
+                List<byte[]> batch = fetch();
+                backoffMs = MIN_BACKOFF_MS;
+                if (!batch.isEmpty()) {
+                    publishBatch(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                errorCounter.increment();
+                log.error("getUpdates failed, retrying in {} ms: {}", backoffMs, e.getMessage());
+                try {
+                    Thread.sleep(backoffMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+            }
+        }
+        log.info("Long polling stopped at offset {}", offset.get());
+    }
+
+    private List<byte[]> fetch() throws IOException, InterruptedException {
+        String url = getUpdatesUrl
+                + "?offset=" + offset.get()
+                + "&limit=" + batchSize
+                + "&timeout=" + timeoutSeconds
+                + "&allowed_updates=" + URLEncoder.encode(ALLOWED_UPDATES, StandardCharsets.UTF_8);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(timeoutSeconds + 10L))
+                .GET()
+                .build();
+        HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        // Помилки Bot API (наприклад, 409 при встановленому вебхуку) приходять з описом у тілі
+        return UpdateBatchReader.readResult(response.body());
+    }
+
+    private void publishBatch(List<byte[]> batch) throws InterruptedException {
+        long startedAt = System.nanoTime();
+        long lastUpdateId = offset.get() - 1;
+        for (byte[] body : batch) {
+            Integer updateId = null;
+            try {
+                RawUpdate rawUpdate = RawUpdate.parse(body);
+                updateId = rawUpdate.updateId();
+                if (updateId != null) {
+                    // Публікацію було втрачено: Telegram віддав оновлення знову, і вікно дублікатів має його пропустити
+                    if (ingestionTracker.track(updateId)) {
+                        updateProcessor.forgetUpdate(updateId);
+                    }
+                    lastUpdateId = Math.max(lastUpdateId, updateId);
+                }
+                updateProcessor.processRawUpdate(rawUpdate);
+            } catch (Exception e) {
+                log.error("Failed to process polled update: {}", e.getMessage(), e);
+                // Оновлення, яке не вдається обробити, не повинно назавжди зупинити offset
+                ingestionTracker.settled(updateId);
+            }
+        }
+        // Публікації пакета йдуть у брокер без очікування одна одної; чекаємо на весь пакет один раз
+        if (!ingestionTracker.awaitSettled(lastUpdateId, confirmTimeoutMs)) {
+            log.warn("Not all updates up to update_id={} were confirmed or spooled within {} ms", lastUpdateId, confirmTimeoutMs);
+        }
+        batchPublishTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        updatesCounter.increment(batch.size());
+        batchSizeSummary.record(batch.size());
+
+        // Незавершені оновлення наступний getUpdates поверне знову, вже завершені відсіє вікно update_id
+        long next = ingestionTracker.committableOffset(lastUpdateId + 1);
+        if (next != offset.get()) {
+            offset.set(next);
+            saveOffset(next);
+        }
+        log.debug("Processed batch of {} updates, next offset {}", batch.size(), next);
+    }
+
+    private long loadOffset() {
+        try {
+            if (Files.exists(offsetFile)) {
+                return Long.parseLong(Files.readString(offsetFile).trim());
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Could not read polling offset from {}: {}", offsetFile, e.getMessage());
+        }
+        // 0 - Telegram віддасть найстаріше непідтверджене оновлення
+        return 0;
+    }
+
+    private void saveOffset(long value) {
+        try {
+            Path parent = offsetFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path tmp = offsetFile.resolveSibling(offsetFile.getFileName() + ".tmp");
+            Files.writeString(tmp, Long.toString(value));
+            Files.move(tmp, offsetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not persist polling offset {} to {}: {}", value, offsetFile, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        running = false;
+        if (pollerThread != null) {
+            pollerThread.interrupt();
+            try {
+                pollerThread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            pollerThread = null;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package lnu.study.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lnu.study.service.IngestionTracker;
+import lnu.study.service.MediaGroupAggregator;
+import lnu.study.service.UpdateProducer;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+@Log4j2
+@Service
+public class MediaGroupAggregatorImpl implements MediaGroupAggregator {
+
+    // Telegram дозволяє не більше 10 елементів в альбомі
+    private static final int MAX_GROUP_SIZE = 10;
+
+    private final UpdateProducer updateProducer;
+    private final IngestionTracker ingestionTracker;
+    private final boolean enabled;
+    private final long quietWindowMs;
+    private final long maxWaitMs;
+    private final Map<String, PendingGroup> groups = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flushScheduler;
+
+    private final Counter flushedCounter;
+    private final DistributionSummary groupSize;
+
+    public MediaGroupAggregatorImpl(UpdateProducer updateProducer,
+                                    IngestionTracker ingestionTracker,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${dispatcher.media-group.enabled:true}") boolean enabled,
+                                    @Value("${dispatcher.media-group.quiet-window-ms:700}") long quietWindowMs,
+                                    @Value("${dispatcher.media-group.max-wait-ms:3000}") long maxWaitMs) {
+        this.updateProducer = updateProducer;
+        this.ingestionTracker = ingestionTracker;
+        this.enabled = enabled;
+        this.quietWindowMs = quietWindowMs;
+        this.maxWaitMs = maxWaitMs;
+        this.flushScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "media-group-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Gauge.builder("dispatcher.media_groups.pending", groups, Map::size)
+                .description("Альбоми, що ще збираються")
+                .register(meterRegistry);
+        this.flushedCounter = Counter.builder("dispatcher.media_groups.flushed")
+                .register(meterRegistry);
+        this.groupSize = DistributionSummary.builder("dispatcher.media_groups.size")
+                .description("Кількість оновлень в опублікованому альбомі")
+                .register(meterRegistry);
+        log.info("Media group aggregation enabled: {}. Quiet window: {} ms, max wait: {} ms", enabled, quietWindowMs, maxWaitMs);
+    }
+
+    @Override
+    public boolean offer(String mediaGroupId, Long chatId, Integer updateId, byte[] body) {
+        if (!enabled || mediaGroupId == null) {
+            return false;
+        }
+        // Ключ з chatId: media_group_id унікальний лише в межах чату
+        String key = chatId + ":" + mediaGroupId;
+        boolean[] full = new boolean[1];
+        groups.compute(key, (k, group) -> {
+            if (group == null) {
+                group = new PendingGroup(mediaGroupId, chatId, System.nanoTime());
+            }
+            group.items.add(new Item(updateId, body));
+            full[0] = group.items.size() >= MAX_GROUP_SIZE;
+            if (group.flushTask != null) {
+                group.flushTask.cancel(false);
+            }
+            if (!full[0]) {
+                // Кожен новий елемент продовжує вікно, але не довше за max-wait від першого елемента
+                long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - group.startedAtNanos);
+                long delay = Math.max(0, Math.min(quietWindowMs, maxWaitMs - waitedMs));
+                group.flushTask = flushScheduler.schedule(() -> flush(k), delay, TimeUnit.MILLISECONDS);
+            }
+            return group;
+        });
+        if (full[0]) {
+            flush(key);
+        }
+        return true;
+    }
+
+    private void flush(String key) {
+        PendingGroup group = groups.remove(key);
+        if (group == null) {
+            return;
+        }
+        List<Item> items = group.items;
+        // Елементи могли прийти з різних потоків прийому - відновлюємо порядок Telegram
+        items.sort(Comparator.comparing(Item::updateId, Comparator.nullsLast(Comparator.naturalOrder())));
+        List<Integer> updateIds = new ArrayList<>(items.size());
+        List<byte[]> bodies = new ArrayList<>(items.size());
+        for (Item item : items) {
+            updateIds.add(item.updateId());
+            bodies.add(item.body());
+        }
+        try {
+            updateProducer.produceMediaGroup(group.mediaGroupId, group.chatId, updateIds, bodies);
+            flushedCounter.increment();
+            groupSize.record(items.size());
+        } catch (Exception e) {
+            log.error("Failed to publish media group {} for chat_id {}: {}", group.mediaGroupId, group.chatId, e.getMessage(), e);
+            updateIds.forEach(ingestionTracker::failed);
+        }
+    }
+
+    @PreDestroy
+    public void flushAll() {
+        flushScheduler.shutdownNow();
+        for (String key : List.copyOf(groups.keySet())) {
+            flush(key);
+        }
+    }
+
+    private static final class PendingGroup {
+        private final String mediaGroupId;
+        private final Long chatId;
+        private final long startedAtNanos;
+        private final List<Item> items = new ArrayList<>(MAX_GROUP_SIZE);
+        private ScheduledFuture<?> flushTask;
+
+        private PendingGroup(String mediaGroupId, Long chatId, long startedAtNanos) {
+            this.mediaGroupId = mediaGroupId;
+            this.chatId = chatId;
+            this.startedAtNanos = startedAtNanos;
+        }
+    }
+
+    private record Item(Integer updateId, byte[] body) {
+    }
+}
@@ -0,0 +1,386 @@
+package lnu.study.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lnu.study.service.OutboundSendScheduler;
+import lnu.study.service.enums.SendOutcome;
+import lnu.study.service.enums.SendPriority;
+import lnu.study.utils.TokenBucket;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+@Log4j2
+@Service
+public class OutboundSendSchedulerImpl implements OutboundSendScheduler {
+
+    private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long LANE_SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final int capacity;
+    private final int maxRetries;
+    private final double chatRate;
+    private final double groupRate;
+    private final TokenBucket globalBucket;
+    private final ExecutorService senderPool;
+    private final Thread schedulerThread;
+    private volatile boolean running = true;
+
+    // Увесь стан черг захищений одним замком, сама відправка виконується поза ним
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Map<String, ChatLane> lanes = new HashMap<>();
+    private final Map<SendPriority, ArrayDeque<ChatLane>> ready = new EnumMap<>(SendPriority.class);
+    private final PriorityQueue<ChatLane> delayed = new PriorityQueue<>(Comparator.comparingLong(lane -> lane.eligibleAtNanos));
+    private int pending;
+    private long lastSweepNanos = System.nanoTime();
+
+    private final Map<SendPriority, Timer> queueWaitTimers = new EnumMap<>(SendPriority.class);
+    private final Map<SendPriority, Timer> sendLatencyTimers = new EnumMap<>(SendPriority.class);
+    private final Counter sentCounter;
+    private final Counter failedCounter;
+    private final Counter rateLimitedCounter;
+    private final Counter droppedCounter;
+
+    public OutboundSendSchedulerImpl(MeterRegistry meterRegistry,
+                                     @Value("${dispatcher.outbound.capacity:10000}") int capacity,
+                                     @Value("${dispatcher.outbound.senders:8}") int senders,
+                                     @Value("${dispatcher.outbound.global-rate:30}") double globalRate,
+                                     @Value("${dispatcher.outbound.chat-rate:1}") double chatRate,
+                                     @Value("${dispatcher.outbound.group-rate-per-minute:20}") double groupRatePerMinute,
+                                     @Value("${dispatcher.outbound.max-retries:5}") int maxRetries) {
+        this.capacity = capacity;
+        this.maxRetries = maxRetries;
+        this.chatRate = chatRate;
+        this.groupRate = groupRatePerMinute / 60d;
+        this.globalBucket = new TokenBucket(globalRate, globalRate, System.nanoTime());
+        for (SendPriority priority : SendPriority.values()) {
+            ready.put(priority, new ArrayDeque<>());
+        }
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.senderPool = Executors.newFixedThreadPool(senders, r -> {
+            Thread thread = new Thread(r, "outbound-sender-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.schedulerThread = new Thread(this::scheduleLoop, "outbound-scheduler");
+        this.schedulerThread.setDaemon(true);
+
+        Gauge.builder("dispatcher.outbound.pending", this, OutboundSendSchedulerImpl::getPendingCount)
+                .description("Виклики Bot API, що очікують відправки")
+                .register(meterRegistry);
+        for (SendPriority priority : SendPriority.values()) {
+            queueWaitTimers.put(priority, Timer.builder("dispatcher.outbound.queue_wait")
+                    .tag("priority", priority.name())
+                    .publishPercentiles(0.5, 0.99)
+                    .register(meterRegistry));
+            sendLatencyTimers.put(priority, Timer.builder("dispatcher.outbound.send_latency")
+                    .tag("priority", priority.name())
+                    .publishPercentiles(0.5, 0.99)
+                    .register(meterRegistry));
+        }
+        this.sentCounter = Counter.builder("dispatcher.outbound.messages")
+                .tag("result", "sent").register(meterRegistry);
+        this.failedCounter = Counter.builder("dispatcher.outbound.messages")
+                .tag("result", "failed").register(meterRegistry);
+        this.rateLimitedCounter = Counter.builder("dispatcher.outbound.messages")
+                .tag("result", "rate_limited").register(meterRegistry);
+        this.droppedCounter = Counter.builder("dispatcher.outbound.messages")
+                .tag("result", "dropped").register(meterRegistry);
+
+        log.info("OutboundSendScheduler initialized: capacity={}, senders={}, globalRate={}/s, chatRate={}/s, groupRate={}/min",
+                capacity, senders, globalRate, chatRate, groupRatePerMinute);
+    }
+
+    @PostConstruct
+    public void start() {
+        schedulerThread.start();
+    }
+
+    @Override
+    public void submit(String chatId, SendPriority priority, SendAction action, Consumer<SendOutcome> onFinished) {
+        lock.lock();
+        try {
+            // Зворотний тиск: слухач RabbitMQ чекає, а повідомлення залишаються в черзі брокера
+            while (running && pending >= capacity) {
+                notFull.await();
+            }
+            if (!running) {
+                droppedCounter.increment();
+                log.warn("Outbound scheduler is stopped. Dropping send to chat_id={}", chatId);
+                onFinished.accept(SendOutcome.STOPPED);
+                return;
+            }
+            long now = System.nanoTime();
+            ChatLane lane = chatId == null ? new ChatLane(null, null, now) : lanes.computeIfAbsent(chatId, id -> newLane(id, now));
+            lane.tasks.addLast(new OutboundTask(priority, action, onFinished, now));
+            pending++;
+            if (!lane.inFlight && !lane.queued) {
+                enqueueLane(lane, now);
+            }
+            workAvailable.signal();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            droppedCounter.increment();
+            log.error("Interrupted while waiting for outbound queue space. Send to chat_id={} is lost", chatId);
+            onFinished.accept(SendOutcome.STOPPED);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return pending;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void scheduleLoop() {
+        while (running || getPendingCount() > 0) {
+            ChatLane lane;
+            OutboundTask task;
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                promoteDelayed(now);
+                sweepIdleLanes(now);
+                if (!hasReady()) {
+                    long wait = delayed.isEmpty() ? IDLE_WAIT_NANOS : Math.max(1, delayed.peek().eligibleAtNanos - now);
+                    workAvailable.awaitNanos(Math.min(wait, IDLE_WAIT_NANOS));
+                    continue;
+                }
+                long globalWait = globalBucket.nanosUntilAvailable(now);
+                if (globalWait > 0) {
+                    workAvailable.awaitNanos(globalWait);
+                    continue;
+                }
+                lane = pollReady();
+                if (lane.bucket != null && !lane.bucket.tryConsume(now)) {
+                    enqueueLane(lane, now);
+                    continue;
+                }
+                globalBucket.tryConsume(now);
+                task = lane.tasks.pollFirst();
+                lane.inFlight = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+            senderPool.execute(() -> send(lane, task));
+        }
+    }
+
+    private void send(ChatLane lane, OutboundTask task) {
+        long startedAt = System.nanoTime();
+        queueWaitTimers.get(task.priority).record(startedAt - task.readyAtNanos, TimeUnit.NANOSECONDS);
+        long retryAfterSeconds = -1;
+        SendOutcome outcome = SendOutcome.FAILED;
+        try {
+            task.action.send();
+            sentCounter.increment();
+            outcome = SendOutcome.SENT;
+        } catch (TelegramApiRequestException e) {
+            if (e.getErrorCode() != null && e.getErrorCode() == 429) {
+                rateLimitedCounter.increment();
+                retryAfterSeconds = e.getParameters() != null && e.getParameters().getRetryAfter() != null
+                        ? e.getParameters().getRetryAfter() : 1;
+                log.warn("Telegram rate limit hit for chat_id={}. Retrying after {} s", lane.chatId, retryAfterSeconds);
+            } else {
+                failedCounter.increment();
+                log.error("Telegram rejected send to chat_id={}: {} {}", lane.chatId, e.getErrorCode(), e.getApiResponse(), e);
+            }
+        } catch (TelegramApiException e) {
+            failedCounter.increment();
+            log.error("Failed to send to chat_id={}: {}", lane.chatId, e.getMessage(), e);
+        } catch (RuntimeException e) {
+            failedCounter.increment();
+            log.error("Unexpected error sending to chat_id={}: {}", lane.chatId, e.getMessage(), e);
+        } finally {
+            sendLatencyTimers.get(task.priority).record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+        complete(lane, task, outcome, retryAfterSeconds);
+    }
+
+    private void complete(ChatLane lane, OutboundTask task, SendOutcome outcome, long retryAfterSeconds) {
+        boolean finished = true;
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            lane.inFlight = false;
+            if (retryAfterSeconds >= 0 && task.attempt < maxRetries) {
+                // Повертаємо на початок черги чату, щоб не порушити порядок повідомлень.
+                // retry_after блокує лише цей чат: глобальний кошик і решта чатів працюють далі
+                task.attempt++;
+                task.readyAtNanos = now;
+                lane.blockedUntilNanos = now + TimeUnit.SECONDS.toNanos(retryAfterSeconds);
+                lane.tasks.addFirst(task);
+                finished = false;
+            } else {
+                if (retryAfterSeconds >= 0) {
+                    droppedCounter.increment();
+                    log.error("Giving up on send to chat_id={} after {} rate-limited attempts", lane.chatId, task.attempt + 1);
+                    outcome = SendOutcome.RATE_LIMITED;
+                }
+                pending--;
+                notFull.signal();
+            }
+            if (!lane.tasks.isEmpty()) {
+                enqueueLane(lane, now);
+                workAvailable.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        // Поза блокуванням: обробник може чекати на монітори власника виклику
+        if (finished) {
+            task.onFinished.accept(outcome);
+        }
+    }
+
+    private ChatLane newLane(String chatId, long now) {
+        // Від'ємний chat_id - група або канал, для них Telegram дозволяє близько 20 повідомлень на хвилину
+        double rate = chatId.startsWith("-") ? groupRate : chatRate;
+        return new ChatLane(chatId, new TokenBucket(1, rate, now), now);
+    }
+
+    private void enqueueLane(ChatLane lane, long now) {
+        long wait = Math.max(0, lane.blockedUntilNanos - now);
+        if (lane.bucket != null) {
+            wait = Math.max(wait, lane.bucket.nanosUntilAvailable(now));
+        }
+        lane.queued = true;
+        if (wait == 0) {
+            ready.get(lane.tasks.peekFirst().priority).addLast(lane);
+        } else {
+            lane.eligibleAtNanos = now + wait;
+            delayed.add(lane);
+        }
+    }
+
+    private void promoteDelayed(long now) {
+        while (!delayed.isEmpty() && delayed.peek().eligibleAtNanos <= now) {
+            ChatLane lane = delayed.poll();
+            ready.get(lane.tasks.peekFirst().priority).addLast(lane);
+        }
+    }
+
+    private boolean hasReady() {
+        for (ArrayDeque<ChatLane> lanesOfPriority : ready.values()) {
+            if (!lanesOfPriority.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ChatLane pollReady() {
+        // EnumMap ітерується в порядку оголошення: HIGH -> NORMAL -> BULK -> BACKGROUND
+        for (ArrayDeque<ChatLane> lanesOfPriority : ready.values()) {
+            ChatLane lane = lanesOfPriority.pollFirst();
+            if (lane != null) {
+                lane.queued = false;
+                return lane;
+            }
+        }
+        return null;
+    }
+
+    private void sweepIdleLanes(long now) {
+        if (now - lastSweepNanos < LANE_SWEEP_INTERVAL_NANOS) {
+            return;
+        }
+        lastSweepNanos = now;
+        // Стан кошика потрібен лише доки він не поповнився повністю
+        Iterator<ChatLane> iterator = lanes.values().iterator();
+        while (iterator.hasNext()) {
+            ChatLane lane = iterator.next();
+            if (!lane.inFlight && !lane.queued && lane.tasks.isEmpty()
+                    && lane.blockedUntilNanos - now <= 0 && lane.bucket.nanosUntilAvailable(now) == 0) {
+                iterator.remove();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        log.info("Shutting down outbound scheduler. Pending sends: {}", getPendingCount());
+        running = false;
+        lock.lock();
+        try {
+            workAvailable.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            schedulerThread.join(TimeUnit.SECONDS.toMillis(10));
+            senderPool.shutdown();
+            if (!senderPool.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Outbound senders did not finish in time. Pending sends: {}", getPendingCount());
+                senderPool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            senderPool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class ChatLane {
+        private final String chatId;
+        private final TokenBucket bucket;
+        private final ArrayDeque<OutboundTask> tasks = new ArrayDeque<>();
+        private boolean inFlight;
+        private boolean queued;
+        private long eligibleAtNanos;
+        private long blockedUntilNanos;
+
+        private ChatLane(String chatId, TokenBucket bucket, long nowNanos) {
+            this.chatId = chatId;
+            this.bucket = bucket;
+            this.blockedUntilNanos = nowNanos;
+        }
+    }
+
+    private static final class OutboundTask {
+        private final SendPriority priority;
+        private final SendAction action;
+        private final Consumer<SendOutcome> onFinished;
+        private long readyAtNanos;
+        private int attempt;
+
+        private OutboundTask(SendPriority priority, SendAction action, Consumer<SendOutcome> onFinished, long readyAtNanos) {
+            this.priority = priority;
+            this.action = action;
+            this.onFinished = onFinished;
+            this.readyAtNanos = readyAtNanos;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package lnu.study.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lnu.study.controller.TelegramBot;
+import lnu.study.dto.ProgressMessageDTO;
+import lnu.study.service.OutboundSendScheduler;
+import lnu.study.service.ProgressMessageService;
+import lnu.study.service.enums.SendOutcome;
+import lnu.study.service.enums.SendPriority;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@Log4j2
+@Service
+public class ProgressMessageServiceImpl implements ProgressMessageService {
+
+    private final TelegramBot telegramBot;
+    private final OutboundSendScheduler outboundSendScheduler;
+    private final long coalesceNanos;
+    private final long idleTimeoutNanos;
+    // operationId -> стан статусного повідомлення
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flushScheduler;
+
+    private final Counter updatesCounter;
+    private final Counter sendCounter;
+    private final Counter editCounter;
+
+    public ProgressMessageServiceImpl(@Lazy TelegramBot telegramBot,
+                                      OutboundSendScheduler outboundSendScheduler,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${dispatcher.progress.coalesce-ms:1500}") long coalesceMs,
+                                      @Value("${dispatcher.progress.idle-timeout-minutes:30}") long idleTimeoutMinutes) {
+        this.telegramBot = telegramBot;
+        this.outboundSendScheduler = outboundSendScheduler;
+        this.coalesceNanos = TimeUnit.MILLISECONDS.toNanos(coalesceMs);
+        this.idleTimeoutNanos = TimeUnit.MINUTES.toNanos(idleTimeoutMinutes);
+        this.flushScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "progress-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Gauge.builder("dispatcher.progress.operations", operations, Map::size)
+                .description("Операції, статусне повідомлення яких ще може змінитися")
+                .register(meterRegistry);
+        this.updatesCounter = Counter.builder("dispatcher.progress.updates")
+                .description("Отримані статуси; різниця з кількістю викликів - злиті статуси")
+                .register(meterRegistry);
+        this.sendCounter = Counter.builder("dispatcher.progress.calls")
+                .tag("method", "sendMessage")
+                .register(meterRegistry);
+        this.editCounter = Counter.builder("dispatcher.progress.calls")
+                .tag("method", "editMessageText")
+                .register(meterRegistry);
+
+        // Операції, про завершення яких node так і не повідомив (наприклад, через рестарт)
+        flushScheduler.scheduleWithFixedDelay(this::evictIdle, 1, 1, TimeUnit.MINUTES);
+        log.info("Progress messages: coalesce window {} ms, idle timeout {} min", coalesceMs, idleTimeoutMinutes);
+    }
+
+    @Override
+    public void accept(ProgressMessageDTO dto) {
+        if (dto == null || dto.getChatId() == null || dto.getOperationId() == null) {
+            log.warn("Received invalid ProgressMessageDTO: operationId={}", dto != null ? dto.getOperationId() : null);
+            return;
+        }
+        updatesCounter.increment();
+        Operation operation = operations.computeIfAbsent(dto.getOperationId(), id -> new Operation(id, dto.getChatId()));
+        synchronized (operation) {
+            if (dto.getText() != null && !dto.getText().isEmpty()) {
+                operation.pendingText = dto.getText();
+            }
+            operation.done |= dto.isDone();
+            operation.lastActivityNanos = System.nanoTime();
+            if (operation.queued) {
+                // Виклик уже в черзі: він візьме найсвіжіший текст у момент виконання
+                return;
+            }
+            if (operation.messageId == null) {
+                operation.queued = true;
+                outboundSendScheduler.submit(operation.chatId, SendPriority.HIGH, () -> send(operation), outcome -> finished(operation, outcome));
+            } else {
+                scheduleEdit(operation);
+            }
+        }
+    }
+
+    private void send(Operation operation) throws TelegramApiException {
+        String text = takePending(operation);
+        if (text == null) {
+            return;
+        }
+        SendMessage sendMessage = new SendMessage();
+        sendMessage.setChatId(operation.chatId);
+        sendMessage.setText(text);
+        Message sent;
+        try {
+            sent = telegramBot.execute(sendMessage);
+        } catch (TelegramApiException e) {
+            failed(operation, text, e);
+            throw e;
+        }
+        sendCounter.increment();
+        synchronized (operation) {
+            operation.messageId = sent.getMessageId();
+            sent(operation, text);
+        }
+    }
+
+    private void edit(Operation operation) throws TelegramApiException {
+        String text = takePending(operation);
+        if (text == null) {
+            return;
+        }
+        EditMessageText editMessageText = new EditMessageText();
+        editMessageText.setChatId(operation.chatId);
+        editMessageText.setMessageId(operation.messageId);
+        editMessageText.setText(text);
+        try {
+            telegramBot.execute(editMessageText);
+        } catch (TelegramApiRequestException e) {
+            // "message is not modified" - Telegram вже показує цей текст
+            boolean notModified = e.getErrorCode() != null && e.getErrorCode() == 400
+                    && e.getApiResponse() != null && e.getApiResponse().contains("not modified");
+            if (!notModified) {
+                failed(operation, text, e);
+                throw e;
+            }
+        } catch (TelegramApiException e) {
+            failed(operation, text, e);
+            throw e;
+        }
+        editCounter.increment();
+        synchronized (operation) {
+            sent(operation, text);
+        }
+    }
+
+    private String takePending(Operation operation) {
+        synchronized (operation) {
+            String text = operation.pendingText;
+            operation.pendingText = null;
+            if (text == null || text.equals(operation.sentText)) {
+                // Новий текст не відрізняється від показаного - виклик не потрібен
+                operation.queued = false;
+                if (operation.done) {
+                    operations.remove(operation.id, operation);
+                }
+                return null;
+            }
+            return text;
+        }
+    }
+
+    // Викликається під монітором операції
+    private void sent(Operation operation, String text) {
+        operation.sentText = text;
+        operation.lastSentNanos = System.nanoTime();
+        operation.queued = false;
+        if (operation.pendingText != null && !Objects.equals(operation.pendingText, text)) {
+            scheduleEdit(operation);
+        } else if (operation.done) {
+            operations.remove(operation.id, operation);
+        }
+    }
+
+    private void failed(Operation operation, String text, TelegramApiException e) {
+        synchronized (operation) {
+            if (e instanceof TelegramApiRequestException requestException
+                    && requestException.getErrorCode() != null && requestException.getErrorCode() == 429) {
+                // Планувальник повторить виклик після retry_after - повертаємо текст, якщо новішого не надійшло
+                if (operation.pendingText == null) {
+                    operation.pendingText = text;
+                }
+                return;
+            }
+            // Повідомлення могли видалити: наступний статус цієї операції почне нове повідомлення
+            operation.queued = false;
+            operations.remove(operation.id, operation);
+        }
+    }
+
+    // Відправку й помилку Telegram уже обробили send/edit. Якщо ж виклик відкинуто (вичерпано повтори 429
+    // або зупинка), текст лишається, і наступний статус запланує новий виклик
+    private void finished(Operation operation, SendOutcome outcome) {
+        if (outcome != SendOutcome.RATE_LIMITED && outcome != SendOutcome.STOPPED) {
+            return;
+        }
+        synchronized (operation) {
+            operation.queued = false;
+            if (operation.done) {
+                operations.remove(operation.id, operation);
+            }
+        }
+    }
+
+    // Викликається під монітором операції
+    private void scheduleEdit(Operation operation) {
+        operation.queued = true;
+        long delayNanos = operation.done ? 0 : Math.max(0, operation.lastSentNanos + coalesceNanos - System.nanoTime());
+        Runnable submitEdit = () -> outboundSendScheduler.submit(operation.chatId, SendPriority.HIGH,
+                () -> edit(operation), outcome -> finished(operation, outcome));
+        try {
+            flushScheduler.schedule(submitEdit, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            submitEdit.run();
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.nanoTime();
+        operations.values().removeIf(operation -> {
+            synchronized (operation) {
+                return now - operation.lastActivityNanos > idleTimeoutNanos;
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Відкладені редагування відправляємо одразу, щоб користувач побачив останній статус
+        for (Runnable pending : flushScheduler.shutdownNow()) {
+            pending.run();
+        }
+    }
+
+    private static final class Operation {
+        private final String id;
+        private final String chatId;
+        private Integer messageId;
+        private String sentText;
+        private String pendingText;
+        private boolean done;
+        // Виклик sendMessage/editMessageText запланований або виконується
+        private boolean queued;
+        private long lastSentNanos;
+        private long lastActivityNanos = System.nanoTime();
+
+        private Operation(String id, String chatId) {
+            this.id = id;
+            this.chatId = chatId;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package lnu.study.service.impl;
+
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lnu.study.service.LeaderElection;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Лідерство між репліками dispatcher через ексклюзивну чергу RabbitMQ: оголосити її може лише одне з'єднання,
+ * а після його закриття брокер видаляє чергу і lease може взяти інша репліка.
+ */
+@Log4j2
+@Service
+public class RabbitLeaderElectionImpl implements LeaderElection, ConnectionListener {
+
+    private final ConnectionFactory connectionFactory;
+    private final boolean enabled;
+    private final String leaseQueue;
+    private final long retrySeconds;
+    private final ScheduledExecutorService scheduler;
+    private final List<Runnable> acquiredActions = new CopyOnWriteArrayList<>();
+    private final List<Runnable> lostActions = new CopyOnWriteArrayList<>();
+    private volatile boolean leader;
+    private Channel leaseChannel;
+
+    public RabbitLeaderElectionImpl(ConnectionFactory connectionFactory,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${dispatcher.leader.enabled:true}") boolean enabled,
+                                    @Value("${dispatcher.leader.lease-queue:dispatcher_leader_lease}") String leaseQueue,
+                                    @Value("${dispatcher.leader.retry-seconds:10}") long retrySeconds) {
+        this.connectionFactory = connectionFactory;
+        this.enabled = enabled;
+        this.leaseQueue = leaseQueue;
+        this.retrySeconds = retrySeconds;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "leader-election");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("dispatcher.leader", this, election -> election.isLeader() ? 1 : 0)
+                .description("1 - ця репліка реєструє вебхук і команди бота")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            // Один інстанс без виборів - завжди лідер
+            scheduler.execute(this::becomeLeader);
+            return;
+        }
+        connectionFactory.addConnectionListener(this);
+        scheduler.scheduleWithFixedDelay(this::tryAcquire, 0, retrySeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public boolean isLeader() {
+        return leader;
+    }
+
+    @Override
+    public synchronized void onLeadershipAcquired(Runnable action) {
+        acquiredActions.add(action);
+        if (leader) {
+            runSafely(action);
+        }
+    }
+
+    @Override
+    public synchronized void onLeadershipLost(Runnable action) {
+        lostActions.add(action);
+    }
+
+    private synchronized void tryAcquire() {
+        if (leader) {
+            if (leaseChannel != null && leaseChannel.isOpen()) {
+                return;
+            }
+            loseLeadership("lease channel is closed");
+        }
+        Channel channel = null;
+        try {
+            channel = connectionFactory.createConnection().createChannel(false);
+            // exclusive + auto-delete: черга живе рівно стільки, скільки з'єднання цієї репліки
+            channel.queueDeclare(leaseQueue, false, true, true, null);
+            leaseChannel = channel;
+            log.info("Leader lease '{}' acquired", leaseQueue);
+            becomeLeader();
+        } catch (Exception e) {
+            // RESOURCE_LOCKED: lease тримає інша репліка; брокер закриває канал сам
+            log.debug("Leader lease '{}' is held by another replica: {}", leaseQueue, e.getMessage());
+            closeQuietly(channel);
+        }
+    }
+
+    private synchronized void becomeLeader() {
+        leader = true;
+        acquiredActions.forEach(this::runSafely);
+    }
+
+    private synchronized void loseLeadership(String reason) {
+        if (!leader) {
+            return;
+        }
+        leader = false;
+        closeQuietly(leaseChannel);
+        leaseChannel = null;
+        log.warn("Leader lease '{}' lost: {}", leaseQueue, reason);
+        lostActions.forEach(this::runSafely);
+    }
+
+    @Override
+    public void onCreate(Connection connection) {
+    }
+
+    @Override
+    public void onClose(Connection connection) {
+        if (enabled) {
+            // Разом з з'єднанням брокер видаляє ексклюзивну чергу, новий lease візьме перша репліка, що встигне
+            scheduler.execute(() -> loseLeadership("connection closed"));
+        }
+    }
+
+    private void runSafely(Runnable action) {
+        try {
+            action.run();
+        } catch (Exception e) {
+            log.error("Leadership callback failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void closeQuietly(Channel channel) {
+        if (channel == null || !channel.isOpen()) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (Exception e) {
+            log.debug("Failed to close lease channel: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        scheduler.shutdownNow();
+        // Ексклюзивна черга прив'язана до з'єднання, а не до каналу - видаляємо її явно,
+        // щоб інша репліка взяла lease одразу, не чекаючи закриття з'єднання
+        if (leader && leaseChannel != null && leaseChannel.isOpen()) {
+            try {
+                leaseChannel.queueDelete(leaseQueue);
+            } catch (Exception e) {
+                log.debug("Failed to release leader lease '{}': {}", leaseQueue, e.getMessage());
+            }
+        }
+        leader = false;
+        closeQuietly(leaseChannel);
+    }
+}
@@ -0,0 +1,86 @@
+package lnu.study.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lnu.study.service.IngressFloodControl;
+import lnu.study.service.StaticReplyService;
+import lnu.study.service.enums.UpdateKind;
+import lnu.study.utils.BotReplies;
+import lnu.study.utils.RawUpdate;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Log4j2
+@Service
+public class StaticReplyServiceImpl implements StaticReplyService {
+
+    // Лише команди, на які node відповідає однаково в будь-якому стані користувача.
+    // /start сюди не входить: у режимах реєстрації, архівування та конвертації node відповідає інакше
+    private static final Map<String, String> KNOWN_REPLIES = Map.of("/help", BotReplies.HELP);
+
+    private final IngressFloodControl floodControl;
+    private final boolean enabled;
+    private final Map<String, String> replies = new HashMap<>();
+
+    private final Counter commandCounter;
+    private final Counter unsupportedCounter;
+
+    public StaticReplyServiceImpl(IngressFloodControl floodControl,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${dispatcher.fast-path.enabled:true}") boolean enabled,
+                                  @Value("${dispatcher.fast-path.commands:/help}") String commands) {
+        this.floodControl = floodControl;
+        this.enabled = enabled;
+        for (String command : commands.split(",")) {
+            String trimmed = command.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            String reply = KNOWN_REPLIES.get(trimmed);
+            if (reply == null) {
+                throw new IllegalArgumentException("No static reply for command " + trimmed + ", known: " + KNOWN_REPLIES.keySet());
+            }
+            replies.put(trimmed, reply);
+        }
+
+        this.commandCounter = Counter.builder("dispatcher.fast_path.replies")
+                .description("Оновлення, на які dispatcher відповів сам, без node")
+                .tag("kind", "command").register(meterRegistry);
+        this.unsupportedCounter = Counter.builder("dispatcher.fast_path.replies")
+                .tag("kind", "unsupported").register(meterRegistry);
+        log.info("Static reply fast path enabled: {}. Commands: {}", enabled, replies.keySet());
+    }
+
+    @Override
+    public BotApiMethod<?> tryReply(RawUpdate rawUpdate) {
+        if (!enabled || rawUpdate.chatId() == null) {
+            return null;
+        }
+        if (rawUpdate.kind() == UpdateKind.UNSUPPORTED) {
+            unsupportedCounter.increment();
+            log.info("Unsupported update_id={} from chat_id {} answered inline", rawUpdate.updateId(), rawUpdate.chatId());
+            return message(rawUpdate.chatId(), BotReplies.UNSUPPORTED_MESSAGE_TYPE);
+        }
+        String reply = rawUpdate.command() != null ? replies.get(rawUpdate.command()) : null;
+        // Чат, що перевищив ліміт, іде звичайним шляхом - там його обробить політика flood control
+        if (reply == null || !floodControl.tryAdmitNow(rawUpdate.kind(), rawUpdate.chatId())) {
+            return null;
+        }
+        commandCounter.increment();
+        log.info("Command {} from chat_id {} answered inline, update_id={}", rawUpdate.command(), rawUpdate.chatId(), rawUpdate.updateId());
+        return message(rawUpdate.chatId(), reply);
+    }
+
+    private SendMessage message(Long chatId, String text) {
+        SendMessage sendMessage = new SendMessage();
+        sendMessage.setChatId(chatId.toString());
+        sendMessage.setText(text);
+        return sendMessage;
+    }
+}
@@ -0,0 +1,224 @@
+package lnu.study.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lnu.study.controller.UpdateProcessor;
+import lnu.study.service.UpdateIngestionService;
+import lnu.study.service.enums.OverflowPolicy;
+import lnu.study.utils.MessageUtils;
+import lnu.study.utils.RawUpdate;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Буфер прийому оновлень, розділений на workers частин за chat_id: кожну частину розбирає один потік,
+ * тому оновлення одного чату публікуються в порядку надходження, а різні чати - паралельно.
+ */
+@Log4j2
+@Service
+public class UpdateIngestionServiceImpl implements UpdateIngestionService {
+
+    private final UpdateProcessor updateProcessor;
+    private final List<BlockingQueue<IngestedUpdate>> shards;
+    private final int workers;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutMillis;
+    private final ExecutorService workerPool;
+    private volatile boolean running = true;
+
+    private final Counter acceptedCounter;
+    private final Counter rejectedCounter;
+    private final Counter droppedOldestCounter;
+    private final Counter blockedCounter;
+    private final Counter failedCounter;
+    private final Timer enqueueToPublishTimer;
+
+    public UpdateIngestionServiceImpl(UpdateProcessor updateProcessor,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${dispatcher.ingestion.capacity:4096}") int capacity,
+                                      @Value("${dispatcher.ingestion.workers:4}") int workers,
+                                      @Value("${dispatcher.ingestion.overflow-policy:REJECT}") OverflowPolicy overflowPolicy,
+                                      @Value("${dispatcher.ingestion.block-timeout-ms:5000}") long blockTimeoutMillis) {
+        this.updateProcessor = updateProcessor;
+        this.workers = Math.max(1, workers);
+        this.shards = new ArrayList<>(this.workers);
+        for (int i = 0; i < this.workers; i++) {
+            shards.add(new ArrayBlockingQueue<>(Math.max(1, capacity / this.workers)));
+        }
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.workerPool = Executors.newFixedThreadPool(this.workers, r -> {
+            Thread thread = new Thread(r, "ingestion-worker-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Gauge.builder("dispatcher.ingestion.buffer.depth", this, UpdateIngestionServiceImpl::getBufferDepth)
+                .description("Кількість оновлень, що очікують публікації")
+                .register(meterRegistry);
+        Gauge.builder("dispatcher.ingestion.buffer.capacity", () -> capacity)
+                .register(meterRegistry);
+        this.acceptedCounter = Counter.builder("dispatcher.ingestion.updates")
+                .tag("result", "accepted").register(meterRegistry);
+        this.rejectedCounter = Counter.builder("dispatcher.ingestion.updates")
+                .tag("result", "rejected").register(meterRegistry);
+        this.droppedOldestCounter = Counter.builder("dispatcher.ingestion.updates")
+                .tag("result", "dropped_oldest").register(meterRegistry);
+        this.blockedCounter = Counter.builder("dispatcher.ingestion.updates")
+                .tag("result", "blocked").register(meterRegistry);
+        this.failedCounter = Counter.builder("dispatcher.ingestion.updates")
+                .tag("result", "failed").register(meterRegistry);
+        this.enqueueToPublishTimer = Timer.builder("dispatcher.ingestion.enqueue_to_publish")
+                .description("Час від прийому вебхука до завершення публікації в RabbitMQ")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+
+        log.info("UpdateIngestionService initialized: capacity={}, workers={}, overflowPolicy={}", capacity, this.workers, overflowPolicy);
+    }
+
+    @PostConstruct
+    public void startWorkers() {
+        for (BlockingQueue<IngestedUpdate> shard : shards) {
+            workerPool.execute(() -> drainLoop(shard));
+        }
+    }
+
+    @Override
+    public boolean submit(Update update) {
+        if (update == null) {
+            log.error("Received update is null");
+            return true;
+        }
+        return enqueue(new IngestedUpdate(update, null, MessageUtils.extractChatId(update), System.nanoTime()));
+    }
+
+    @Override
+    public boolean submitRaw(RawUpdate rawUpdate) {
+        return enqueue(new IngestedUpdate(null, rawUpdate, rawUpdate.chatId(), System.nanoTime()));
+    }
+
+    private boolean enqueue(IngestedUpdate ingested) {
+        BlockingQueue<IngestedUpdate> buffer = shardOf(ingested.chatId());
+        if (buffer.offer(ingested)) {
+            acceptedCounter.increment();
+            return true;
+        }
+
+        switch (overflowPolicy) {
+            case DROP_OLDEST -> {
+                // Звільняємо місце, поки не вдасться вставити нове оновлення
+                while (!buffer.offer(ingested)) {
+                    IngestedUpdate dropped = buffer.poll();
+                    if (dropped != null) {
+                        droppedOldestCounter.increment();
+                        log.warn("Ingestion buffer is full. Dropped oldest {}", dropped.describe());
+                    }
+                }
+                acceptedCounter.increment();
+                return true;
+            }
+            case BLOCK -> {
+                blockedCounter.increment();
+                log.warn("Ingestion buffer is full. Request thread waits to enqueue {}", ingested.describe());
+                try {
+                    if (buffer.offer(ingested, blockTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                        acceptedCounter.increment();
+                        return true;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                rejectedCounter.increment();
+                log.warn("Ingestion buffer is still full. Rejected {}, Telegram will redeliver it", ingested.describe());
+                return false;
+            }
+            default -> {
+                rejectedCounter.increment();
+                log.warn("Ingestion buffer is full. Rejected {}, Telegram will redeliver it", ingested.describe());
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public int getBufferDepth() {
+        int depth = 0;
+        for (BlockingQueue<IngestedUpdate> shard : shards) {
+            depth += shard.size();
+        }
+        return depth;
+    }
+
+    // Оновлення без chat_id порядку не потребують і йдуть у першу частину
+    private BlockingQueue<IngestedUpdate> shardOf(Long chatId) {
+        return shards.get(chatId == null ? 0 : Math.floorMod(Long.hashCode(chatId), shards.size()));
+    }
+
+    private void drainLoop(BlockingQueue<IngestedUpdate> buffer) {
+        while (running || !buffer.isEmpty()) {
+            try {
+                IngestedUpdate ingested = buffer.poll(500, TimeUnit.MILLISECONDS);
+                if (ingested != null) {
+                    process(ingested);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void process(IngestedUpdate ingested) {
+        try {
+            if (ingested.rawUpdate() != null) {
+                updateProcessor.processRawUpdate(ingested.rawUpdate());
+            } else {
+                updateProcessor.processUpdate(ingested.update());
+            }
+        } catch (Exception e) {
+            failedCounter.increment();
+            log.error("Failed to process {}: {}", ingested.describe(), e.getMessage(), e);
+        } finally {
+            enqueueToPublishTimer.record(System.nanoTime() - ingested.enqueuedAtNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        log.info("Shutting down ingestion workers. Updates left in buffer: {}", getBufferDepth());
+        running = false;
+        workerPool.shutdown();
+        try {
+            if (!workerPool.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Ingestion workers did not finish in time. Updates left in buffer: {}", getBufferDepth());
+                workerPool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workerPool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Або десеріалізоване оновлення, або оригінальне тіло вебхука
+    private record IngestedUpdate(Update update, RawUpdate rawUpdate, Long chatId, long enqueuedAtNanos) {
+        String describe() {
+            return "update_id=" + (update != null ? update.getUpdateId() : rawUpdate.updateId());
+        }
+    }
+}
@@ -1,11 +1,51 @@
 package lnu.study.service.impl;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lnu.study.model.RoutingMode;
+import lnu.study.service.IngestionTracker;
 import lnu.study.service.UpdateProducer;
+import lnu.study.utils.MessageUtils;
+import lnu.study.utils.RawUpdate;
+import lnu.study.utils.UpdateSpool;
 import lombok.extern.log4j.Log4j2;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.AbstractJavaTypeMapper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.telegram.telegrambots.meta.api.objects.Update;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static lnu.study.model.RabbitQueue.ANSWERED_INLINE_HEADER;
+import static lnu.study.model.RabbitQueue.CHAT_ID_HEADER;
+import static lnu.study.model.RabbitQueue.MEDIA_GROUP_UPDATE;
+import static lnu.study.model.RabbitQueue.UPDATE_ID_HEADER;
+import static lnu.study.model.RabbitQueue.UPDATE_PARTITION_EXCHANGE;
+import static lnu.study.model.RabbitQueue.UPDATE_TYPE_HEADER;
 import static lnu.study.model.RabbitQueue.VOICE_MESSAGE_UPDATE;
 
 @Service
@@ -13,18 +53,520 @@ import static lnu.study.model.RabbitQueue.VOICE_MESSAGE_UPDATE;
 public class UpdateProducerImpl implements UpdateProducer {
 
     private final RabbitTemplate rabbitTemplate;
+    private final IngestionTracker ingestionTracker;
+    private final RoutingMode routingMode;
+    private final int maxInFlight;
+    private final int maxAttempts;
+    private final long retryBackoffMs;
+    // Обмежене вікно непідтверджених брокером повідомлень
+    private final Semaphore inFlight;
+    private final ScheduledExecutorService retryScheduler;
+    // Не більше однієї непідтвердженої публікації на чат: наступні чекають тут, поки попередню
+    // не підтвердить брокер, тому повтор після nack не обганяють новіші оновлення того ж чату
+    private final Map<Long, ArrayDeque<PendingPublish>> chatBacklog = new HashMap<>();
+    // Локальний журнал на час недоступності брокера; null, якщо вимкнено
+    private final UpdateSpool spool;
+    private final int replayBatch;
+    private final long probeIntervalMs;
+    private final long confirmTimeoutMs;
+    // Поки true, нові оновлення пишуться в журнал, щоб не обганяти ті, що вже там
+    private volatile boolean spooling;
+    private volatile boolean running = true;
+    private Thread replayThread;
+
+    private final Counter confirmedCounter;
+    private final Counter nackedCounter;
+    private final Counter returnedCounter;
+    private final Counter failedCounter;
+    private final Timer confirmTimer;
+    private final Counter spooledCounter;
+    private final Counter replayedCounter;
 
-    public UpdateProducerImpl(RabbitTemplate rabbitTemplate) {
+    public UpdateProducerImpl(RabbitTemplate rabbitTemplate,
+                              IngestionTracker ingestionTracker,
+                              MeterRegistry meterRegistry,
+                              @Value("${rabbit.routing.mode:QUEUE_PER_TYPE}") RoutingMode routingMode,
+                              @Value("${dispatcher.publisher.max-in-flight:1024}") int maxInFlight,
+                              @Value("${dispatcher.publisher.max-attempts:5}") int maxAttempts,
+                              @Value("${dispatcher.publisher.retry-backoff-ms:200}") long retryBackoffMs,
+                              @Value("${dispatcher.spool.enabled:true}") boolean spoolEnabled,
+                              @Value("${dispatcher.spool.dir:./data/spool}") String spoolDir,
+                              @Value("${dispatcher.spool.segment-mb:64}") int segmentMb,
+                              @Value("${dispatcher.spool.fsync:false}") boolean fsync,
+                              @Value("${dispatcher.spool.replay-batch:256}") int replayBatch,
+                              @Value("${dispatcher.spool.probe-interval-ms:1000}") long probeIntervalMs,
+                              @Value("${dispatcher.spool.confirm-timeout-ms:10000}") long confirmTimeoutMs) {
         this.rabbitTemplate = rabbitTemplate;
+        this.ingestionTracker = ingestionTracker;
+        this.routingMode = routingMode;
+        this.maxInFlight = maxInFlight;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoffMs = retryBackoffMs;
+        this.replayBatch = Math.max(1, replayBatch);
+        this.probeIntervalMs = probeIntervalMs;
+        this.confirmTimeoutMs = confirmTimeoutMs;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "publisher-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Gauge.builder("dispatcher.publisher.in_flight", inFlight, s -> maxInFlight - s.availablePermits())
+                .description("Опубліковані, але ще не підтверджені брокером повідомлення")
+                .register(meterRegistry);
+        this.confirmedCounter = Counter.builder("dispatcher.publisher.messages")
+                .tag("result", "confirmed").register(meterRegistry);
+        this.nackedCounter = Counter.builder("dispatcher.publisher.messages")
+                .tag("result", "nacked").register(meterRegistry);
+        this.returnedCounter = Counter.builder("dispatcher.publisher.messages")
+                .tag("result", "returned").register(meterRegistry);
+        this.failedCounter = Counter.builder("dispatcher.publisher.messages")
+                .tag("result", "failed").register(meterRegistry);
+        this.confirmTimer = Timer.builder("dispatcher.publisher.confirm_latency")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.spooledCounter = Counter.builder("dispatcher.spool.appended")
+                .register(meterRegistry);
+        this.replayedCounter = Counter.builder("dispatcher.spool.replayed")
+                .description("Оновлення з журналу, підтверджені брокером після відновлення")
+                .register(meterRegistry);
+
+        if (!spoolEnabled) {
+            this.spool = null;
+            log.info("Update spool disabled");
+            return;
+        }
+        // Сегмент відображається в пам'ять одним MappedByteBuffer, тому його розмір обмежений int
+        long segmentBytes = segmentMb * 1024L * 1024;
+        if (segmentMb < 1 || segmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("dispatcher.spool.segment-mb must be between 1 and "
+                    + Integer.MAX_VALUE / (1024 * 1024) + ", got " + segmentMb);
+        }
+        try {
+            this.spool = new UpdateSpool(Path.of(spoolDir), (int) segmentBytes, fsync);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open update spool in " + spoolDir, e);
+        }
+        Gauge.builder("dispatcher.spool.entries", spool, UpdateSpool::getEntries)
+                .description("Оновлення, що чекають у локальному журналі на відновлення брокера")
+                .register(meterRegistry);
+        Gauge.builder("dispatcher.spool.bytes", spool, UpdateSpool::getBytes)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("dispatcher.spool.active", this, p -> p.spooling ? 1 : 0)
+                .register(meterRegistry);
+        // Журнал, що лишився після рестарту, спершу доставляється, і лише потім публікуються нові оновлення
+        this.spooling = !spool.isEmpty();
+        if (spooling) {
+            log.warn("Update spool in {} holds {} updates from a previous run, replaying", spoolDir, spool.getEntries());
+        }
+        this.replayThread = new Thread(this::replayLoop, "spool-replay");
+        replayThread.setDaemon(true);
+        replayThread.start();
+        log.info("Update spool enabled in {}: segment {} MB, replay batch {}", spoolDir, segmentMb, this.replayBatch);
     }
 
     @Override
     public void produce(String rabbitQueue, Update update) {
         log.info("Intending to produce update_id={} to queue '{}'", update.getUpdateId(), rabbitQueue); //hai bude
-        rabbitTemplate.convertAndSend(rabbitQueue, update);
+        Long chatId = MessageUtils.extractChatId(update);
+        // Серіалізуємо один раз: повтори після nack/return відправляють ті самі байти
+        Message message = rabbitTemplate.getMessageConverter()
+                .toMessage(update, newProperties(rabbitQueue, update.getUpdateId(), chatId));
+        publish(new PendingPublish(rabbitQueue, update.getUpdateId(), chatId, message, 1));
     }
+
     @Override
     public void produceVoiceMessage(Update update) {
-        rabbitTemplate.convertAndSend(VOICE_MESSAGE_UPDATE, update);
+        produce(VOICE_MESSAGE_UPDATE, update);
+    }
+
+    @Override
+    public void produceRaw(String rabbitQueue, RawUpdate rawUpdate) {
+        MessageProperties properties = newProperties(rabbitQueue, rawUpdate.updateId(), rawUpdate.chatId());
+        // Ті самі заголовки, що ставить Jackson2JsonMessageConverter, тому node десеріалізує тіло як звичайно
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        properties.setContentEncoding(StandardCharsets.UTF_8.name());
+        properties.setHeader(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME, Update.class.getName());
+        if (rawUpdate.answeredInline()) {
+            properties.setHeader(ANSWERED_INLINE_HEADER, true);
+        }
+        Message message = new Message(rawUpdate.body(), properties);
+        publish(new PendingPublish(rabbitQueue, rawUpdate.updateId(), rawUpdate.chatId(), message, 1));
+    }
+
+    @Override
+    public void produceMediaGroup(String mediaGroupId, Long chatId, List<Integer> updateIds, List<byte[]> bodies) {
+        Integer firstUpdateId = updateIds.get(0);
+        ByteArrayOutputStream json = new ByteArrayOutputStream(bodies.stream().mapToInt(b -> b.length + 1).sum() + 1);
+        json.write('[');
+        for (int i = 0; i < bodies.size(); i++) {
+            if (i > 0) {
+                json.write(',');
+            }
+            json.writeBytes(bodies.get(i));
+        }
+        json.write(']');
+
+        MessageProperties properties = newProperties(MEDIA_GROUP_UPDATE, firstUpdateId, chatId);
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        properties.setContentEncoding(StandardCharsets.UTF_8.name());
+        // Тип колекції та тип її елементів - node десеріалізує тіло в List<Update>
+        properties.setHeader(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME, ArrayList.class.getName());
+        properties.setHeader(AbstractJavaTypeMapper.DEFAULT_CONTENT_CLASSID_FIELD_NAME, Update.class.getName());
+        Message message = new Message(json.toByteArray(), properties);
+        log.info("Producing media group {} of {} updates for chat_id {} to queue '{}'",
+                mediaGroupId, bodies.size(), chatId, MEDIA_GROUP_UPDATE);
+        publish(new PendingPublish(MEDIA_GROUP_UPDATE, firstUpdateId, chatId, message, 1, List.copyOf(updateIds)));
+    }
+
+    private MessageProperties newProperties(String rabbitQueue, Integer updateId, Long chatId) {
+        MessageProperties properties = new MessageProperties();
+        properties.setHeader(UPDATE_TYPE_HEADER, rabbitQueue);
+        if (updateId != null) {
+            properties.setHeader(UPDATE_ID_HEADER, updateId);
+        }
+        if (chatId != null) {
+            properties.setHeader(CHAT_ID_HEADER, chatId.toString());
+        }
+        return properties;
+    }
+
+    private void publish(PendingPublish pending) {
+        Long chatId = pending.chatId();
+        if (chatId != null) {
+            synchronized (chatBacklog) {
+                ArrayDeque<PendingPublish> backlog = chatBacklog.get(chatId);
+                if (backlog != null) {
+                    backlog.addLast(pending);
+                    log.debug("Holding update_id={} for chat_id {} behind an unconfirmed publish",
+                            pending.updateId(), chatId);
+                    return;
+                }
+                chatBacklog.put(chatId, new ArrayDeque<>());
+            }
+        }
+        doPublish(pending);
+    }
+
+    /**
+     * Публікує наступне оновлення чату після того, як попереднє підтверджено, записано в журнал
+     * або остаточно втрачено. Виконується в потоці повторів, а не в потоці підтверджень AMQP,
+     * бо очікування вільного місця у вікні там заблокувало б самі підтвердження.
+     */
+    private void releaseNext(Long chatId) {
+        if (chatId == null) {
+            return;
+        }
+        PendingPublish next;
+        synchronized (chatBacklog) {
+            ArrayDeque<PendingPublish> backlog = chatBacklog.get(chatId);
+            next = backlog != null ? backlog.pollFirst() : null;
+            if (next == null) {
+                chatBacklog.remove(chatId);
+                return;
+            }
+        }
+        try {
+            retryScheduler.execute(() -> doPublish(next));
+        } catch (RejectedExecutionException e) {
+            log.warn("Publisher is shutting down, update_id={} for chat_id {} was not published",
+                    next.updateId(), chatId);
+            next.updateIds().forEach(ingestionTracker::failed);
+        }
+    }
+
+    // Остаточний результат публікації: повідомляємо облік long polling і відпускаємо наступне оновлення чату
+    private void complete(PendingPublish pending, boolean delivered) {
+        for (Integer updateId : pending.updateIds()) {
+            if (delivered) {
+                ingestionTracker.settled(updateId);
+            } else {
+                ingestionTracker.failed(updateId);
+            }
+        }
+        releaseNext(pending.chatId());
+    }
+
+    private void doPublish(PendingPublish pending) {
+        if (spooling && appendToSpool(pending)) {
+            complete(pending, true);
+            return;
+        }
+        try {
+            // Якщо вікно заповнене - чекаємо підтверджень, це й є зворотний тиск на воркерів прийому
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while waiting for publish window. update_id={} to queue '{}' is lost",
+                    pending.updateId(), pending.queue());
+            failedCounter.increment();
+            complete(pending, false);
+            return;
+        }
+
+        CorrelationData correlationData = new CorrelationData(
+                pending.queue() + ":" + pending.updateId() + ":" + pending.attempt());
+        long startedAt = System.nanoTime();
+        try {
+            send(pending, correlationData);
+        } catch (AmqpException e) {
+            inFlight.release();
+            log.error("Failed to publish update_id={} to queue '{}': {}", pending.updateId(), pending.queue(), e.getMessage());
+            // Брокер недоступний: не тримаємо потік прийому на повторах, а пишемо в журнал
+            if (startSpooling(pending)) {
+                complete(pending, true);
+                return;
+            }
+            scheduleRetry(pending, "send error", true);
+            return;
+        }
+
+        correlationData.getFuture().whenComplete((confirm, ex) -> {
+            inFlight.release();
+            confirmTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            if (ex != null || confirm == null || !confirm.isAck()) {
+                nackedCounter.increment();
+                String reason = ex != null ? ex.getMessage() : (confirm != null ? confirm.getReason() : "no confirm");
+                scheduleRetry(pending, "nack: " + reason, true);
+            } else if (correlationData.getReturned() != null) {
+                returnedCounter.increment();
+                // Неможливість маршрутизації журнал не виправить
+                scheduleRetry(pending, "returned: " + correlationData.getReturned().getReplyText(), false);
+            } else {
+                confirmedCounter.increment();
+                log.debug("Broker confirmed update_id={} in queue '{}'", pending.updateId(), pending.queue());
+                complete(pending, true);
+            }
+        });
+    }
+
+    private void send(PendingPublish pending, CorrelationData correlationData) {
+        if (routingMode != RoutingMode.PARTITIONED) {
+            rabbitTemplate.send("", pending.queue(), pending.message(), correlationData);
+            return;
+        }
+        // Ключ маршрутизації - chatId: всі оновлення одного користувача потрапляють в один розділ
+        String routingKey = pending.chatId() != null ? pending.chatId().toString() : String.valueOf(pending.updateId());
+        rabbitTemplate.send(UPDATE_PARTITION_EXCHANGE, routingKey, pending.message(), correlationData);
+    }
+
+    private void scheduleRetry(PendingPublish pending, String reason, boolean spoolOnGiveUp) {
+        if (pending.attempt() >= maxAttempts && spoolOnGiveUp && startSpooling(pending)) {
+            complete(pending, true);
+            return;
+        }
+        if (pending.attempt() >= maxAttempts) {
+            failedCounter.increment();
+            log.error("Giving up on update_id={} to queue '{}' after {} attempts. Last reason: {}",
+                    pending.updateId(), pending.queue(), pending.attempt(), reason);
+            // Неможливість маршрутизації повторне отримання не виправить, тому таке оновлення вважаємо завершеним
+            complete(pending, !spoolOnGiveUp);
+            return;
+        }
+        long delay = retryBackoffMs * pending.attempt();
+        log.warn("Retrying update_id={} to queue '{}' in {} ms (attempt {}). Reason: {}",
+                pending.updateId(), pending.queue(), delay, pending.attempt() + 1, reason);
+        // Повтор виконується поза потоком підтверджень AMQP, щоб не блокувати його;
+        // чат лишається зайнятим, тож новіші оновлення чекають на цей повтор
+        retryScheduler.schedule(() -> doPublish(pending.nextAttempt()), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean startSpooling(PendingPublish pending) {
+        if (spool == null) {
+            return false;
+        }
+        if (!spooling) {
+            log.warn("RabbitMQ is unavailable, spooling updates to disk until it recovers");
+            spooling = true;
+        }
+        return appendToSpool(pending);
+    }
+
+    private boolean appendToSpool(PendingPublish pending) {
+        MessageProperties properties = pending.message().getMessageProperties();
+        Object typeId = properties.getHeaders().get(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME);
+        Object contentTypeId = properties.getHeaders().get(AbstractJavaTypeMapper.DEFAULT_CONTENT_CLASSID_FIELD_NAME);
+        UpdateSpool.Entry entry = new UpdateSpool.Entry(pending.queue(), pending.updateId(), pending.chatId(),
+                String.valueOf(typeId), contentTypeId != null ? contentTypeId.toString() : null,
+                Boolean.TRUE.equals(properties.getHeaders().get(ANSWERED_INLINE_HEADER)),
+                pending.message().getBody());
+        synchronized (spool) {
+            // Журнал міг спорожніти, поки ми чекали: тоді публікуємо напряму
+            if (!spooling) {
+                return false;
+            }
+            try {
+                spool.append(entry);
+            } catch (IOException e) {
+                log.error("Failed to spool update_id={} to queue '{}': {}", pending.updateId(), pending.queue(), e.getMessage());
+                return false;
+            }
+        }
+        spooledCounter.increment();
+        log.debug("Spooled update_id={} to queue '{}'", pending.updateId(), pending.queue());
+        return true;
+    }
+
+    private void replayLoop() {
+        long replayed = 0;
+        long startedAt = 0;
+        while (running) {
+            try {
+                if (!spooling) {
+                    Thread.sleep(probeIntervalMs);
+                    continue;
+                }
+                List<UpdateSpool.Entry> batch = spool.peek(replayBatch);
+                if (batch.isEmpty()) {
+                    synchronized (spool) {
+                        if (spool.isEmpty()) {
+                            spooling = false;
+                        }
+                    }
+                    if (!spooling && replayed > 0) {
+                        double seconds = Math.max(1, System.nanoTime() - startedAt) / 1e9;
+                        log.info("Update spool drained: {} updates replayed in {} s ({} updates/s)",
+                                replayed, String.format("%.1f", seconds), String.format("%.0f", replayed / seconds));
+                    }
+                    replayed = 0;
+                    continue;
+                }
+                if (replayed == 0) {
+                    startedAt = System.nanoTime();
+                }
+                int confirmed = replay(batch);
+                if (confirmed > 0) {
+                    spool.advance(confirmed);
+                    replayedCounter.increment(confirmed);
+                    replayed += confirmed;
+                }
+                if (confirmed < batch.size()) {
+                    // Брокер ще недоступний - наступна спроба після паузи
+                    Thread.sleep(probeIntervalMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Update spool replay failed: {}", e.getMessage(), e);
+                try {
+                    Thread.sleep(probeIntervalMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Публікує пакет із журналу і повертає довжину підтвердженого префікса: далі журнал зсувається
+     * лише на неї, тому порядок зберігається, а непідтверджений хвіст буде надіслано повторно.
+     */
+    private int replay(List<UpdateSpool.Entry> batch) throws InterruptedException {
+        List<CorrelationData> sent = new ArrayList<>(batch.size());
+        for (UpdateSpool.Entry entry : batch) {
+            MessageProperties properties = newProperties(entry.queue(), entry.updateId(), entry.chatId());
+            properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+            properties.setContentEncoding(StandardCharsets.UTF_8.name());
+            properties.setHeader(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME, entry.typeId());
+            if (entry.contentTypeId() != null) {
+                properties.setHeader(AbstractJavaTypeMapper.DEFAULT_CONTENT_CLASSID_FIELD_NAME, entry.contentTypeId());
+            }
+            if (entry.answeredInline()) {
+                properties.setHeader(ANSWERED_INLINE_HEADER, true);
+            }
+            PendingPublish pending = new PendingPublish(entry.queue(), entry.updateId(), entry.chatId(),
+                    new Message(entry.body(), properties), 1);
+            CorrelationData correlationData = new CorrelationData("spool:" + entry.queue() + ":" + entry.updateId());
+            try {
+                send(pending, correlationData);
+            } catch (AmqpException e) {
+                log.debug("Broker still unavailable for spool replay: {}", e.getMessage());
+                break;
+            }
+            sent.add(correlationData);
+        }
+        int confirmed = 0;
+        for (CorrelationData correlationData : sent) {
+            try {
+                CorrelationData.Confirm confirm = correlationData.getFuture().get(confirmTimeoutMs, TimeUnit.MILLISECONDS);
+                if (!confirm.isAck()) {
+                    nackedCounter.increment();
+                    break;
+                }
+            } catch (ExecutionException | TimeoutException e) {
+                break;
+            }
+            if (correlationData.getReturned() != null) {
+                // Як і в основному шляху, немаршрутизоване повідомлення не повторюємо
+                returnedCounter.increment();
+                failedCounter.increment();
+                log.error("Spooled update {} was returned by the broker: {}",
+                        correlationData.getId(), correlationData.getReturned().getReplyText());
+            } else {
+                confirmedCounter.increment();
+            }
+            confirmed++;
+        }
+        return confirmed;
+    }
+
+    @PreDestroy
+    public void awaitConfirms() {
+        running = false;
+        if (replayThread != null) {
+            replayThread.interrupt();
+        }
+        try {
+            if (!inFlight.tryAcquire(maxInFlight, 10, TimeUnit.SECONDS)) {
+                log.warn("Shutting down with {} unconfirmed publishes", maxInFlight - inFlight.availablePermits());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            retryScheduler.shutdownNow();
+            spoolBacklog();
+            if (spool != null) {
+                spool.flush();
+            }
+        }
+    }
+
+    private void spoolBacklog() {
+        List<PendingPublish> held = new ArrayList<>();
+        synchronized (chatBacklog) {
+            chatBacklog.values().forEach(held::addAll);
+            chatBacklog.clear();
+        }
+        if (held.isEmpty()) {
+            return;
+        }
+        if (spool == null) {
+            log.warn("Shutting down with {} updates held behind unconfirmed publishes", held.size());
+            held.forEach(pending -> pending.updateIds().forEach(ingestionTracker::failed));
+            return;
+        }
+        // Затримані оновлення не губимо: наступний запуск доставить їх із журналу
+        spooling = true;
+        for (PendingPublish pending : held) {
+            boolean spooled = appendToSpool(pending);
+            pending.updateIds().forEach(spooled ? ingestionTracker::settled : ingestionTracker::failed);
+        }
+        log.info("Spooled {} held updates on shutdown", held.size());
+    }
+
+    // updateIds - усі оновлення в повідомленні: для альбому їх кілька, updateId - перше з них
+    private record PendingPublish(String queue, Integer updateId, Long chatId, Message message, int attempt,
+                                  List<Integer> updateIds) {
+        PendingPublish(String queue, Integer updateId, Long chatId, Message message, int attempt) {
+            this(queue, updateId, chatId, message, attempt, updateId != null ? List.of(updateId) : List.of());
+        }
+
+        PendingPublish nextAttempt() {
+            return new PendingPublish(queue, updateId, chatId, message, attempt + 1, updateIds);
+        }
     }
 }
@@ -0,0 +1,153 @@
+package lnu.study.utils;
+
+import java.util.Arrays;
+
+/**
+ * Обмеження частоти вхідних оновлень по чатах (GCRA - еквівалент маркерного кошика).
+ * Стан чату - один "теоретичний час прибуття" у відкритій хеш-таблиці на примітивних масивах,
+ * тому мільйон чатів займає десятки мегабайт без жодного об'єкта на запис.
+ * Чати, кошик яких уже повністю поповнився, видаляються під час перебудови таблиці.
+ */
+public class ChatFloodLimiter {
+
+    // Оновлення перевищує ліміт навіть з урахуванням дозволеної затримки
+    public static final long REJECTED = -1;
+
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final long NEVER = Long.MIN_VALUE;
+    private static final int MIN_CAPACITY = 64;
+
+    private final long emissionIntervalNanos;
+    private final long toleranceNanos;
+    private final long maxDeferNanos;
+    private final long noticeIntervalNanos;
+
+    private long[] keys;
+    private long[] arrivals;
+    private long[] notices;
+    private int mask;
+    private int size;
+
+    public ChatFloodLimiter(double ratePerSecond, int burst, long maxDeferNanos, long noticeIntervalNanos) {
+        if (ratePerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("Rate and burst must be positive: " + ratePerSecond + ", " + burst);
+        }
+        this.emissionIntervalNanos = (long) (1_000_000_000d / ratePerSecond);
+        this.toleranceNanos = (burst - 1) * emissionIntervalNanos;
+        this.maxDeferNanos = Math.max(0, maxDeferNanos);
+        this.noticeIntervalNanos = noticeIntervalNanos;
+        allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * @return 0 - пропустити зараз; додатне значення - через скільки наносекунд можна пропустити;
+     * {@link #REJECTED} - відкинути
+     */
+    public synchronized long admit(long chatId, long nowNanos) {
+        int slot = findOrInsert(chatId, nowNanos);
+        long arrival = Math.max(arrivals[slot], nowNanos);
+        long delay = arrival - toleranceNanos - nowNanos;
+        if (delay > maxDeferNanos) {
+            return REJECTED;
+        }
+        // Відкладені оновлення теж "витрачають" маркери, тому наступні стають у чергу за ними
+        arrivals[slot] = arrival + emissionIntervalNanos;
+        return Math.max(0, delay);
+    }
+
+    /**
+     * Пропускає оновлення лише якщо його можна пропустити зараз; інакше стан чату не змінюється.
+     */
+    public synchronized boolean tryAdmit(long chatId, long nowNanos) {
+        int slot = findOrInsert(chatId, nowNanos);
+        long arrival = Math.max(arrivals[slot], nowNanos);
+        if (arrival - toleranceNanos > nowNanos) {
+            return false;
+        }
+        arrivals[slot] = arrival + emissionIntervalNanos;
+        return true;
+    }
+
+    /**
+     * @return true не частіше ніж раз на інтервал повідомлень для одного чату
+     */
+    public synchronized boolean tryNotice(long chatId, long nowNanos) {
+        int slot = findOrInsert(chatId, nowNanos);
+        if (notices[slot] != NEVER && nowNanos - notices[slot] < noticeIntervalNanos) {
+            return false;
+        }
+        notices[slot] = nowNanos;
+        return true;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Видаляє чати, які не відрізняються від нових: кошик повний і повідомлення вже можна надсилати знову.
+     */
+    public synchronized void evictIdle(long nowNanos) {
+        rebuild(keys.length, nowNanos);
+    }
+
+    private int findOrInsert(long chatId, long nowNanos) {
+        int slot = slotOf(chatId);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == chatId) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size + 1 > keys.length / 2) {
+            // Спершу пробуємо звільнити місце від неактивних чатів, і лише потім ростемо
+            rebuild(keys.length, nowNanos);
+            if (size + 1 > keys.length / 4) {
+                rebuild(keys.length * 2, nowNanos);
+            }
+            return findOrInsert(chatId, nowNanos);
+        }
+        keys[slot] = chatId;
+        arrivals[slot] = nowNanos;
+        notices[slot] = NEVER;
+        size++;
+        return slot;
+    }
+
+    private void rebuild(int capacity, long nowNanos) {
+        long[] oldKeys = keys;
+        long[] oldArrivals = arrivals;
+        long[] oldNotices = notices;
+        allocate(Math.max(MIN_CAPACITY, capacity));
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY || isIdle(oldArrivals[i], oldNotices[i], nowNanos)) {
+                continue;
+            }
+            int slot = slotOf(oldKeys[i]);
+            while (keys[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[i];
+            arrivals[slot] = oldArrivals[i];
+            notices[slot] = oldNotices[i];
+            size++;
+        }
+    }
+
+    private boolean isIdle(long arrival, long notice, long nowNanos) {
+        return arrival <= nowNanos && (notice == NEVER || nowNanos - notice >= noticeIntervalNanos);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        arrivals = new long[capacity];
+        notices = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    private int slotOf(long chatId) {
+        return (int) (chatId * 0x9E3779B97F4A7C15L >>> 33) & mask;
+    }
+}
@@ -0,0 +1,181 @@
+package lnu.study.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import lnu.study.service.enums.UpdateKind;
+
+import java.io.IOException;
+
+/**
+ * Оновлення у вигляді оригінальних байтів вебхука разом з полями, потрібними для маршрутизації.
+ * Тіло пересилається в RabbitMQ без змін, повний граф Update в dispatcher не будується.
+ */
+public record RawUpdate(byte[] body, Integer updateId, UpdateKind kind, Long chatId,
+                        String callbackQueryId, String mediaGroupId, String command, boolean answeredInline) {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * Потоково читає update_id, тип повідомлення, chat id, media_group_id і текст команди;
+     * решта полів пропускається без розбору.
+     */
+    public static RawUpdate parse(byte[] body) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Update must be a JSON object");
+            }
+            Integer updateId = null;
+            UpdateKind kind = UpdateKind.UNSUPPORTED;
+            Long chatId = null;
+            String callbackQueryId = null;
+            String mediaGroupId = null;
+            String command = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "update_id" -> updateId = parser.getIntValue();
+                    case "message" -> {
+                        MessageFields message = readMessage(parser);
+                        kind = message.kind();
+                        chatId = message.chatId();
+                        mediaGroupId = message.mediaGroupId();
+                        command = message.command();
+                    }
+                    case "callback_query" -> {
+                        CallbackFields callback = readCallback(parser);
+                        kind = UpdateKind.CALLBACK_QUERY;
+                        chatId = callback.chatId();
+                        callbackQueryId = callback.id();
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+            return new RawUpdate(body, updateId, kind, chatId, callbackQueryId, mediaGroupId, command, false);
+        }
+    }
+
+    /**
+     * Копія оновлення, на яке dispatcher уже відповів сам: node лише збереже його без повторної відповіді.
+     */
+    public RawUpdate markAnsweredInline() {
+        return new RawUpdate(body, updateId, kind, chatId, callbackQueryId, mediaGroupId, command, true);
+    }
+
+    private static MessageFields readMessage(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return new MessageFields(UpdateKind.UNSUPPORTED, null, null, null);
+        }
+        Long chatId = null;
+        String mediaGroupId = null;
+        String command = null;
+        boolean photo = false, document = false, text = false, voice = false, audio = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "chat" -> chatId = readId(parser);
+                case "photo" -> photo = readNonEmptyArray(parser);
+                case "text" -> {
+                    text = value == JsonToken.VALUE_STRING;
+                    // Текст зберігаємо лише для команд - їх dispatcher може обробити сам
+                    if (text && parser.getText().startsWith("/")) {
+                        command = parser.getText();
+                    }
+                }
+                case "media_group_id" -> mediaGroupId = value == JsonToken.VALUE_STRING ? parser.getText() : null;
+                case "document" -> document = isObject(parser);
+                case "voice" -> voice = isObject(parser);
+                case "audio" -> audio = isObject(parser);
+                default -> parser.skipChildren();
+            }
+        }
+        // Той самий пріоритет, що й в UpdateProcessor.distributeMessagesByType
+        UpdateKind kind = photo ? UpdateKind.PHOTO
+                : document ? UpdateKind.DOC
+                : text ? UpdateKind.TEXT
+                : voice ? UpdateKind.VOICE
+                : audio ? UpdateKind.AUDIO
+                : UpdateKind.UNSUPPORTED;
+        return new MessageFields(kind, chatId, mediaGroupId, kind == UpdateKind.TEXT ? command : null);
+    }
+
+    private static CallbackFields readCallback(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return new CallbackFields(null, null);
+        }
+        String id = null;
+        Long chatId = null;
+        Long fromId = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ("message".equals(field) && parser.currentToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String messageField = parser.currentName();
+                    parser.nextToken();
+                    if ("chat".equals(messageField)) {
+                        chatId = readId(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else if ("from".equals(field)) {
+                fromId = readId(parser);
+            } else if ("id".equals(field) && parser.currentToken() == JsonToken.VALUE_STRING) {
+                id = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new CallbackFields(id, chatId != null ? chatId : fromId);
+    }
+
+    private static boolean isObject(JsonParser parser) throws IOException {
+        boolean object = parser.currentToken() == JsonToken.START_OBJECT;
+        parser.skipChildren();
+        return object;
+    }
+
+    private static boolean readNonEmptyArray(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return false;
+        }
+        boolean nonEmpty = false;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            nonEmpty = true;
+            parser.skipChildren();
+        }
+        return nonEmpty;
+    }
+
+    // Читає поле "id" об'єкта, на початку якого стоїть парсер, і дочитує об'єкт до кінця
+    private static Long readId(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        Long id = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ("id".equals(field) && parser.currentToken().isNumeric()) {
+                id = parser.getLongValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return id;
+    }
+
+    private record MessageFields(UpdateKind kind, Long chatId, String mediaGroupId, String command) {
+    }
+
+    private record CallbackFields(String id, Long chatId) {
+    }
+}
@@ -0,0 +1,50 @@
+package lnu.study.utils;
+
+/**
+ * Маркерний кошик з неперервним поповненням. Не потокобезпечний - синхронізацію забезпечує власник.
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucket(double capacity, double tokensPerSecond, long nowNanos) {
+        if (capacity <= 0 || tokensPerSecond <= 0) {
+            throw new IllegalArgumentException("Capacity and rate must be positive: " + capacity + ", " + tokensPerSecond);
+        }
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerSecond / 1_000_000_000d;
+        this.tokens = capacity;
+        this.lastRefillNanos = nowNanos;
+    }
+
+    public boolean tryConsume(long nowNanos) {
+        refill(nowNanos);
+        if (tokens >= 1d) {
+            tokens -= 1d;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return скільки наносекунд залишилось до появи маркера; 0, якщо він уже є
+     */
+    public long nanosUntilAvailable(long nowNanos) {
+        refill(nowNanos);
+        if (tokens >= 1d) {
+            return 0;
+        }
+        return (long) Math.ceil((1d - tokens) / tokensPerNano);
+    }
+
+    private void refill(long nowNanos) {
+        if (nowNanos <= lastRefillNanos) {
+            return;
+        }
+        tokens = Math.min(capacity, tokens + (nowNanos - lastRefillNanos) * tokensPerNano);
+        lastRefillNanos = nowNanos;
+    }
+}
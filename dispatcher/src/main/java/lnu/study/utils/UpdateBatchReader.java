@@ -0,0 +1,67 @@
+package lnu.study.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Розбирає відповідь getUpdates на окремі тіла Update без побудови об'єктів,
+ * щоб пакет ішов тим самим шляхом, що й тіла вебхуків (RawUpdate).
+ */
+public final class UpdateBatchReader {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private UpdateBatchReader() {
+    }
+
+    /**
+     * @return тіла оновлень з поля "result" у порядку Telegram
+     * @throws IOException якщо відповідь не розбирається або Bot API повернув "ok": false
+     */
+    public static List<byte[]> readResult(byte[] response) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(response)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "getUpdates response must be a JSON object");
+            }
+            boolean ok = false;
+            String description = null;
+            List<byte[]> updates = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "ok" -> ok = value == JsonToken.VALUE_TRUE;
+                    case "description" -> description = parser.getValueAsString();
+                    case "result" -> readUpdates(parser, updates);
+                    default -> parser.skipChildren();
+                }
+            }
+            if (!ok) {
+                throw new IOException("getUpdates failed: " + description);
+            }
+            return updates;
+        }
+    }
+
+    private static void readUpdates(JsonParser parser, List<byte[]> updates) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(512);
+            try (JsonGenerator generator = JSON_FACTORY.createGenerator(body)) {
+                generator.copyCurrentStructure(parser);
+            }
+            updates.add(body.toByteArray());
+        }
+    }
+}
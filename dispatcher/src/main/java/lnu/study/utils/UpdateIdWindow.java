@@ -0,0 +1,99 @@
+package lnu.study.utils;
+
+import java.util.Arrays;
+
+/**
+ * Ковзне вікно з фіксованим обсягом пам'яті для відсіювання повторно доставлених update_id.
+ * Зберігає лише бітову карту останніх {@code horizon} ідентифікаторів відносно найбільшого побаченого.
+ */
+public class UpdateIdWindow {
+
+    private final long[] bits;
+    private final int horizon;
+    private long highest = -1;
+
+    public UpdateIdWindow(int horizon) {
+        if (horizon <= 0) {
+            throw new IllegalArgumentException("Horizon must be positive: " + horizon);
+        }
+        // Округлюємо до кратного 64, щоб вікно повністю займало слова масиву
+        this.horizon = ((horizon + 63) / 64) * 64;
+        this.bits = new long[this.horizon / 64];
+    }
+
+    /**
+     * @return true, якщо ідентифікатор зустрівся вперше в межах вікна; false для дубліката
+     */
+    public synchronized boolean markSeen(long updateId) {
+        if (updateId < 0) {
+            return true;
+        }
+        if (highest < 0) {
+            highest = updateId;
+            set(updateId);
+            return true;
+        }
+        if (updateId > highest) {
+            long shift = updateId - highest;
+            if (shift >= horizon) {
+                clearAll();
+            } else {
+                for (long id = highest + 1; id < updateId; id++) {
+                    clear(id);
+                }
+                clear(updateId);
+            }
+            highest = updateId;
+            set(updateId);
+            return true;
+        }
+        if (highest - updateId >= horizon) {
+            // Telegram починає нову послідовність update_id після тижня простою - скидаємо вікно
+            clearAll();
+            highest = updateId;
+            set(updateId);
+            return true;
+        }
+        if (isSet(updateId)) {
+            return false;
+        }
+        set(updateId);
+        return true;
+    }
+
+    /**
+     * Прибирає ідентифікатор із вікна, щоб повторна доставка того ж оновлення не вважалась дублікатом.
+     */
+    public synchronized void forget(long updateId) {
+        if (updateId >= 0 && updateId <= highest && highest - updateId < horizon) {
+            clear(updateId);
+        }
+    }
+
+    public int getHorizon() {
+        return horizon;
+    }
+
+    private int index(long updateId) {
+        return (int) (updateId % horizon);
+    }
+
+    private boolean isSet(long updateId) {
+        int i = index(updateId);
+        return (bits[i >>> 6] & (1L << (i & 63))) != 0;
+    }
+
+    private void set(long updateId) {
+        int i = index(updateId);
+        bits[i >>> 6] |= 1L << (i & 63);
+    }
+
+    private void clear(long updateId) {
+        int i = index(updateId);
+        bits[i >>> 6] &= ~(1L << (i & 63));
+    }
+
+    private void clearAll() {
+        Arrays.fill(bits, 0L);
+    }
+}
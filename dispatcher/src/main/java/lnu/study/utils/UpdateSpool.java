@@ -0,0 +1,292 @@
+package lnu.study.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал оновлень на диску на час недоступності RabbitMQ. Записи дописуються в кінець сегментів,
+ * відображених у пам'ять (mmap), і читаються в тому самому порядку. Прочитані сегменти видаляються,
+ * позиція читання зберігається у файлі cursor.
+ * Формат запису: [довжина][crc32][дані]; нульова довжина - кінець записаних даних сегмента,
+ * запис з невірною контрольною сумою (обірваний під час падіння) теж вважається кінцем.
+ */
+public class UpdateSpool {
+
+    public record Entry(String queue, Integer updateId, Long chatId, String typeId, String contentTypeId,
+                        boolean answeredInline, byte[] body) {
+    }
+
+    private static final int HEADER_BYTES = 8;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final String CURSOR_FILE = "cursor";
+
+    private static final int HAS_UPDATE_ID = 1;
+    private static final int HAS_CHAT_ID = 2;
+    private static final int HAS_CONTENT_TYPE_ID = 4;
+    private static final int ANSWERED_INLINE = 8;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final boolean fsync;
+    private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+    private long writeSegment;
+    private long readSegment;
+    private int readOffset;
+    private long entries;
+    private long bytes;
+
+    public UpdateSpool(Path directory, int segmentBytes, boolean fsync) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsync = fsync;
+        Files.createDirectories(directory);
+        loadCursor();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+                    continue;
+                }
+                long sequence = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                if (sequence < readSegment) {
+                    Files.deleteIfExists(file);
+                } else {
+                    segments.put(sequence, map(file, (int) Files.size(file)));
+                }
+            }
+        }
+        if (segments.isEmpty()) {
+            readOffset = 0;
+            segments.put(readSegment, map(segmentPath(readSegment), segmentBytes));
+        } else if (segments.firstKey() > readSegment) {
+            // Сегмент курсора вже повністю прочитаний і видалений
+            readSegment = segments.firstKey();
+            readOffset = 0;
+        }
+        recover();
+    }
+
+    public synchronized void append(Entry entry) throws IOException {
+        byte[] payload = encode(entry);
+        int recordBytes = HEADER_BYTES + payload.length;
+        MappedByteBuffer buffer = segments.get(writeSegment);
+        // Місце під наступний нульовий заголовок теж потрібне, щоб кінець даних був явним
+        if (buffer.remaining() < recordBytes + 4) {
+            writeSegment++;
+            buffer = map(segmentPath(writeSegment), Math.max(segmentBytes, recordBytes + 4));
+            segments.put(writeSegment, buffer);
+        }
+        int position = buffer.position();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        buffer.putInt(position + recordBytes, 0);
+        buffer.put(position + HEADER_BYTES, payload);
+        buffer.putInt(position + 4, (int) crc.getValue());
+        // Довжина пишеться останньою: до цього запис для читача не існує
+        buffer.putInt(position, payload.length);
+        buffer.position(position + recordBytes);
+        if (fsync) {
+            buffer.force(position, recordBytes + 4);
+        }
+        entries++;
+        bytes += recordBytes;
+    }
+
+    /**
+     * Повертає до max найстаріших записів, не зсуваючи позицію читання.
+     */
+    public synchronized List<Entry> peek(int max) {
+        List<Entry> result = new ArrayList<>(Math.min(max, (int) Math.min(entries, Integer.MAX_VALUE)));
+        long segment = readSegment;
+        int offset = readOffset;
+        while (result.size() < max) {
+            MappedByteBuffer buffer = segments.get(segment);
+            int length = validLength(buffer, offset);
+            if (length < 0) {
+                Long next = segments.higherKey(segment);
+                if (next == null) {
+                    break;
+                }
+                segment = next;
+                offset = 0;
+                continue;
+            }
+            result.add(decode(buffer, offset, length));
+            offset += HEADER_BYTES + length;
+        }
+        return result;
+    }
+
+    /**
+     * Зсуває позицію читання на count записів і видаляє повністю прочитані сегменти.
+     */
+    public synchronized void advance(int count) throws IOException {
+        int skipped = 0;
+        while (skipped < count) {
+            int length = validLength(segments.get(readSegment), readOffset);
+            if (length < 0) {
+                Long next = segments.higherKey(readSegment);
+                if (next == null) {
+                    break;
+                }
+                readSegment = next;
+                readOffset = 0;
+                continue;
+            }
+            readOffset += HEADER_BYTES + length;
+            bytes -= HEADER_BYTES + length;
+            entries--;
+            skipped++;
+        }
+        // Прочитаний сегмент, після якого вже є наступний, більше не знадобиться
+        while (readSegment < writeSegment && validLength(segments.get(readSegment), readOffset) < 0) {
+            readSegment = segments.higherKey(readSegment);
+            readOffset = 0;
+        }
+        saveCursor();
+        for (Long sequence : List.copyOf(segments.headMap(readSegment).keySet())) {
+            // Відображення звільнить GC; на Linux видалений файл зникає разом з ним
+            segments.remove(sequence);
+            Files.deleteIfExists(segmentPath(sequence));
+        }
+    }
+
+    public synchronized long getEntries() {
+        return entries;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized boolean isEmpty() {
+        return entries == 0;
+    }
+
+    public synchronized void flush() {
+        for (MappedByteBuffer buffer : segments.values()) {
+            buffer.force();
+        }
+    }
+
+    private void recover() {
+        entries = 0;
+        bytes = 0;
+        long segment = readSegment;
+        int offset = readOffset;
+        for (Map.Entry<Long, MappedByteBuffer> item : segments.tailMap(readSegment, true).entrySet()) {
+            segment = item.getKey();
+            MappedByteBuffer buffer = item.getValue();
+            offset = segment == readSegment ? readOffset : 0;
+            int length;
+            while ((length = validLength(buffer, offset)) >= 0) {
+                offset += HEADER_BYTES + length;
+                entries++;
+                bytes += HEADER_BYTES + length;
+            }
+        }
+        writeSegment = segment;
+        segments.get(writeSegment).position(offset);
+    }
+
+    private int validLength(MappedByteBuffer buffer, int offset) {
+        if (offset + HEADER_BYTES > buffer.capacity()) {
+            return -1;
+        }
+        int length = buffer.getInt(offset);
+        if (length <= 0 || length > buffer.capacity() - offset - HEADER_BYTES) {
+            return -1;
+        }
+        byte[] payload = new byte[length];
+        buffer.get(offset + HEADER_BYTES, payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue() == buffer.getInt(offset + 4) ? length : -1;
+    }
+
+    private Entry decode(MappedByteBuffer buffer, int offset, int length) {
+        byte[] payload = new byte[length];
+        buffer.get(offset + HEADER_BYTES, payload);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            int flags = in.readUnsignedByte();
+            String queue = in.readUTF();
+            Integer updateId = (flags & HAS_UPDATE_ID) != 0 ? in.readInt() : null;
+            Long chatId = (flags & HAS_CHAT_ID) != 0 ? in.readLong() : null;
+            String typeId = in.readUTF();
+            String contentTypeId = (flags & HAS_CONTENT_TYPE_ID) != 0 ? in.readUTF() : null;
+            byte[] body = in.readAllBytes();
+            return new Entry(queue, updateId, chatId, typeId, contentTypeId, (flags & ANSWERED_INLINE) != 0, body);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupted spool record at offset " + offset, e);
+        }
+    }
+
+    private byte[] encode(Entry entry) throws IOException {
+        ByteArrayOutputStream bytesOut = new ByteArrayOutputStream(entry.body().length + 128);
+        try (DataOutputStream out = new DataOutputStream(bytesOut)) {
+            int flags = (entry.updateId() != null ? HAS_UPDATE_ID : 0)
+                    | (entry.chatId() != null ? HAS_CHAT_ID : 0)
+                    | (entry.contentTypeId() != null ? HAS_CONTENT_TYPE_ID : 0)
+                    | (entry.answeredInline() ? ANSWERED_INLINE : 0);
+            out.writeByte(flags);
+            out.writeUTF(entry.queue());
+            if (entry.updateId() != null) {
+                out.writeInt(entry.updateId());
+            }
+            if (entry.chatId() != null) {
+                out.writeLong(entry.chatId());
+            }
+            out.writeUTF(entry.typeId());
+            if (entry.contentTypeId() != null) {
+                out.writeUTF(entry.contentTypeId());
+            }
+            out.write(entry.body());
+        }
+        return bytesOut.toByteArray();
+    }
+
+    private MappedByteBuffer map(Path file, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Новий файл розширюється до розміру сегмента нулями - це і є маркер кінця даних
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private Path segmentPath(long sequence) {
+        return directory.resolve(SEGMENT_PREFIX + String.format("%020d", sequence) + SEGMENT_SUFFIX);
+    }
+
+    private void loadCursor() throws IOException {
+        Path cursor = directory.resolve(CURSOR_FILE);
+        if (!Files.exists(cursor)) {
+            return;
+        }
+        String[] parts = Files.readString(cursor).trim().split(" ");
+        readSegment = Long.parseLong(parts[0]);
+        readOffset = Integer.parseInt(parts[1]);
+    }
+
+    private void saveCursor() throws IOException {
+        Path cursor = directory.resolve(CURSOR_FILE);
+        Path tmp = directory.resolve(CURSOR_FILE + ".tmp");
+        Files.writeString(tmp, readSegment + " " + readOffset);
+        Files.move(tmp, cursor, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,124 @@
+package lnu.study.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lnu.study.controller.UpdateProcessor;
+import lnu.study.service.IngestionTracker;
+import lnu.study.service.LeaderElection;
+import lnu.study.stub.StubBotApi;
+import lnu.study.utils.RawUpdate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Цикл getUpdates -> публікація -> offset проти локальної заглушки Bot API.
+ */
+class LongPollingIngestionImplTest {
+
+    private static final long CHAT_ID = 42;
+
+    @TempDir
+    Path dataDir;
+
+    private StubBotApi botApi;
+    private IngestionTracker tracker;
+    private UpdateProcessor updateProcessor;
+    private LongPollingIngestionImpl ingestion;
+    // Що "продюсер" робить з кожним опублікованим оновленням: підтверджує, залишає в польоті чи втрачає
+    private volatile Consumer<Integer> publishOutcome;
+    private final List<Integer> processed = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        botApi = new StubBotApi("123:TEST");
+        tracker = new IngestionTrackerImpl();
+        updateProcessor = mock(UpdateProcessor.class);
+        doAnswer(invocation -> {
+            RawUpdate rawUpdate = invocation.getArgument(0);
+            processed.add(rawUpdate.updateId());
+            publishOutcome.accept(rawUpdate.updateId());
+            return rawUpdate;
+        }).when(updateProcessor).processRawUpdate(any(RawUpdate.class));
+
+        LeaderElection leaderElection = mock(LeaderElection.class);
+        ingestion = new LongPollingIngestionImpl(updateProcessor, tracker, leaderElection, new SimpleMeterRegistry(),
+                botApi.getToken(), botApi.getApiUrl(), 100, 1, 200, dataDir.resolve("offset").toString());
+        ingestion.register();
+        ArgumentCaptor<Runnable> start = ArgumentCaptor.forClass(Runnable.class);
+        verify(leaderElection).onLeadershipAcquired(start.capture());
+        start.getValue().run();
+    }
+
+    @AfterEach
+    void tearDown() {
+        ingestion.stop();
+        botApi.close();
+    }
+
+    @Test
+    void offsetAdvancesOnlyPastConfirmedUpdates() throws Exception {
+        publishOutcome = updateId -> {
+            // 11 ще чекає на підтвердження брокера
+            if (updateId != 11) {
+                tracker.settled(updateId);
+            }
+        };
+        botApi.addUpdate(10, StubBotApi.textUpdate(10, CHAT_ID, "first"));
+        botApi.addUpdate(11, StubBotApi.textUpdate(11, CHAT_ID, "second"));
+        botApi.addUpdate(12, StubBotApi.textUpdate(12, CHAT_ID, "third"));
+
+        waitUntil(() -> ingestion.getOffset() == 11);
+        waitUntil(() -> botApi.getRequestedOffsets().stream().filter(offset -> offset == 11).count() >= 2);
+        assertThat(ingestion.getOffset()).isEqualTo(11);
+        assertThat(Files.readString(dataDir.resolve("offset"))).isEqualTo("11");
+
+        tracker.settled(11);
+
+        waitUntil(() -> ingestion.getOffset() == 13);
+        assertThat(Files.readString(dataDir.resolve("offset"))).isEqualTo("13");
+        waitUntil(() -> botApi.getRequestedOffsets().contains(13L));
+    }
+
+    @Test
+    void lostPublishIsFetchedAndProcessedAgain() throws Exception {
+        publishOutcome = updateId -> {
+            // Перша спроба втрачена (брокер недоступний, журнал вимкнено), друга підтверджена
+            if (processed.stream().filter(id -> id.equals(updateId)).count() == 1) {
+                tracker.failed(updateId);
+            } else {
+                tracker.settled(updateId);
+            }
+        };
+        botApi.addUpdate(20, StubBotApi.textUpdate(20, CHAT_ID, "retry me"));
+
+        waitUntil(() -> ingestion.getOffset() == 21);
+        assertThat(processed).containsExactly(20, 20);
+        verify(updateProcessor).forgetUpdate(20);
+        assertThat(Files.readString(dataDir.resolve("offset"))).isEqualTo("21");
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Condition not met within 10 s");
+            }
+            Thread.sleep(20);
+        }
+    }
+}
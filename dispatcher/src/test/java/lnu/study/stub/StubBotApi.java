@@ -0,0 +1,106 @@
+package lnu.study.stub;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Локальна заглушка Bot API для long polling: віддає оновлення з update_id не меншим за offset
+ * і, як Telegram, забуває ті, що лежать нижче offset запиту.
+ */
+public class StubBotApi implements AutoCloseable {
+
+    private final HttpServer server;
+    private final String token;
+    private final TreeMap<Integer, String> updates = new TreeMap<>();
+    private final List<Long> requestedOffsets = new CopyOnWriteArrayList<>();
+
+    public StubBotApi(String token) throws IOException {
+        this.token = token;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/bot" + token + "/getUpdates", this::getUpdates);
+        server.start();
+    }
+
+    public String getApiUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public synchronized void addUpdate(int updateId, String json) {
+        updates.put(updateId, json);
+    }
+
+    public List<Long> getRequestedOffsets() {
+        return requestedOffsets;
+    }
+
+    public static String textUpdate(int updateId, long chatId, String text) {
+        return "{\"update_id\":" + updateId + ",\"message\":{\"message_id\":" + updateId
+                + ",\"date\":0,\"chat\":{\"id\":" + chatId + ",\"type\":\"private\"},\"text\":\"" + text + "\"}}";
+    }
+
+    private void getUpdates(HttpExchange exchange) throws IOException {
+        long offset = queryParam(exchange, "offset");
+        int limit = (int) queryParam(exchange, "limit");
+        requestedOffsets.add(offset);
+        List<String> result = take(offset, limit > 0 ? limit : 100);
+        if (result.isEmpty()) {
+            // Коротке очікування замість повного timeout, щоб тести не чекали секундами
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        byte[] body = ("{\"ok\":true,\"result\":[" + String.join(",", result) + "]}").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private synchronized List<String> take(long offset, int limit) {
+        // offset підтверджує всі оновлення нижче за нього
+        updates.headMap((int) Math.min(offset, Integer.MAX_VALUE), false).clear();
+        List<String> result = new ArrayList<>();
+        for (String update : updates.values()) {
+            if (result.size() == limit) {
+                break;
+            }
+            result.add(update);
+        }
+        return result;
+    }
+
+    private static long queryParam(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return 0;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                return Long.parseLong(pair.substring(eq + 1));
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
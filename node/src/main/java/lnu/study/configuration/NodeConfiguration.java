@@ -1,5 +1,7 @@
 package lnu.study.configuration;
 
+import lnu.study.utils.BlobStore;
+import lnu.study.utils.UrlSigner;
 import lnu.study.utils.CryptoTool;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -30,6 +32,16 @@ public class NodeConfiguration {
         return new CryptoTool(salt);
     }
 
+    @Bean
+    public BlobStore blobStore(@Value("${answers.blob.dir}") String blobDir) {
+        return new BlobStore(blobDir);
+    }
+
+    @Bean
+    public UrlSigner urlSigner(@Value("${answers.url-delivery.secret:}") String secret) {
+        return new UrlSigner(secret);
+    }
+
     @Bean
     public RestTemplate restTemplate() {
         return new RestTemplate();
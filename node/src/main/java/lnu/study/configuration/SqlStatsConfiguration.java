@@ -0,0 +1,22 @@
+package lnu.study.configuration;
+
+import lnu.study.utils.SqlStatementCounter;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Підключає лічильник SQL-запитів до Hibernate лише при sql-stats.enabled=true:
+ * за замовчуванням кожен запит не проходить через зайвий StatementInspector.
+ */
+@Configuration
+@ConditionalOnProperty(name = "sql-stats.enabled", havingValue = "true")
+public class SqlStatsConfiguration {
+
+    @Bean
+    public HibernatePropertiesCustomizer sqlStatementCounterCustomizer() {
+        return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, SqlStatementCounter.class.getName());
+    }
+}
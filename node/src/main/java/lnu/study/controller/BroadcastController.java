@@ -0,0 +1,69 @@
+package lnu.study.controller;
+
+import lnu.study.service.BroadcastService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+// Адміністративні розсилки; без broadcast.admin-token ендпоінти недоступні
+@RestController
+@RequestMapping("/broadcast")
+public class BroadcastController {
+    private static final String TOKEN_HEADER = "X-Admin-Token";
+
+    private final BroadcastService broadcastService;
+    private final byte[] adminToken;
+
+    public BroadcastController(BroadcastService broadcastService,
+                               @Value("${broadcast.admin-token:}") String adminToken) {
+        this.broadcastService = broadcastService;
+        this.adminToken = adminToken.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @PostMapping
+    public ResponseEntity<?> start(@RequestHeader(value = TOKEN_HEADER, required = false) String token,
+                                   @RequestBody String text) {
+        if (!authorized(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (text == null || text.isBlank()) {
+            return ResponseEntity.badRequest().body("Текст розсилки порожній");
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(broadcastService.start(text));
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<?> progress(@RequestHeader(value = TOKEN_HEADER, required = false) String token,
+                                      @PathVariable("id") Long id) {
+        if (!authorized(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.of(broadcastService.getProgress(id));
+    }
+
+    @PostMapping("/{id}/cancel")
+    public ResponseEntity<?> cancel(@RequestHeader(value = TOKEN_HEADER, required = false) String token,
+                                    @PathVariable("id") Long id) {
+        if (!authorized(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return broadcastService.cancel(id) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+
+    private boolean authorized(String token) {
+        if (adminToken.length == 0 || token == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(adminToken, token.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,39 @@
+package lnu.study.dao;
+
+import lnu.study.entity.Broadcast;
+import lnu.study.entity.enums.BroadcastStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface BroadcastDAO extends JpaRepository<Broadcast, Long> {
+    List<Broadcast> findByStatusOrderByIdAsc(BroadcastStatus status);
+
+    // Розсилку веде одна репліка; чужу можна перехопити, лише якщо власник давно не робив контрольної точки
+    @Modifying
+    @Transactional
+    @Query("update Broadcast b set b.owner = :owner, b.heartbeatAt = :now " +
+            "where b.id = :id and b.status = lnu.study.entity.enums.BroadcastStatus.RUNNING " +
+            "and (b.owner is null or b.owner = :owner or b.heartbeatAt < :staleBefore)")
+    int claim(@Param("id") Long id, @Param("owner") String owner,
+              @Param("now") LocalDateTime now, @Param("staleBefore") LocalDateTime staleBefore);
+
+    // 0 - розсилку скасовано або перехоплено іншою реплікою
+    @Modifying
+    @Transactional
+    @Query("update Broadcast b set b.lastUserId = :lastUserId, b.queuedCount = :queuedCount, b.heartbeatAt = :now " +
+            "where b.id = :id and b.owner = :owner and b.status = lnu.study.entity.enums.BroadcastStatus.RUNNING")
+    int checkpoint(@Param("id") Long id, @Param("owner") String owner, @Param("lastUserId") Long lastUserId,
+                   @Param("queuedCount") long queuedCount, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("update Broadcast b set b.status = :status, b.finishedAt = :now " +
+            "where b.id = :id and b.status = lnu.study.entity.enums.BroadcastStatus.RUNNING")
+    int finish(@Param("id") Long id, @Param("status") BroadcastStatus status, @Param("now") LocalDateTime now);
+}
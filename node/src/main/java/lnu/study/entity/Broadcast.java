@@ -0,0 +1,37 @@
+package lnu.study.entity;
+
+import jakarta.persistence.*;
+import lnu.study.entity.enums.BroadcastStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "broadcast")
+public class Broadcast {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    @Column(columnDefinition = "text")
+    private String text;
+    @Enumerated(EnumType.STRING)
+    private BroadcastStatus status;
+    // Контрольна точка: id останнього користувача, якому повідомлення вже поставлене в чергу
+    private Long lastUserId;
+    private long queuedCount;
+    private long totalRecipients;
+    // Репліка node, що веде розсилку, і час її останньої контрольної точки
+    private String owner;
+    private LocalDateTime heartbeatAt;
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+    private LocalDateTime finishedAt;
+}
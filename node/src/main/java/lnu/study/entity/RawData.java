@@ -11,6 +11,8 @@ import org.hibernate.annotations.JdbcTypeCode;
 import org.hibernate.type.SqlTypes;
 import org.telegram.telegrambots.meta.api.objects.Update;
 
+import java.time.OffsetDateTime;
+
 @Data
 @Builder
 @NoArgsConstructor
@@ -24,5 +26,12 @@ public class RawData {
     @JdbcTypeCode(SqlTypes.JSON)
     @Column(columnDefinition = "jsonb")
     private Update event;
+    // Поля для пошуку без розбору jsonb
+    private Long chatId;
+    @Column(length = 16)
+    private String updateType;
+    // Ключ розділення таблиці за часом; значення ставить БД
+    @Column(nullable = false, insertable = false, updatable = false, columnDefinition = "timestamptz default now()")
+    private OffsetDateTime createdAt;
 
 }
@@ -0,0 +1,7 @@
+package lnu.study.entity.enums;
+
+public enum BroadcastStatus {
+    RUNNING,
+    COMPLETED,
+    CANCELLED
+}
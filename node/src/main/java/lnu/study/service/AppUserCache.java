@@ -0,0 +1,19 @@
+package lnu.study.service;
+
+import lnu.study.entity.AppUser;
+
+import java.util.Optional;
+
+public interface AppUserCache {
+    /**
+     * Користувач за Telegram id: з локального кешу (окрема копія на кожен виклик) або з БД.
+     */
+    Optional<AppUser> findByTelegramUserId(Long telegramUserId);
+
+    /**
+     * Зберігає користувача в БД; після коміту оновлює локальний кеш, а інші репліки
+     * отримують сповіщення про зміну. У транзакції запис відкладається до коміту і виконується один раз,
+     * якщо стан змінився; новий користувач (без id) записується одразу.
+     */
+    AppUser save(AppUser appUser);
+}
@@ -0,0 +1,25 @@
+package lnu.study.service;
+
+import lnu.study.entity.enums.BroadcastStatus;
+
+import java.util.Optional;
+
+public interface BroadcastService {
+    /**
+     * Створює розсилку всім користувачам. Її підхопить одна з реплік node і відправлятиме
+     * з контрольними точками, тож після рестарту розсилка продовжиться з місця зупинки.
+     */
+    Progress start(String text);
+
+    Optional<Progress> getProgress(Long broadcastId);
+
+    boolean cancel(Long broadcastId);
+
+    /**
+     * @param ratePerSecond фактична швидкість, якщо розсилку веде ця репліка, інакше налаштована
+     * @param etaSeconds -1, якщо розсилка вже не виконується
+     */
+    record Progress(Long id, BroadcastStatus status, long totalRecipients, long queued,
+                    double ratePerSecond, long etaSeconds) {
+    }
+}
@@ -3,7 +3,8 @@ package lnu.study.service;
 import org.telegram.telegrambots.meta.api.objects.Update;
 
 public interface ConsumerService {
-    void consumeTextMessageUpdates(Update update);
+    // answeredInline: dispatcher уже відповів на команду сам, потрібне лише збереження
+    void consumeTextMessageUpdates(Update update, Boolean answeredInline);
     void consumeDocMessageUpdates(Update update);
     void consumePhotoMessageUpdates(Update update);
 }
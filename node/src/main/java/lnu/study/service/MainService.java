@@ -3,6 +3,8 @@ package lnu.study.service;
 import org.springframework.transaction.annotation.Transactional;
 import org.telegram.telegrambots.meta.api.objects.Update;
 
+import java.util.List;
+
 public interface MainService {
     void processTextMessage(Update update);
     void processDocMessage(Update update);
@@ -16,4 +18,8 @@ public interface MainService {
 
     void processFormatSelectionCallback(Update update);
     void processAudioFileMessage(Update update);
+    // Усі елементи одного альбому: одна транзакція і одна відповідь користувачу
+    void processMediaGroup(List<Update> updates);
+    // Команда, на яку dispatcher відповів сам: зберігаємо raw_data і користувача без повторної відповіді
+    void processAnsweredCommand(Update update);
 }
@@ -3,6 +3,7 @@ package lnu.study.service;
 import lnu.study.dto.AudioToSendDTO;
 import lnu.study.dto.DocumentToSendDTO;
 import lnu.study.dto.PhotoToSendDTO;
+import lnu.study.dto.ProgressMessageDTO;
 import lnu.study.dto.VideoToSendDTO;
 import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
@@ -26,5 +27,9 @@ public interface ProducerService {
 
     void producerAnswerCallbackQuery(String callbackQueryId, String text);
 
+    void producerProgress(ProgressMessageDTO progressMessageDTO);
+
+    void producerBroadcast(SendMessage sendMessage);
+
 
 }
\ No newline at end of file
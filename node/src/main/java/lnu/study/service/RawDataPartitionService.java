@@ -0,0 +1,9 @@
+package lnu.study.service;
+
+public interface RawDataPartitionService {
+    /**
+     * Переводить raw_data на розділення за часом (один раз), створює розділи наперед
+     * і видаляє цілими розділами дані, старші за термін зберігання.
+     */
+    void maintain();
+}
@@ -0,0 +1,11 @@
+package lnu.study.service;
+
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+public interface RawDataService {
+    /**
+     * Ставить оновлення в чергу на запис у raw_data (з урахуванням вибірки за типом) і одразу повертається.
+     * Запис виконується пакетами поза транзакцією обробки повідомлення.
+     */
+    void record(Update update);
+}
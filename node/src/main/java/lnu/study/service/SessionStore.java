@@ -0,0 +1,46 @@
+package lnu.study.service;
+
+import lnu.study.dto.ArchiveFileDetailDTO;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Тимчасовий стан діалогу користувача: файли сесії архівування і файл, що чекає на вибір формату конвертації.
+ * Сесії живуть обмежений час від останньої зміни (session.ttl-minutes), кількість файлів в архіві обмежена.
+ */
+public interface SessionStore {
+
+    record PendingConversion(String fileId, String originalFileName, String fileType) {
+    }
+
+    /**
+     * Починає нову сесію архівування, відкидаючи файли попередньої.
+     */
+    void startArchive(Long appUserId);
+
+    /**
+     * Додає файл у кінець сесії архівування (створює сесію, якщо її немає).
+     *
+     * @return false, якщо в сесії вже максимальна кількість файлів
+     */
+    boolean appendArchiveFile(Long appUserId, ArchiveFileDetailDTO file);
+
+    /**
+     * Файли сесії архівування в порядку додавання; порожній список, якщо сесії немає або вона прострочена.
+     */
+    List<ArchiveFileDetailDTO> getArchiveFiles(Long appUserId);
+
+    /**
+     * Видаляє сесію архівування.
+     *
+     * @return кількість видалених файлів, -1 якщо сесії не було
+     */
+    int clearArchive(Long appUserId);
+
+    void setPendingConversion(Long appUserId, PendingConversion pendingConversion);
+
+    Optional<PendingConversion> getPendingConversion(Long appUserId);
+
+    void clearPendingConversion(Long appUserId);
+}
@@ -0,0 +1,8 @@
+package lnu.study.service;
+
+public interface SqlStatsService {
+    /**
+     * Виконує обробку оновлення і враховує кількість SQL-запитів, які вона видала, у статистиці за типом оновлення.
+     */
+    void measure(String updateType, Runnable handler);
+}
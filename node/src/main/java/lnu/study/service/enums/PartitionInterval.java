@@ -0,0 +1,26 @@
+package lnu.study.service.enums;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.TemporalAdjusters;
+
+// Період одного розділу raw_data; межі рахуються в UTC
+public enum PartitionInterval {
+    DAILY,
+    WEEKLY;
+
+    public Instant periodStart(Instant instant) {
+        LocalDate date = instant.atZone(ZoneOffset.UTC).toLocalDate();
+        if (this == WEEKLY) {
+            date = date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        }
+        return date.atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    public Instant next(Instant periodStart) {
+        LocalDate date = periodStart.atZone(ZoneOffset.UTC).toLocalDate();
+        return (this == WEEKLY ? date.plusWeeks(1) : date.plusDays(1)).atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+}
@@ -0,0 +1,32 @@
+package lnu.study.service.enums;
+
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+// Тип оновлення для вибірки записів raw_data
+public enum RawDataType {
+    TEXT,
+    PHOTO,
+    DOC,
+    VOICE,
+    AUDIO,
+    VIDEO,
+    CALLBACK,
+    OTHER;
+
+    public static RawDataType of(Update update) {
+        if (update.hasCallbackQuery()) {
+            return CALLBACK;
+        }
+        if (!update.hasMessage()) {
+            return OTHER;
+        }
+        var message = update.getMessage();
+        return message.hasPhoto() ? PHOTO
+                : message.hasDocument() ? DOC
+                : message.hasText() ? TEXT
+                : message.hasVoice() ? VOICE
+                : message.hasAudio() ? AUDIO
+                : message.hasVideo() ? VIDEO
+                : OTHER;
+    }
+}
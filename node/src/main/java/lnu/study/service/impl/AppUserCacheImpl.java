@@ -0,0 +1,366 @@
+package lnu.study.service.impl;
+
+import jakarta.annotation.PreDestroy;
+import lnu.study.dao.AppUserDAO;
+import lnu.study.entity.AppUser;
+import lnu.study.service.AppUserCache;
+import lombok.extern.log4j.Log4j2;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Локальний кеш AppUser за Telegram id: обмежений за розміром (LRU) і за часом життя запису.
+ * Збереження йде в БД, а кеш оновлюється після коміту. Про кожну зміну надсилається Postgres NOTIFY
+ * (доставляється лише після коміту), тож інші репліки node і rest-service скидають свої записи.
+ * Поки з'єднання LISTEN не встановлене, застарілість обмежена TTL.
+ * У транзакції обробки оновлення збереження відкладаються до коміту (unit of work): скільки б разів
+ * обробник не викликав save, у БД іде один UPDATE, і лише якщо стан відрізняється від прочитаного.
+ */
+@Log4j2
+@Service
+public class AppUserCacheImpl implements AppUserCache {
+
+    private static final long RECONNECT_DELAY_MILLIS = 5000;
+
+    private final AppUserDAO appUserDAO;
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSource dataSource;
+    private final boolean enabled;
+    private final int capacity;
+    private final long ttlNanos;
+    private final long reportIntervalSeconds;
+    // Власні сповіщення повертаються і цій репліці - їх розпізнаємо за джерелом
+    private final String origin = UUID.randomUUID().toString();
+    private final Map<Long, CachedUser> entries;
+    // Змінюється при кожному скиданні: завантажене з БД до скидання в кеш не потрапляє
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong skippedWrites = new AtomicLong();
+    private final Thread listener;
+    // Звіт не залежить від з'єднання LISTEN: поки воно розірване, статистика все одно виводиться
+    private final ScheduledExecutorService reporter;
+    private volatile boolean running = true;
+
+    public AppUserCacheImpl(AppUserDAO appUserDAO,
+                            JdbcTemplate jdbcTemplate,
+                            DataSource dataSource,
+                            @Value("${user-cache.enabled:true}") boolean enabled,
+                            @Value("${user-cache.capacity:10000}") int capacity,
+                            @Value("${user-cache.ttl-seconds:300}") long ttlSeconds,
+                            @Value("${user-cache.report-interval-seconds:60}") long reportIntervalSeconds) {
+        this.appUserDAO = appUserDAO;
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSource = dataSource;
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.reportIntervalSeconds = reportIntervalSeconds;
+        this.entries = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CachedUser> eldest) {
+                return size() > AppUserCacheImpl.this.capacity;
+            }
+        };
+        this.listener = new Thread(this::listen, "app-user-invalidation");
+        this.listener.setDaemon(true);
+        this.reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "app-user-cache-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            log.info("AppUser cache disabled");
+            return;
+        }
+        listener.start();
+        reporter.scheduleAtFixedRate(this::report, reportIntervalSeconds, reportIntervalSeconds, TimeUnit.SECONDS);
+        log.info("AppUser cache: capacity {}, ttl {} s, invalidation channel {}",
+                capacity, TimeUnit.NANOSECONDS.toSeconds(ttlNanos), AppUserDAO.CHANGE_CHANNEL);
+    }
+
+    @Override
+    public Optional<AppUser> findByTelegramUserId(Long telegramUserId) {
+        if (!enabled || telegramUserId == null) {
+            return appUserDAO.findByTelegramUserId(telegramUserId);
+        }
+        UnitOfWork unitOfWork = unitOfWork();
+        if (unitOfWork != null && unitOfWork.pending.containsKey(telegramUserId)) {
+            // У межах транзакції - той самий екземпляр, що вже змінено і чекає на запис
+            return Optional.of(unitOfWork.pending.get(telegramUserId));
+        }
+        AppUser cached = get(telegramUserId);
+        if (cached == null) {
+            misses.incrementAndGet();
+            long loadedAt = generation.get();
+            Optional<AppUser> loaded = appUserDAO.findByTelegramUserId(telegramUserId);
+            if (loaded.isEmpty()) {
+                return loaded;
+            }
+            cached = copy(loaded.get());
+            putIfCurrent(cached, loadedAt);
+        } else {
+            hits.incrementAndGet();
+        }
+        if (unitOfWork != null) {
+            unitOfWork.loaded.putIfAbsent(telegramUserId, copy(cached));
+        }
+        // Викликач змінює об'єкт і зберігає його явно - кешований екземпляр лишається незмінним
+        return Optional.of(copy(cached));
+    }
+
+    @Override
+    public AppUser save(AppUser appUser) {
+        Long telegramUserId = appUser.getTelegramUserId();
+        UnitOfWork unitOfWork = appUser.getId() != null && telegramUserId != null ? unitOfWork() : null;
+        if (unitOfWork == null) {
+            // Новому користувачу id потрібен одразу
+            return saveNow(appUser);
+        }
+        unitOfWork.pending.put(telegramUserId, appUser);
+        return appUser;
+    }
+
+    private AppUser saveNow(AppUser appUser) {
+        AppUser saved = appUserDAO.save(appUser);
+        Long telegramUserId = saved.getTelegramUserId();
+        if (!enabled || telegramUserId == null) {
+            return saved;
+        }
+        notifyChanged(telegramUserId);
+        AppUser snapshot = copy(saved);
+        // До коміту інші потоки мають читати з БД, а не бачити незакомічений стан
+        invalidate(telegramUserId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        replace(telegramUserId, snapshot);
+                    } else {
+                        invalidate(telegramUserId);
+                    }
+                }
+            });
+        } else {
+            replace(telegramUserId, snapshot);
+        }
+        return saved;
+    }
+
+    /**
+     * Unit of work поточної транзакції; null поза транзакцією, у транзакції лише для читання
+     * або коли кеш вимкнено.
+     */
+    private UnitOfWork unitOfWork() {
+        if (!enabled || !TransactionSynchronizationManager.isSynchronizationActive()
+                || TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return null;
+        }
+        UnitOfWork unitOfWork = (UnitOfWork) TransactionSynchronizationManager.getResource(this);
+        if (unitOfWork == null) {
+            unitOfWork = new UnitOfWork();
+            TransactionSynchronizationManager.bindResource(this, unitOfWork);
+            TransactionSynchronizationManager.registerSynchronization(unitOfWork);
+        }
+        return unitOfWork;
+    }
+
+    private void notifyChanged(Long telegramUserId) {
+        try {
+            jdbcTemplate.query("SELECT pg_notify(?, ?)", (RowCallbackHandler) rs -> {
+            }, AppUserDAO.CHANGE_CHANNEL, origin + ":" + telegramUserId);
+        } catch (Exception e) {
+            // Зміна в БД важливіша за сповіщення: інші репліки отримають її після TTL
+            log.warn("Failed to publish AppUser change for {}: {}", telegramUserId, e.getMessage());
+        }
+    }
+
+    private AppUser get(Long telegramUserId) {
+        synchronized (entries) {
+            CachedUser entry = entries.get(telegramUserId);
+            if (entry == null) {
+                return null;
+            }
+            if (System.nanoTime() - entry.loadedAtNanos() > ttlNanos) {
+                entries.remove(telegramUserId);
+                return null;
+            }
+            return entry.appUser();
+        }
+    }
+
+    private void putIfCurrent(AppUser appUser, long loadedAt) {
+        synchronized (entries) {
+            if (generation.get() == loadedAt) {
+                entries.put(appUser.getTelegramUserId(), new CachedUser(appUser, System.nanoTime()));
+            }
+        }
+    }
+
+    private void replace(Long telegramUserId, AppUser appUser) {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            entries.put(telegramUserId, new CachedUser(appUser, System.nanoTime()));
+        }
+    }
+
+    private void invalidate(Long telegramUserId) {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            entries.remove(telegramUserId);
+        }
+    }
+
+    private void clear() {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            entries.clear();
+        }
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + AppUserDAO.CHANGE_CHANNEL);
+                }
+                // Зміни, що відбулися без підписки, невідомі - починаємо з порожнього кешу
+                clear();
+                log.info("Listening for AppUser changes on {}", AppUserDAO.CHANGE_CHANNEL);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(1000);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            onNotification(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                clear();
+                log.warn("AppUser invalidation listener failed, cache cleared, reconnecting in {} ms: {}",
+                        RECONNECT_DELAY_MILLIS, e.getMessage());
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void onNotification(String payload) {
+        int separator = payload.lastIndexOf(':');
+        if (separator < 0) {
+            log.warn("Malformed AppUser change notification: {}", payload);
+            return;
+        }
+        if (origin.equals(payload.substring(0, separator))) {
+            return;
+        }
+        try {
+            invalidate(Long.parseLong(payload.substring(separator + 1)));
+            invalidations.incrementAndGet();
+        } catch (NumberFormatException e) {
+            log.warn("Malformed AppUser change notification: {}", payload);
+        }
+    }
+
+    private void report() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        log.info("AppUser cache: {} entries, {} lookups, hit rate {}%, {} remote invalidations, {} writes, {} clean saves skipped",
+                size, total, total > 0 ? String.format("%.1f", hitCount * 100.0 / total) : "-", invalidations.get(),
+                writes.get(), skippedWrites.get());
+    }
+
+    private static AppUser copy(AppUser appUser) {
+        AppUser copy = new AppUser();
+        BeanUtils.copyProperties(appUser, copy);
+        return copy;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        listener.interrupt();
+        reporter.shutdownNow();
+    }
+
+    private record CachedUser(AppUser appUser, long loadedAtNanos) {
+    }
+
+    private final class UnitOfWork implements TransactionSynchronization {
+        // Стан, прочитаний у цій транзакції, - для перевірки, чи є що записувати
+        private final Map<Long, AppUser> loaded = new HashMap<>();
+        private final Map<Long, AppUser> pending = new LinkedHashMap<>();
+        private final Map<Long, AppUser> written = new HashMap<>();
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            for (Map.Entry<Long, AppUser> item : pending.entrySet()) {
+                AppUser appUser = item.getValue();
+                // AppUser.equals порівнює всі поля, крім id
+                if (appUser.equals(loaded.get(item.getKey()))) {
+                    skippedWrites.incrementAndGet();
+                    continue;
+                }
+                AppUser saved = appUserDAO.save(appUser);
+                notifyChanged(item.getKey());
+                written.put(item.getKey(), copy(saved));
+                writes.incrementAndGet();
+            }
+            // До коміту інші потоки мають читати з БД, а не бачити незакомічений стан
+            written.keySet().forEach(AppUserCacheImpl.this::invalidate);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(AppUserCacheImpl.this);
+            written.forEach((telegramUserId, snapshot) -> {
+                if (status == STATUS_COMMITTED) {
+                    replace(telegramUserId, snapshot);
+                } else {
+                    invalidate(telegramUserId);
+                }
+            });
+        }
+    }
+}
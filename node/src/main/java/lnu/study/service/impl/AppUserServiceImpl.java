@@ -4,6 +4,7 @@ import lnu.study.dao.AppUserDAO;
 import lnu.study.dto.MailParams;
 import lnu.study.entity.AppUser;
 import lnu.study.entity.enums.UserState;
+import lnu.study.service.AppUserCache;
 import lnu.study.service.AppUserService;
 import lnu.study.utils.CryptoTool;
 import lombok.RequiredArgsConstructor;
@@ -22,6 +23,7 @@ import javax.mail.internet.InternetAddress;
 @RequiredArgsConstructor
 public class AppUserServiceImpl implements AppUserService {
     private final AppUserDAO appUserDAO;
+    private final AppUserCache appUserCache;
     private final CryptoTool cryptoTool;
 
     @Value("${service.mail.uri}")
@@ -80,7 +82,7 @@ public class AppUserServiceImpl implements AppUserService {
 
         AppUser savedAppUser;
         try {
-            savedAppUser = appUserDAO.save(appUser);
+            savedAppUser = appUserCache.save(appUser);
             log.info("SUCCESS SAVE (registerUser): AppUser ID={}, TelegramID={}, SavedState='{}', Email='{}'",
                     savedAppUser.getId(), savedAppUser.getTelegramUserId(),
                     (savedAppUser.getState() != null ? savedAppUser.getState().name() : "null_state_object"),
@@ -132,7 +134,7 @@ public class AppUserServiceImpl implements AppUserService {
 
         AppUser savedAppUser;
         try {
-            savedAppUser = appUserDAO.save(appUser);
+            savedAppUser = appUserCache.save(appUser);
             log.info("SUCCESS SAVE (setEmail): AppUser ID={}, TelegramID={}, SavedState='{}', Email='{}'",
                     savedAppUser.getId(), savedAppUser.getTelegramUserId(),
                     (savedAppUser.getState() != null ? savedAppUser.getState().name() : "null_state_object"),
@@ -219,7 +221,7 @@ public class AppUserServiceImpl implements AppUserService {
                         appUser.getEmail(),
                         appUser.isActive());
                 try {
-                    appUserDAO.save(appUser);
+                    appUserCache.save(appUser);
                     log.info("SUCCESS SAVE (activateUser): AppUser ID={}, TelegramID={}", appUser.getId(), appUser.getTelegramUserId());
                 } catch (Exception e) {
                     log.error("!!!!!!!! EXCEPTION during save in activateUser for user with ID {}: {}. Full stack trace:",
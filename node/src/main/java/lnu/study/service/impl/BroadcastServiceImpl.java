@@ -0,0 +1,229 @@
+package lnu.study.service.impl;
+
+import jakarta.annotation.PreDestroy;
+import lnu.study.dao.AppUserDAO;
+import lnu.study.dao.BroadcastDAO;
+import lnu.study.entity.AppUser;
+import lnu.study.entity.Broadcast;
+import lnu.study.entity.enums.BroadcastStatus;
+import lnu.study.service.BroadcastService;
+import lnu.study.service.ProducerService;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@Log4j2
+@Service
+public class BroadcastServiceImpl implements BroadcastService {
+
+    private final BroadcastDAO broadcastDAO;
+    private final AppUserDAO appUserDAO;
+    private final ProducerService producerService;
+    private final double ratePerSecond;
+    private final int pageSize;
+    private final long leaseSeconds;
+    private final long progressLogNanos;
+    // Ідентифікатор репліки для lease на розсилку
+    private final String owner = UUID.randomUUID().toString();
+    private final ScheduledExecutorService worker;
+    private volatile RunState current;
+    private volatile boolean running = true;
+
+    public BroadcastServiceImpl(BroadcastDAO broadcastDAO,
+                                AppUserDAO appUserDAO,
+                                ProducerService producerService,
+                                @Value("${broadcast.rate-per-second:20}") double ratePerSecond,
+                                @Value("${broadcast.page-size:200}") int pageSize,
+                                @Value("${broadcast.lease-seconds:60}") long leaseSeconds,
+                                @Value("${broadcast.progress-log-seconds:30}") long progressLogSeconds) {
+        this.broadcastDAO = broadcastDAO;
+        this.appUserDAO = appUserDAO;
+        this.producerService = producerService;
+        this.ratePerSecond = ratePerSecond;
+        this.pageSize = pageSize;
+        this.leaseSeconds = leaseSeconds;
+        this.progressLogNanos = TimeUnit.SECONDS.toNanos(progressLogSeconds);
+        this.worker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "broadcast-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("Broadcast service: rate {} msg/s, page size {}, lease {} s", ratePerSecond, pageSize, leaseSeconds);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumePending() {
+        // Незавершені розсилки (після рестарту або падіння іншої репліки) підхоплюються з контрольної точки
+        worker.scheduleWithFixedDelay(this::pickUp, 5, Math.max(5, leaseSeconds / 3), TimeUnit.SECONDS);
+    }
+
+    @Override
+    public Progress start(String text) {
+        Broadcast broadcast = broadcastDAO.save(Broadcast.builder()
+                .text(text)
+                .status(BroadcastStatus.RUNNING)
+                .lastUserId(0L)
+                .totalRecipients(appUserDAO.countByTelegramUserIdIsNotNull())
+                .build());
+        log.info("Broadcast {} created for {} recipients", broadcast.getId(), broadcast.getTotalRecipients());
+        worker.execute(this::pickUp);
+        return toProgress(broadcast);
+    }
+
+    @Override
+    public Optional<Progress> getProgress(Long broadcastId) {
+        return broadcastDAO.findById(broadcastId).map(this::toProgress);
+    }
+
+    @Override
+    public boolean cancel(Long broadcastId) {
+        // Робочий потік помітить скасування на наступній контрольній точці
+        boolean cancelled = broadcastDAO.finish(broadcastId, BroadcastStatus.CANCELLED, LocalDateTime.now()) == 1;
+        if (cancelled) {
+            log.info("Broadcast {} cancelled", broadcastId);
+        }
+        return cancelled;
+    }
+
+    private void pickUp() {
+        try {
+            for (Broadcast broadcast : broadcastDAO.findByStatusOrderByIdAsc(BroadcastStatus.RUNNING)) {
+                LocalDateTime now = LocalDateTime.now();
+                if (running && broadcastDAO.claim(broadcast.getId(), owner, now, now.minusSeconds(leaseSeconds)) == 1) {
+                    run(broadcast);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Broadcast worker failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void run(Broadcast broadcast) throws InterruptedException {
+        Long id = broadcast.getId();
+        long cursor = broadcast.getLastUserId() != null ? broadcast.getLastUserId() : 0L;
+        RunState state = new RunState(id, broadcast.getTotalRecipients(), broadcast.getQueuedCount());
+        current = state;
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        long nextSendAt = System.nanoTime();
+        long lastLogAt = System.nanoTime();
+        long lastCheckpointAt = System.nanoTime();
+        long checkpointIntervalNanos = TimeUnit.SECONDS.toNanos(leaseSeconds) / 3;
+        log.info("Broadcast {} started from user id {} ({} of {} already queued)",
+                id, cursor, state.queued, state.totalRecipients);
+        try {
+            while (running) {
+                List<AppUser> page = appUserDAO.findByIdGreaterThanAndTelegramUserIdIsNotNullOrderByIdAsc(
+                        cursor, PageRequest.of(0, pageSize));
+                if (page.isEmpty()) {
+                    broadcastDAO.finish(id, BroadcastStatus.COMPLETED, LocalDateTime.now());
+                    log.info("Broadcast {} completed: {} messages queued", id, state.queued);
+                    return;
+                }
+                for (AppUser user : page) {
+                    // Рівномірний темп нижче глобального ліміту Bot API лишає запас для відповідей користувачам
+                    long wait = nextSendAt - System.nanoTime();
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                    nextSendAt = Math.max(nextSendAt, System.nanoTime() - intervalNanos) + intervalNanos;
+
+                    SendMessage sendMessage = new SendMessage();
+                    sendMessage.setChatId(user.getTelegramUserId().toString());
+                    sendMessage.setText(broadcast.getText());
+                    producerService.producerBroadcast(sendMessage);
+                    cursor = user.getId();
+                    state.queued++;
+                    // При низькому темпі сторінка триває довше за lease - продовжуємо його всередині сторінки
+                    if (System.nanoTime() - lastCheckpointAt >= checkpointIntervalNanos) {
+                        lastCheckpointAt = System.nanoTime();
+                        if (!checkpoint(id, cursor, state.queued)) {
+                            return;
+                        }
+                    }
+                }
+                lastCheckpointAt = System.nanoTime();
+                if (!checkpoint(id, cursor, state.queued)) {
+                    return;
+                }
+                if (System.nanoTime() - lastLogAt >= progressLogNanos) {
+                    lastLogAt = System.nanoTime();
+                    log.info("Broadcast {}: {} of {} queued, {} msg/s, ETA {} s",
+                            id, state.queued, state.totalRecipients, String.format("%.1f", state.rate()), state.etaSeconds());
+                }
+            }
+        } finally {
+            current = null;
+        }
+    }
+
+    private boolean checkpoint(Long id, long cursor, long queued) {
+        if (broadcastDAO.checkpoint(id, owner, cursor, queued, LocalDateTime.now()) == 0) {
+            log.info("Broadcast {} stopped at user id {}: cancelled or taken over by another replica", id, cursor);
+            return false;
+        }
+        return true;
+    }
+
+    private Progress toProgress(Broadcast broadcast) {
+        RunState state = current;
+        if (state != null && state.id.equals(broadcast.getId())) {
+            return new Progress(broadcast.getId(), BroadcastStatus.RUNNING, state.totalRecipients, state.queued,
+                    state.rate(), state.etaSeconds());
+        }
+        long queued = broadcast.getQueuedCount();
+        long eta = -1;
+        if (broadcast.getStatus() == BroadcastStatus.RUNNING) {
+            eta = (long) (Math.max(0, broadcast.getTotalRecipients() - queued) / ratePerSecond);
+        }
+        return new Progress(broadcast.getId(), broadcast.getStatus(), broadcast.getTotalRecipients(), queued,
+                broadcast.getStatus() == BroadcastStatus.RUNNING ? ratePerSecond : 0, eta);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Розсилка продовжиться з останньої контрольної точки на цій або іншій репліці
+        running = false;
+        worker.shutdownNow();
+    }
+
+    private static final class RunState {
+        private final Long id;
+        private final long totalRecipients;
+        private final long queuedAtStart;
+        private final long startedAtNanos = System.nanoTime();
+        private volatile long queued;
+
+        private RunState(Long id, long totalRecipients, long queued) {
+            this.id = id;
+            this.totalRecipients = totalRecipients;
+            this.queuedAtStart = queued;
+            this.queued = queued;
+        }
+
+        private double rate() {
+            double seconds = (System.nanoTime() - startedAtNanos) / 1e9;
+            return seconds > 0 ? (queued - queuedAtStart) / seconds : 0;
+        }
+
+        // Користувачі, зареєстровані після старту, теж отримають повідомлення, тому оцінка приблизна
+        private long etaSeconds() {
+            double rate = rate();
+            long remaining = Math.max(0, totalRecipients - queued);
+            return rate > 0 ? (long) (remaining / rate) : -1;
+        }
+    }
+}
@@ -2,11 +2,16 @@ package lnu.study.service.impl;
 
 import lnu.study.service.ConsumerService;
 import lnu.study.service.MainService;
+import lnu.study.service.SqlStatsService;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Service;
 import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.List;
 import static lnu.study.model.RabbitQueue.CALLBACK_QUERY_UPDATE;
 import static lnu.study.model.RabbitQueue.AUDIO_MESSAGE_UPDATE;
 
@@ -14,20 +19,32 @@ import static lnu.study.model.RabbitQueue.AUDIO_MESSAGE_UPDATE;
 
 import static lnu.study.model.RabbitQueue.*;
 
+/**
+ * Споживач для rabbit.routing.mode=QUEUE_PER_TYPE. У режимі PARTITIONED не створюється:
+ * оновлення одного чату з різних черг обганяли б одне одного.
+ */
 @Service
 @Log4j2
+@ConditionalOnProperty(name = "rabbit.routing.mode", havingValue = "QUEUE_PER_TYPE", matchIfMissing = true)
 public class ConsumerServiceImpl implements ConsumerService {
     private final MainService mainService;
+    private final SqlStatsService sqlStatsService;
 
-    public ConsumerServiceImpl(MainService mainService) {
+    public ConsumerServiceImpl(MainService mainService, SqlStatsService sqlStatsService) {
         this.mainService = mainService;
+        this.sqlStatsService = sqlStatsService;
     }
 
     @Override
     @RabbitListener(queues = TEXT_MESSAGE_UPDATE)
-    public void consumeTextMessageUpdates(Update update) {
+    public void consumeTextMessageUpdates(@Payload Update update,
+                                          @Header(name = ANSWERED_INLINE_HEADER, required = false) Boolean answeredInline) {
         log.debug("NODE: Text message is received");
-        mainService.processTextMessage(update);
+        if (Boolean.TRUE.equals(answeredInline)) {
+            sqlStatsService.measure(TEXT_MESSAGE_UPDATE, () -> mainService.processAnsweredCommand(update));
+            return;
+        }
+        sqlStatsService.measure(TEXT_MESSAGE_UPDATE, () -> mainService.processTextMessage(update));
 
 
 
@@ -37,7 +54,7 @@ public class ConsumerServiceImpl implements ConsumerService {
     @RabbitListener(queues = DOC_MESSAGE_UPDATE)
     public void consumeDocMessageUpdates(Update update) {
         log.debug("NODE: Doc file is received");
-        mainService.processDocMessage(update);
+        sqlStatsService.measure(DOC_MESSAGE_UPDATE, () -> mainService.processDocMessage(update));
 
 
     }
@@ -46,7 +63,7 @@ public class ConsumerServiceImpl implements ConsumerService {
     @RabbitListener(queues = PHOTO_MESSAGE_UPDATE)
     public void consumePhotoMessageUpdates(Update update) {
         log.debug("NODE: Photo is received");
-        mainService.processPhotoMessage(update);
+        sqlStatsService.measure(PHOTO_MESSAGE_UPDATE, () -> mainService.processPhotoMessage(update));
 
 
     }
@@ -54,7 +71,7 @@ public class ConsumerServiceImpl implements ConsumerService {
     @RabbitListener(queues = VOICE_MESSAGE_UPDATE)
     public void consumeVoiceMessageUpdates(Update update) {
         log.debug("NODE: Voice Message is received from RabbitMQ");
-        mainService.processVoiceMessage(update);
+        sqlStatsService.measure(VOICE_MESSAGE_UPDATE, () -> mainService.processVoiceMessage(update));
 
 
     }
@@ -64,7 +81,7 @@ public class ConsumerServiceImpl implements ConsumerService {
     public void consumeCallbackQueryUpdate(@Payload Update update) {
         log.debug("NODE: Callback Query Update is received from queue {}", CALLBACK_QUERY_UPDATE);
         try {
-            mainService.processCallbackQuery(update);
+            sqlStatsService.measure(CALLBACK_QUERY_UPDATE, () -> mainService.processCallbackQuery(update));
         } catch (Exception e) {
             log.error("Error processing callback query update: {}", e.getMessage(), e);
         }
@@ -75,11 +92,21 @@ public class ConsumerServiceImpl implements ConsumerService {
     public void consumeAudioFileMessageUpdate(@Payload Update update) {
         log.debug("NODE: Audio File Message Update is received from queue {}", AUDIO_MESSAGE_UPDATE);
         try {
-            mainService.processAudioFileMessage(update);
+            sqlStatsService.measure(AUDIO_MESSAGE_UPDATE, () -> mainService.processAudioFileMessage(update));
         } catch (Exception e) {
             log.error("Error processing audio file message update: {}", e.getMessage(), e);
         }
     }
 
+    @RabbitListener(queues = MEDIA_GROUP_UPDATE)
+    public void consumeMediaGroupUpdate(@Payload List<Update> updates) {
+        log.debug("NODE: Media group of {} updates is received from queue {}", updates.size(), MEDIA_GROUP_UPDATE);
+        try {
+            sqlStatsService.measure(MEDIA_GROUP_UPDATE, () -> mainService.processMediaGroup(updates));
+        } catch (Exception e) {
+            log.error("Error processing media group update: {}", e.getMessage(), e);
+        }
+    }
+
 
 }
@@ -0,0 +1,180 @@
+package lnu.study.service.impl;
+
+import jakarta.annotation.PreDestroy;
+import lnu.study.dto.ArchiveFileDetailDTO;
+import lnu.study.service.SessionStore;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сесії в пам'яті цього процесу (session.store=MEMORY): для одного екземпляра node, після рестарту сесії втрачаються.
+ * Кількість сесій обмежена - при перевищенні витісняється та, що найдовше не використовувалась.
+ */
+@Log4j2
+@Service
+@ConditionalOnProperty(name = "session.store", havingValue = "MEMORY")
+public class InMemorySessionStoreImpl implements SessionStore {
+
+    private final long ttlNanos;
+    private final int maxArchiveFiles;
+    private final int maxSessions;
+    private final Map<Long, Session> sessions;
+    private final ScheduledExecutorService sweeper;
+
+    public InMemorySessionStoreImpl(@Value("${session.ttl-minutes:360}") long ttlMinutes,
+                                    @Value("${session.archive.max-files:50}") int maxArchiveFiles,
+                                    @Value("${session.memory.max-sessions:10000}") int maxSessions,
+                                    @Value("${session.sweep-interval-seconds:300}") long sweepIntervalSeconds) {
+        this.ttlNanos = TimeUnit.MINUTES.toNanos(ttlMinutes);
+        this.maxArchiveFiles = maxArchiveFiles;
+        this.maxSessions = maxSessions;
+        this.sessions = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Session> eldest) {
+                return size() > InMemorySessionStoreImpl.this.maxSessions;
+            }
+        };
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, sweepIntervalSeconds, sweepIntervalSeconds, TimeUnit.SECONDS);
+        log.info("In-memory session store: ttl {} min, up to {} files per archive, up to {} sessions",
+                ttlMinutes, maxArchiveFiles, maxSessions);
+    }
+
+    @Override
+    public void startArchive(Long appUserId) {
+        synchronized (sessions) {
+            session(appUserId, true).archiveFiles = new ArrayList<>();
+        }
+    }
+
+    @Override
+    public boolean appendArchiveFile(Long appUserId, ArchiveFileDetailDTO file) {
+        synchronized (sessions) {
+            Session session = session(appUserId, true);
+            if (session.archiveFiles == null) {
+                session.archiveFiles = new ArrayList<>();
+            }
+            if (session.archiveFiles.size() >= maxArchiveFiles) {
+                return false;
+            }
+            session.archiveFiles.add(file);
+            return true;
+        }
+    }
+
+    @Override
+    public List<ArchiveFileDetailDTO> getArchiveFiles(Long appUserId) {
+        synchronized (sessions) {
+            Session session = session(appUserId, false);
+            return session != null && session.archiveFiles != null ? List.copyOf(session.archiveFiles) : List.of();
+        }
+    }
+
+    @Override
+    public int clearArchive(Long appUserId) {
+        synchronized (sessions) {
+            Session session = session(appUserId, false);
+            if (session == null || session.archiveFiles == null) {
+                return -1;
+            }
+            int removed = session.archiveFiles.size();
+            session.archiveFiles = null;
+            removeIfEmpty(appUserId, session);
+            return removed;
+        }
+    }
+
+    @Override
+    public void setPendingConversion(Long appUserId, PendingConversion pendingConversion) {
+        synchronized (sessions) {
+            session(appUserId, true).pendingConversion = pendingConversion;
+        }
+    }
+
+    @Override
+    public Optional<PendingConversion> getPendingConversion(Long appUserId) {
+        synchronized (sessions) {
+            Session session = session(appUserId, false);
+            return session != null ? Optional.ofNullable(session.pendingConversion) : Optional.empty();
+        }
+    }
+
+    @Override
+    public void clearPendingConversion(Long appUserId) {
+        synchronized (sessions) {
+            Session session = session(appUserId, false);
+            if (session != null) {
+                session.pendingConversion = null;
+                removeIfEmpty(appUserId, session);
+            }
+        }
+    }
+
+    // Викликається під блокуванням sessions; прострочена сесія вважається відсутньою
+    private Session session(Long appUserId, boolean create) {
+        long now = System.nanoTime();
+        Session session = sessions.get(appUserId);
+        if (session != null && now - session.touchedAtNanos > ttlNanos) {
+            sessions.remove(appUserId);
+            session = null;
+        }
+        if (session == null) {
+            if (!create) {
+                return null;
+            }
+            session = new Session();
+            sessions.put(appUserId, session);
+        }
+        session.touchedAtNanos = now;
+        return session;
+    }
+
+    private void removeIfEmpty(Long appUserId, Session session) {
+        if (session.archiveFiles == null && session.pendingConversion == null) {
+            sessions.remove(appUserId);
+        }
+    }
+
+    private void sweep() {
+        long now = System.nanoTime();
+        int removed = 0;
+        synchronized (sessions) {
+            var iterator = sessions.values().iterator();
+            while (iterator.hasNext()) {
+                if (now - iterator.next().touchedAtNanos > ttlNanos) {
+                    iterator.remove();
+                    removed++;
+                }
+            }
+        }
+        if (removed > 0) {
+            log.info("Expired {} abandoned sessions", removed);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    private static final class Session {
+        private List<ArchiveFileDetailDTO> archiveFiles;
+        private PendingConversion pendingConversion;
+        private long touchedAtNanos;
+    }
+}
@@ -1,14 +1,14 @@
 package lnu.study.service.impl;
 
-import lnu.study.dao.AppUserDAO;
-import lnu.study.dao.RawDataDAO;
 import lnu.study.dto.AudioToSendDTO;
 import lnu.study.dto.DocumentToSendDTO;
+import lnu.study.dto.ProgressMessageDTO;
 import lnu.study.entity.*;
 import lnu.study.exceptions.UploadFileException;
 import lnu.study.service.*;
 import lnu.study.service.enums.LinkType;
 import lnu.study.service.enums.ServiceCommand;
+import lnu.study.utils.BotReplies;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.HttpStatus;
@@ -16,6 +16,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
 import org.telegram.telegrambots.meta.api.objects.Document;
 import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.PhotoSize;
@@ -30,8 +31,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import lnu.study.dto.ArchiveFileDetailDTO;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.UUID;
 import java.util.Arrays;
 import java.util.Comparator;
 
@@ -41,9 +41,9 @@ import static lnu.study.service.enums.ServiceCommand.*;
 @Log4j2
 @Service
 public class MainServiceImpl implements MainService {
-    private final RawDataDAO rawDataDAO;
+    private final RawDataService rawDataService;
     private final ProducerService producerService;
-    private final AppUserDAO appUserDAO;
+    private final AppUserCache appUserCache;
     private final FileService fileService;
     private final AppUserService appUserService;
     private final ConverterClientService converterClientService;
@@ -55,19 +55,21 @@ public class MainServiceImpl implements MainService {
     private static final List<String> SUPPORTED_VIDEO_MIME_TYPES = Arrays.asList(
             "video/mp4", "video/quicktime", "video/x-msvideo", "video/x-matroska", "video/webm", "video/3gpp", "video/x-flv"
     );
-    private final Map<Long, List<ArchiveFileDetailDTO>> archivingSessions = new ConcurrentHashMap<>(); // <--- НОВЕ ПОЛЕ
+    private final SessionStore sessionStore;
 
 
-    public MainServiceImpl(RawDataDAO rawDataDAO,
+    public MainServiceImpl(RawDataService rawDataService,
                            ProducerService producerService,
-                           AppUserDAO appUserDAO,
-                           FileService fileService, AppUserService appUserService, ConverterClientService converterClientService) {
-        this.rawDataDAO = rawDataDAO;
+                           AppUserCache appUserCache,
+                           FileService fileService, AppUserService appUserService, ConverterClientService converterClientService,
+                           SessionStore sessionStore) {
+        this.rawDataService = rawDataService;
         this.producerService = producerService;
-        this.appUserDAO = appUserDAO;
+        this.appUserCache = appUserCache;
         this.fileService = fileService;
         this.appUserService = appUserService;
         this.converterClientService = converterClientService;
+        this.sessionStore = sessionStore;
     }
     // Метод для очищення сесії архівування
     private void clearArchiveSession(Long appUserId) {
@@ -75,9 +77,9 @@ public class MainServiceImpl implements MainService {
             log.warn("Спроба очистити сесію архівування для null appUserId.");
             return;
         }
-        List<ArchiveFileDetailDTO> removedSession = archivingSessions.remove(appUserId);
-        if (removedSession != null) {
-            log.info("Сесію архівування для користувача appUserId={} очищено. Видалено {} файлів з сесії.", appUserId, removedSession.size());
+        int removedFiles = sessionStore.clearArchive(appUserId);
+        if (removedFiles >= 0) {
+            log.info("Сесію архівування для користувача appUserId={} очищено. Видалено {} файлів з сесії.", appUserId, removedFiles);
         } else {
             log.info("Для користувача appUserId={} не знайдено активної сесії архівування для очищення.", appUserId);
         }
@@ -107,9 +109,12 @@ public class MainServiceImpl implements MainService {
                 output = cancelProcess(appUser); // cancelProcess має викликати clearArchiveSession
                 sendAnswer(output, chatId);
                 return;
+            } else if (HELP.equals(serviceCommand)) { // /help однакова в будь-якому стані, режим не змінюється
+                sendAnswer(help(), chatId);
+                return;
             } else if (serviceCommand != null) { // Користувач надсилає іншу команду
                 output = "Ви зараз у режимі створення архіву. Щоб вийти, надішліть /cancel. " +
-                        "Інші команди недоступні. Будь ласка, надішліть файл.";
+                        "Інші команди, крім /help, недоступні. Будь ласка, надішліть файл.";
                 sendAnswer(output, chatId);
                 return;
             } else { // Користувач надсилає текст, а не команду чи файл
@@ -129,10 +134,9 @@ public class MainServiceImpl implements MainService {
             if (!appUser.isActive()) { // Перевірка, чи користувач активний
                 output = "Будь ласка, зареєструйтесь (/registration) та активуйте обліковий запис для створення архівів.";
             } else {
-                clearArchiveSession(appUser.getId()); // Очистити попередню сесію, якщо була
-                archivingSessions.put(appUser.getId(), new ArrayList<>()); // Ініціалізувати нову сесію
+                sessionStore.startArchive(appUser.getId()); // Нова сесія замість попередньої, якщо була
                 appUser.setState(ARCHIVING_FILES); // Встановлюємо новий стан
-                appUserDAO.save(appUser); // Зберігаємо зміни стану користувача
+                appUserCache.save(appUser); // Зберігаємо зміни стану користувача
                 log.info("User {} (appUserId={}) switched to ARCHIVING_FILES state.", appUser.getTelegramUserId(), appUser.getId());
                 output = "Розпочато сесію створення архіву. Надішліть перший файл або кілька файлів.\n" +
                         "Для завершення та створення архіву буде відповідна кнопка (після надсилання файлу).\n" +
@@ -145,7 +149,7 @@ public class MainServiceImpl implements MainService {
                 output = "Будь ласка, зареєструйтесь (/registration) та активуйте обліковий запис для конвертації.";
             } else {
                 appUser.setState(AWAITING_FILE_FOR_CONVERSION);
-                appUserDAO.save(appUser);
+                appUserCache.save(appUser);
                 output = "Ви в режимі конвертації. Надішліть файл для обробки:\n" +
                         "- Фото\n" +
                         "- Відео\n" +
@@ -195,7 +199,7 @@ public class MainServiceImpl implements MainService {
     // Новий метод для переходу в режим генерації посилань
     private String switchToGenerateLinkMode(AppUser appUser) {
         appUser.setState(BASIC_STATE);
-        appUserDAO.save(appUser);
+        appUserCache.save(appUser);
         log.info("User {} switched to BASIC_STATE (generate link mode).", appUser.getTelegramUserId());
         return "Останній режим вимкнено. Тепер ви можете надсилати файли для генерації посилань.\n\n" +
                 "Для перегляду доступних комад використайте /help.";
@@ -203,12 +207,15 @@ public class MainServiceImpl implements MainService {
 
     // Новий допоміжний метод для повідомлення після конвертації
     private void sendPostConversionMessage(Long chatId) {
-        String messageText = "Файл успішно сконвертовано!\n" +
+        sendAnswer(postConversionText(), chatId);
+    }
+
+    private String postConversionText() {
+        return "Файл успішно сконвертовано!\n" +
                 "Надішліть наступний файл для конвертації, \n" +
                 "або /cancel для виходу з режиму, \n" +
                 "або /generate_link для переходу в режим файлообмінника, \n" +
                 "або /create_archive для переходу в режим архіватора.";
-        sendAnswer(messageText, chatId);
     }
 
 
@@ -233,8 +240,9 @@ public class MainServiceImpl implements MainService {
                     originalFileName = "document_" + fileId;
                 }
                 ArchiveFileDetailDTO fileDetail = new ArchiveFileDetailDTO(fileId, originalFileName, "document");
-                List<ArchiveFileDetailDTO> userArchiveFiles = archivingSessions.computeIfAbsent(appUser.getId(), k -> new ArrayList<>());
-                userArchiveFiles.add(fileDetail);
+                if (!addToArchiveSession(appUser, fileDetail, chatId)) {
+                    return;
+                }
                 log.info("Додано документ '{}' (file_id: {}) до сесії архівування для користувача appUserId={}",
                         originalFileName, fileId, appUser.getId());
                 sendArchiveOptions(chatId, "Файл '" + originalFileName + "' отримано.");
@@ -267,33 +275,27 @@ public class MainServiceImpl implements MainService {
                 log.info("Convertible document received: UserID: {}, FileID: {}, FileName: {}, MIME: {}. Switching to AWAITING_TARGET_FORMAT_SELECTION.",
                         appUser.getTelegramUserId(), fileId, originalFileName, mimeType);
 
-                appUser.setPendingFileId(fileId);
-                appUser.setPendingOriginalFileName(originalFileName);
-                appUser.setPendingFileType("document"); // Встановлюємо загальний тип "document"
+                sessionStore.setPendingConversion(appUser.getId(), new SessionStore.PendingConversion(fileId, originalFileName, "document"));
                 appUser.setState(AWAITING_TARGET_FORMAT_SELECTION);
-                appUserDAO.save(appUser);
+                appUserCache.save(appUser);
 
                 sendDocumentFormatSelectionMessage(chatId); // Цей метод ми оновимо наступним
                 return;
             } else if (isPhotoAsDocument) {
                 // Логіка для фото, відправлених як документ (залишається без змін)
                 log.info("Photo received as document from user {}. Switching to AWAITING_TARGET_FORMAT_SELECTION. FileID: {}, FileName: {}", appUser.getTelegramUserId(), fileId, originalFileName);
-                appUser.setPendingFileId(fileId);
-                appUser.setPendingOriginalFileName(originalFileName);
-                appUser.setPendingFileType("photo");
+                sessionStore.setPendingConversion(appUser.getId(), new SessionStore.PendingConversion(fileId, originalFileName, "photo"));
                 appUser.setState(AWAITING_TARGET_FORMAT_SELECTION);
-                appUserDAO.save(appUser);
+                appUserCache.save(appUser);
                 sendFormatSelectionMessage(chatId, "photo_document");
                 return;
             } else if (isVideoAsDocument) {
                 // Логіка для відео, відправлених як документ (залишається без змін)
                 log.info("Video received as document from user {}. Switching to AWAITING_TARGET_FORMAT_SELECTION. FileID: {}, FileName: {}",
                         appUser.getTelegramUserId(), fileId, originalFileName);
-                appUser.setPendingFileId(fileId);
-                appUser.setPendingOriginalFileName(originalFileName); // Використовуємо originalFileName
-                appUser.setPendingFileType("video");
+                sessionStore.setPendingConversion(appUser.getId(), new SessionStore.PendingConversion(fileId, originalFileName, "video"));
                 appUser.setState(AWAITING_TARGET_FORMAT_SELECTION);
-                appUserDAO.save(appUser);
+                appUserCache.save(appUser);
                 sendVideoFormatSelectionMessage(chatId);
                 return;
             } else {
@@ -443,8 +445,9 @@ public class MainServiceImpl implements MainService {
 
                     ArchiveFileDetailDTO fileDetail = new ArchiveFileDetailDTO(fileId, originalFileName, "photo");
 
-                    List<ArchiveFileDetailDTO> userArchiveFiles = archivingSessions.computeIfAbsent(appUser.getId(), k -> new ArrayList<>());
-                    userArchiveFiles.add(fileDetail);
+                    if (!addToArchiveSession(appUser, fileDetail, chatId)) {
+                        return;
+                    }
                     log.info("Додано фото '{}' (file_id: {}) до сесії архівування для користувача appUserId={}",
                             originalFileName, fileId, appUser.getId());
 
@@ -476,11 +479,9 @@ public class MainServiceImpl implements MainService {
 
             String fileId = photoSize.getFileId();
             String originalFileName = "photo_" + appUser.getTelegramUserId() + "_" + System.currentTimeMillis() + ".jpg"; // Можна взяти з photoSize, якщо є
-            appUser.setPendingFileId(fileId);
-            appUser.setPendingOriginalFileName(originalFileName);
-            appUser.setPendingFileType("photo");
+            sessionStore.setPendingConversion(appUser.getId(), new SessionStore.PendingConversion(fileId, originalFileName, "photo"));
             appUser.setState(AWAITING_TARGET_FORMAT_SELECTION);
-            appUserDAO.save(appUser);
+            appUserCache.save(appUser);
 
             sendFormatSelectionMessage(chatId, "photo"); // Викликаємо наш новий метод
             log.info("Photo received from user {}. Switched to AWAITING_TARGET_FORMAT_SELECTION. FileID: {}, FileName: {}", appUser.getTelegramUserId(), fileId, originalFileName);
@@ -501,6 +502,114 @@ public class MainServiceImpl implements MainService {
         }
     }
 
+    @Override
+    @Transactional
+    public void processMediaGroup(List<Update> updates) {
+        if (updates == null || updates.isEmpty() || updates.get(0).getMessage() == null) {
+            log.warn("Received empty media group or media group without message.");
+            return;
+        }
+        Update first = updates.get(0);
+        var appUser = findOrSaveAppUser(first);
+        if (appUser == null) return;
+        var chatId = first.getMessage().getChatId();
+        log.info("ENTERING processMediaGroup for user {}. Items: {}. Current state: {}",
+                appUser.getTelegramUserId(), updates.size(), appUser.getState());
+
+        if (AWAITING_FILE_FOR_CONVERSION.equals(appUser.getState())) {
+            // Конвертація працює з одним файлом і власною клавіатурою - залишаємо поелементну обробку
+            for (Update update : updates) {
+                if (update.getMessage().hasPhoto()) {
+                    processPhotoMessage(update);
+                } else {
+                    processDocMessage(update);
+                }
+            }
+            return;
+        }
+
+        updates.forEach(rawDataService::record);
+
+        if (ARCHIVING_FILES.equals(appUser.getState())) {
+            List<String> fileNames = new ArrayList<>();
+            for (Update update : updates) {
+                ArchiveFileDetailDTO fileDetail = toArchiveFileDetail(update.getMessage());
+                if (fileDetail != null) {
+                    if (!addToArchiveSession(appUser, fileDetail, chatId)) {
+                        return; // Користувач уже отримав повідомлення про ліміт
+                    }
+                    fileNames.add(fileDetail.getOriginalFileName());
+                }
+            }
+            log.info("Додано {} файлів альбому до сесії архівування для користувача appUserId={}", fileNames.size(), appUser.getId());
+            if (fileNames.isEmpty()) {
+                sendAnswer("Помилка: не вдалося обробити файли альбому. Спробуйте надіслати ще раз.", chatId);
+                return;
+            }
+            sendArchiveOptions(chatId, "Отримано файлів: " + fileNames.size() + " (" + String.join(", ", fileNames) + ").");
+            return;
+        }
+
+        log.info("User {} sent a media group (not for archiving or conversion). Processing for link generation.", appUser.getTelegramUserId());
+        String permissionError = checkPermissionError(appUser);
+        if (permissionError != null) { sendAnswer(permissionError, chatId); return; }
+        StringBuilder output = new StringBuilder("Файли альбому завантажено:");
+        int failed = 0;
+        for (Update update : updates) {
+            Message message = update.getMessage();
+            try {
+                if (message.hasPhoto()) {
+                    AppPhoto photo = fileService.processPhoto(message);
+                    if (photo == null) { failed++; continue; }
+                    output.append("\nФото: ").append(fileService.generateLink(photo.getId(), LinkType.GET_PHOTO));
+                } else if (message.hasDocument()) {
+                    AppDocument doc = fileService.processDoc(message);
+                    if (doc == null) { failed++; continue; }
+                    output.append("\n").append(doc.getDocName()).append(": ").append(fileService.generateLink(doc.getId(), LinkType.GET_DOC));
+                }
+            } catch (Exception e) {
+                log.error("Помилка при збереженні файлу альбому (update_id={}): {}", update.getUpdateId(), e.getMessage(), e);
+                failed++;
+            }
+        }
+        if (failed > 0) {
+            output.append("\n\nНе вдалося обробити файлів: ").append(failed);
+        }
+        output.append("\n\nДля виходу з режиму генерації посилань натисніть /cancel або відправте наступний файл.");
+        sendAnswer(output.toString(), chatId);
+    }
+
+    // Додає файл до сесії архівування; якщо ліміт файлів вичерпано - пропонує створити архів
+    private boolean addToArchiveSession(AppUser appUser, ArchiveFileDetailDTO fileDetail, Long chatId) {
+        if (sessionStore.appendArchiveFile(appUser.getId(), fileDetail)) {
+            return true;
+        }
+        log.info("Сесія архівування для користувача appUserId={} досягла ліміту файлів, файл '{}' не додано",
+                appUser.getId(), fileDetail.getOriginalFileName());
+        sendArchiveOptions(chatId, "Досягнуто максимальної кількості файлів в архіві, файл '"
+                + fileDetail.getOriginalFileName() + "' не додано.");
+        return false;
+    }
+
+    // Опис елемента альбому для сесії архівування; ті самі імена, що й при поштучному надсиланні
+    private ArchiveFileDetailDTO toArchiveFileDetail(Message message) {
+        if (message.hasPhoto()) {
+            PhotoSize photoSize = message.getPhoto().stream()
+                    .max(Comparator.comparing(PhotoSize::getFileSize))
+                    .orElse(null);
+            if (photoSize == null) return null;
+            String fileId = photoSize.getFileId();
+            return new ArchiveFileDetailDTO(fileId, "photo_" + fileId + "_" + System.currentTimeMillis() + ".jpg", "photo");
+        }
+        Document document = message.getDocument();
+        if (document == null) return null;
+        String originalFileName = document.getFileName();
+        if (originalFileName == null || originalFileName.isEmpty()) {
+            originalFileName = "document_" + document.getFileId();
+        }
+        return new ArchiveFileDetailDTO(document.getFileId(), originalFileName, "document");
+    }
+
     @Override
     @Transactional
     public void processVoiceMessage(Update update) {
@@ -551,8 +660,9 @@ public class MainServiceImpl implements MainService {
 
                 ArchiveFileDetailDTO fileDetail = new ArchiveFileDetailDTO(fileId, originalFileName, "voice"); // Тип "voice" або "audio"
 
-                List<ArchiveFileDetailDTO> userArchiveFiles = archivingSessions.computeIfAbsent(appUser.getId(), k -> new ArrayList<>());
-                userArchiveFiles.add(fileDetail);
+                if (!addToArchiveSession(appUser, fileDetail, chatId)) {
+                    return;
+                }
                 log.info("Додано голосове повідомлення '{}' (file_id: {}) до сесії архівування для користувача appUserId={}",
                         originalFileName, fileId, appUser.getId());
 
@@ -576,11 +686,9 @@ public class MainServiceImpl implements MainService {
             String originalFileName = "voice_" + appUser.getTelegramUserId() + "_" + System.currentTimeMillis() + ".ogg";
             String fileId = telegramVoice.getFileId();
 
-            appUser.setPendingFileId(fileId);
-            appUser.setPendingOriginalFileName(originalFileName);
-            appUser.setPendingFileType("audio"); // Обробляємо як загальне аудіо
+            sessionStore.setPendingConversion(appUser.getId(), new SessionStore.PendingConversion(fileId, originalFileName, "audio"));
             appUser.setState(AWAITING_TARGET_FORMAT_SELECTION);
-            appUserDAO.save(appUser);
+            appUserCache.save(appUser);
 
             sendAudioFormatSelectionMessage(chatId); // Та сама клавіатура, що і для аудіофайлів
             log.info("Voice message received from user {}. Switched to AWAITING_TARGET_FORMAT_SELECTION. FileID: {}, FileName: {}",
@@ -661,8 +769,9 @@ public class MainServiceImpl implements MainService {
 
                 ArchiveFileDetailDTO fileDetail = new ArchiveFileDetailDTO(fileId, originalFileName, "video");
 
-                List<ArchiveFileDetailDTO> userArchiveFiles = archivingSessions.computeIfAbsent(appUser.getId(), k -> new ArrayList<>());
-                userArchiveFiles.add(fileDetail);
+                if (!addToArchiveSession(appUser, fileDetail, chatId)) {
+                    return;
+                }
                 log.info("Додано відео '{}' (file_id: {}) до сесії архівування для користувача appUserId={}",
                         originalFileName, fileId, appUser.getId());
 
@@ -704,11 +813,9 @@ public class MainServiceImpl implements MainService {
 
             String fileId = telegramVideo.getFileId();
 
-            appUser.setPendingFileId(fileId);
-            appUser.setPendingOriginalFileName(originalFileName);
-            appUser.setPendingFileType("video"); // <--- Встановлюємо тип
+            sessionStore.setPendingConversion(appUser.getId(), new SessionStore.PendingConversion(fileId, originalFileName, "video"));
             appUser.setState(AWAITING_TARGET_FORMAT_SELECTION);
-            appUserDAO.save(appUser);
+            appUserCache.save(appUser);
 
             sendVideoFormatSelectionMessage(chatId); // <--- Новий метод для вибору формату відео
             log.info("Video received from user {}. Switched to AWAITING_TARGET_FORMAT_SELECTION. FileID: {}, FileName: {}",
@@ -820,8 +927,9 @@ public class MainServiceImpl implements MainService {
 
                 ArchiveFileDetailDTO fileDetail = new ArchiveFileDetailDTO(fileId, originalFileName, "audio");
 
-                List<ArchiveFileDetailDTO> userArchiveFiles = archivingSessions.computeIfAbsent(appUser.getId(), k -> new ArrayList<>());
-                userArchiveFiles.add(fileDetail);
+                if (!addToArchiveSession(appUser, fileDetail, chatId)) {
+                    return;
+                }
                 log.info("Додано аудіофайл '{}' (file_id: {}) до сесії архівування для користувача appUserId={}",
                         originalFileName, fileId, appUser.getId());
 
@@ -864,11 +972,9 @@ public class MainServiceImpl implements MainService {
 
             String fileId = telegramAudio.getFileId();
 
-            appUser.setPendingFileId(fileId);
-            appUser.setPendingOriginalFileName(originalFileName);
-            appUser.setPendingFileType("audio"); // <--- Встановлюємо тип "audio"
+            sessionStore.setPendingConversion(appUser.getId(), new SessionStore.PendingConversion(fileId, originalFileName, "audio"));
             appUser.setState(AWAITING_TARGET_FORMAT_SELECTION);
-            appUserDAO.save(appUser);
+            appUserCache.save(appUser);
 
             sendAudioFormatSelectionMessage(chatId); // <--- Новий метод для вибору формату аудіо
             log.info("Audio file received from user {}. Switched to AWAITING_TARGET_FORMAT_SELECTION. FileID: {}, FileName: {}",
@@ -925,7 +1031,7 @@ public class MainServiceImpl implements MainService {
             String fileTypeDescription = "Аудіофайл";
             boolean conversionSuccess = false;
 
-            sendAnswer(fileTypeDescription + " '" + originalFileName + "' отримано. Конвертую в " + targetFormat.toUpperCase() + "...", chatId);
+            String progressId = startProgress(fileTypeDescription + " '" + originalFileName + "' отримано. Конвертую в " + targetFormat.toUpperCase() + "...", chatId);
 
             try {
                 ResponseEntity<byte[]> response = converterClientService.convertAudioFile(fileResource, originalFileName, targetFormat, converterApiEndpoint);
@@ -938,11 +1044,13 @@ public class MainServiceImpl implements MainService {
                     // sendAnswer(fileTypeDescription + " '" + originalFileName + "' успішно сконвертовано!", chatId); // Перенесено
                     conversionSuccess = true;
                 } else {
-                    sendAnswer("Помилка конвертації аудіофайлу. Статус: " + response.getStatusCode(), chatId);
+                    updateProgress(progressId, "Помилка конвертації аудіофайлу. Статус: " + response.getStatusCode(), chatId);
                 }
             } catch (Exception e) {
-                sendAnswer("Критична помилка сервісу конвертації аудіофайлу.", chatId);
+                updateProgress(progressId, "Критична помилка сервісу конвертації аудіофайлу.", chatId);
             } finally {
+                // У разі помилки залишається її текст
+                finishProgress(progressId, conversionSuccess ? "Готово" : null, chatId);
                 if (conversionSuccess) {
                     sendPostConversionMessage(chatId);
                 }
@@ -972,16 +1080,40 @@ public class MainServiceImpl implements MainService {
         producerService.producerAnswer(sendMessage);
     }
 
+    // Telegram приймає одну відповідь на callback: знімаємо "годинник" ще до завантаження файлу,
+    // а подальший хід і помилки показує повідомлення прогресу
+    private String acknowledgeConversion(CallbackQuery callbackQuery, String progressText, Long chatId) {
+        producerService.producerAnswerCallbackQuery(callbackQuery.getId(), "Обробка...");
+        return startProgress(progressText, chatId);
+    }
+
+    // Статуси довгої операції показуються в одному повідомленні: dispatcher редагує його замість нових sendMessage
+    private String startProgress(String text, Long chatId) {
+        String operationId = UUID.randomUUID().toString();
+        sendProgress(operationId, text, false, chatId);
+        return operationId;
+    }
+
+    private void updateProgress(String operationId, String text, Long chatId) {
+        sendProgress(operationId, text, false, chatId);
+    }
+
+    // text == null - операція завершена, останній статус залишається без змін
+    private void finishProgress(String operationId, String text, Long chatId) {
+        sendProgress(operationId, text, true, chatId);
+    }
+
+    private void sendProgress(String operationId, String text, boolean done, Long chatId) {
+        producerService.producerProgress(ProgressMessageDTO.builder()
+                .chatId(chatId.toString())
+                .operationId(operationId)
+                .text(text)
+                .done(done)
+                .build());
+    }
+
     private String help() {
-        return "Доступні команди:\n"
-//                + "/start - початок роботи\n"
-                + "/help - допомога\n"
-                + "/cancel - скасувати поточну дію\n"
-                + "/registration - реєстрація\n"
-//                + "/resend_email - повторно надіслати лист активації\n"
-                + "/convert_file - увімкнути режим конвертації файлів\n"
-                + "/create_archive - увімкнути режим архіватора\n"
-                + "/generate_link - перейти в режим файлообмінника (вимкнути конвертацію)";
+        return BotReplies.HELP;
     }
 
     @Transactional
@@ -992,19 +1124,16 @@ public class MainServiceImpl implements MainService {
 
         if (AWAITING_FILE_FOR_CONVERSION.equals(currentState)) {
             previousStateInfo = "Режим конвертації скасовано. ";
-            // Можливо, тут також потрібно очищати pendingFileId, pendingOriginalFileName, pendingFileType
-            // appUser.setPendingFileId(null);
-            // appUser.setPendingOriginalFileName(null);
-            // appUser.setPendingFileType(null);
         } else if (ARCHIVING_FILES.equals(currentState)) { // <--- ДОДАНО ЦЕЙ ELSE IF
             clearArchiveSession(appUser.getId()); // Викликаємо очищення сесії архівування
             previousStateInfo = "Сесію створення архіву скасовано. ";
             log.info("User {} (appUserId={}) cancelled archiving session.", appUser.getTelegramUserId(), appUser.getId());
         }
         // Інші стани, які можуть потребувати очищення, можна додати тут
+        sessionStore.clearPendingConversion(appUser.getId()); // Файл, що чекав на вибір формату, більше не потрібен
 
         appUser.setState(BASIC_STATE); // Встановлюємо базовий стан
-        appUserDAO.save(appUser);
+        appUserCache.save(appUser);
         log.info("User {} (appUserId={}) cancelled current operation. State set to BASIC_STATE", appUser.getTelegramUserId(), appUser.getId());
         return previousStateInfo + "Ви повернулися в основний режим. Можете надсилати файли для обміну або використати команди: /convert_file, /create_archive ";
     }
@@ -1016,8 +1145,8 @@ public class MainServiceImpl implements MainService {
             log.warn("Update {} does not contain a message.", update.getUpdateId());
             if (update.getCallbackQuery() != null) {
                 User telegramUser = update.getCallbackQuery().getFrom();
-                return appUserDAO.findByTelegramUserId(telegramUser.getId())
-                        .orElseGet(() -> appUserDAO.save(AppUser.builder()
+                return appUserCache.findByTelegramUserId(telegramUser.getId())
+                        .orElseGet(() -> appUserCache.save(AppUser.builder()
                                 .telegramUserId(telegramUser.getId())
                                 .userName(telegramUser.getUserName())
                                 .firstName(telegramUser.getFirstName())
@@ -1033,8 +1162,8 @@ public class MainServiceImpl implements MainService {
             log.warn("Message {} does not contain a user.", message.getMessageId());
             return null;
         }
-        return appUserDAO.findByTelegramUserId(telegramUser.getId())
-                .orElseGet(() -> appUserDAO.save(AppUser.builder()
+        return appUserCache.findByTelegramUserId(telegramUser.getId())
+                .orElseGet(() -> appUserCache.save(AppUser.builder()
                         .telegramUserId(telegramUser.getId())
                         .userName(telegramUser.getUserName())
                         .firstName(telegramUser.getFirstName())
@@ -1044,9 +1173,14 @@ public class MainServiceImpl implements MainService {
                         .build()));
     }
 
+    @Override
+    public void processAnsweredCommand(Update update) {
+        saveRawData(update);
+        findOrSaveAppUser(update);
+    }
+
     private void saveRawData(Update update) {
-        if (update == null || update.getUpdateId() == null) return;
-        rawDataDAO.save(RawData.builder().event(update).build());
+        rawDataService.record(update);
     }
 
     private void sendFormatSelectionMessage(Long chatId, String fileTypeContext) { // fileTypeContext поки не використовуємо, але може знадобитися
@@ -1118,18 +1252,18 @@ public class MainServiceImpl implements MainService {
                 return;
             }
 
-            List<ArchiveFileDetailDTO> filesToArchive = archivingSessions.get(appUser.getId());
+            List<ArchiveFileDetailDTO> filesToArchive = sessionStore.getArchiveFiles(appUser.getId());
             if (filesToArchive == null || filesToArchive.isEmpty()) {
                 sendAnswer("Немає файлів для архівування. Спочатку надішліть файли.", chatId);
                 // Очищаємо сесію (хоча вона і так порожня) і повертаємо в базовий стан
                 clearArchiveSession(appUser.getId());
                 appUser.setState(BASIC_STATE);
-                appUserDAO.save(appUser);
+                appUserCache.save(appUser);
                 producerService.producerAnswerCallbackQuery(callbackQuery.getId(), "Файли не знайдено");
             } else {
                 // Тут буде логіка створення архіву (Крок 3)
                 log.info("Користувач appUserId={} натиснув 'Створити архів'. Кількість файлів: {}", appUser.getId(), filesToArchive.size());
-                sendAnswer("Розпочинаю створення архіву з " + filesToArchive.size() + " файлів...", chatId);
+                String progressId = startProgress("Розпочинаю створення архіву з " + filesToArchive.size() + " файлів...", chatId);
                 producerService.producerAnswerCallbackQuery(callbackQuery.getId(), "Обробка..."); // Повідомлення для кнопки, що процес почався
 
                 try {
@@ -1138,7 +1272,7 @@ public class MainServiceImpl implements MainService {
 
                     if (archiveBytes == null || archiveBytes.length == 0) {
                         log.error("Згенерований архів порожній або сталася помилка при його створенні для користувача appUserId={}", appUser.getId());
-                        sendAnswer("Не вдалося створити архів або він порожній. Спробуйте ще раз.", chatId);
+                        finishProgress(progressId, "Не вдалося створити архів або він порожній. Спробуйте ще раз.", chatId);
                         // Не очищаємо сесію, щоб користувач міг спробувати знову або скасувати
                         return;
                     }
@@ -1161,11 +1295,12 @@ public class MainServiceImpl implements MainService {
                                 .caption("Ваш архів '" + archiveFileName + "' готовий!\n\nВи в основному режимі, надішліть файл для генерації посилань або виконайте команду /help для перегляду команд!")
                                 .build();
                         producerService.producerSendDocumentDTO(archiveDto); // Метод producerService має обробляти DTO з байтами
+                        finishProgress(progressId, "Архів з " + filesToArchive.size() + " файлів створено.", chatId);
                         log.info("Запит на надсилання архіву '{}' (байти) для користувача appUserId={} відправлено до ProducerService.",
                                 archiveFileName, appUser.getId());
                     }  else {
                         log.error("Не вдалося зберегти згенерований архів '{}' в БД для користувача appUserId={}", archiveFileName, appUser.getId());
-                        sendAnswer("Не вдалося зберегти архів після створення. Будь ласка, повідомте адміністратора.", chatId);
+                        finishProgress(progressId, "Не вдалося зберегти архів після створення. Будь ласка, повідомте адміністратора.", chatId);
                         // Сесію тут можна очистити, оскільки архів створено, але не збережено - це проблема на боці сервера.
                         // Або залишити, щоб користувач не втратив файли для наступної спроби, якщо проблема тимчасова.
                         // Поки що не будемо очищати сесію, щоб уникнути втрати файлів.
@@ -1174,27 +1309,27 @@ public class MainServiceImpl implements MainService {
 
                 } catch (IOException e) {
                     log.error("Помилка IOException при створенні архіву для користувача appUserId={}: {}", appUser.getId(), e.getMessage(), e);
-                    sendAnswer("Сталася помилка під час створення архіву. Спробуйте пізніше або зверніться до підтримки.", chatId);
+                    finishProgress(progressId, "Сталася помилка під час створення архіву. Спробуйте пізніше або зверніться до підтримки.", chatId);
                     // Не очищаємо сесію, щоб користувач міг спробувати знову
                     return;
                 } catch (IllegalArgumentException e) { // Для помилок валідації в saveGeneratedArchive
                     log.error("Помилка IllegalArgumentException при збереженні архіву для appUserId={}: {}", appUser.getId(), e.getMessage(), e);
-                    sendAnswer("Помилка даних при спробі зберегти архів. Будь ласка, повідомте адміністратора.", chatId);
+                    finishProgress(progressId, "Помилка даних при спробі зберегти архів. Будь ласка, повідомте адміністратора.", chatId);
                     return;
                 } catch (UploadFileException e) { // Для помилок збереження, які кидає saveGeneratedArchive
                     log.error("Помилка UploadFileException при збереженні архіву для appUserId={}: {}", appUser.getId(), e.getMessage(), e);
-                    sendAnswer("Не вдалося зберегти архів через помилку: " + e.getMessage() + ". Спробуйте пізніше.", chatId);
+                    finishProgress(progressId, "Не вдалося зберегти архів через помилку: " + e.getMessage() + ". Спробуйте пізніше.", chatId);
                     return;
                 } catch (Exception e) { // Загальна помилка
                     log.error("Непередбачена помилка при створенні або збереженні архіву для appUserId={}: {}", appUser.getId(), e.getMessage(), e);
-                    sendAnswer("Сталася непередбачена помилка. Спробуйте пізніше або зверніться до підтримки.", chatId);
+                    finishProgress(progressId, "Сталася непередбачена помилка. Спробуйте пізніше або зверніться до підтримки.", chatId);
                     // Не очищаємо сесію
                     return;
                 } finally {
                 }
                 clearArchiveSession(appUser.getId());
                 appUser.setState(BASIC_STATE);
-                appUserDAO.save(appUser);
+                appUserCache.save(appUser);
                 log.info("Сесію архівування для appUserId={} очищено, стан встановлено на BASIC_STATE після операції створення архіву.", appUser.getId());
 
             }
@@ -1221,7 +1356,7 @@ public class MainServiceImpl implements MainService {
 
         clearArchiveSession(appUser.getId()); // Очищаємо сесію
         appUser.setState(BASIC_STATE);      // Повертаємо в базовий стан
-        appUserDAO.save(appUser);
+        appUserCache.save(appUser);
         log.info("Користувач appUserId={} скасував сесію архівування через кнопку.", appUser.getId());
 
         sendAnswer("Створення архіву скасовано. Ви повернулися в основний режим.\n\nНадішліть файл для генерації посилання, або виконайте команду /help.", chatId);
@@ -1265,13 +1400,11 @@ public class MainServiceImpl implements MainService {
             log.info("User {} cancelled format selection.", appUser.getTelegramUserId());
 
             // Очищаємо збережені дані про файл
-            appUser.setPendingFileId(null);
-            appUser.setPendingOriginalFileName(null);
-            appUser.setPendingFileType(null);
+            sessionStore.clearPendingConversion(appUser.getId());
 
             // Повертаємо користувача в стан очікування файлу для конвертації
             appUser.setState(AWAITING_FILE_FOR_CONVERSION);
-            appUserDAO.save(appUser);
+            appUserCache.save(appUser);
 
             sendAnswer("Вибір формату скасовано. Можете надіслати інший файл для конвертації, або використати /cancel для виходу з режиму конвертації.", chatId);
             if (callbackQuery != null && callbackQuery.getId() != null) {
@@ -1281,31 +1414,33 @@ public class MainServiceImpl implements MainService {
         }
             // Перевіряємо, чи користувач у правильному стані і чи дані колбеку відповідають нашим очікуванням
         if (AWAITING_TARGET_FORMAT_SELECTION.equals(appUser.getState())) {
-            String pendingFileType = appUser.getPendingFileType(); // Отримуємо тип файлу
+            SessionStore.PendingConversion pendingConversion = sessionStore.getPendingConversion(appUser.getId())
+                    .orElse(new SessionStore.PendingConversion(null, null, null)); // Файл, що чекає на вибір формату
+            String pendingFileType = pendingConversion.fileType(); // Отримуємо тип файлу
 
             if (callbackData.startsWith("format_select_video_") && "video".equals(pendingFileType)) {
                 // ОБРОБКА ВИБОРУ ФОРМАТУ ДЛЯ ВІДЕО
                 String targetFormat = callbackData.substring("format_select_video_".length());
                 log.info("User selected VIDEO format '{}'. Pending file type: {}", targetFormat, pendingFileType);
 
-                String fileIdForConversion = appUser.getPendingFileId();
-                String originalFileNameForConversion = appUser.getPendingOriginalFileName();
+                String fileIdForConversion = pendingConversion.fileId();
+                String originalFileNameForConversion = pendingConversion.originalFileName();
 
                 if (fileIdForConversion == null || originalFileNameForConversion == null) {
                     // ... (обробка помилки: файл не знайдено, як для фото, але можна уточнити повідомлення для відео)
                     log.error("Pending VIDEO file ID or original name is null for user {}...", appUser.getTelegramUserId());
                     sendAnswer("Помилка: не можу знайти ВІДЕО, яке ви хотіли конвертувати...", chatId);
-                    appUser.setPendingFileId(null);
-                    appUser.setPendingOriginalFileName(null);
-                    appUser.setPendingFileType(null); // Очищаємо тип
+                    sessionStore.clearPendingConversion(appUser.getId());
                     appUser.setState(AWAITING_FILE_FOR_CONVERSION);
-                    appUserDAO.save(appUser);
+                    appUserCache.save(appUser);
                     if (callbackQuery != null && callbackQuery.getId() != null) {
                         producerService.producerAnswerCallbackQuery(callbackQuery.getId(), "Помилка: відео не знайдено");
                     }
                     return;
                 }
 
+                String progressId = acknowledgeConversion(callbackQuery, "Розпочинаю конвертацію ВІДЕО '" + originalFileNameForConversion + "' у формат " + targetFormat.toUpperCase() + "...", chatId);
+
                 byte[] fileData;
                 try {
                     fileData = fileService.downloadFileAsByteArray(fileIdForConversion);
@@ -1314,15 +1449,10 @@ public class MainServiceImpl implements MainService {
                 } catch (Exception e) {
                     // ... (обробка помилки завантаження, як для фото, але з уточненим повідомленням)
                     log.error("Failed to download pending VIDEO file_id {} for conversion: {}", fileIdForConversion, e.getMessage(), e);
-                    sendAnswer("Не вдалося завантажити ВІДЕО для конвертації...", chatId);
-                    appUser.setPendingFileId(null);
-                    appUser.setPendingOriginalFileName(null);
-                    appUser.setPendingFileType(null);
+                    finishProgress(progressId, "Не вдалося завантажити ВІДЕО для конвертації...", chatId);
+                    sessionStore.clearPendingConversion(appUser.getId());
                     appUser.setState(AWAITING_FILE_FOR_CONVERSION);
-                    appUserDAO.save(appUser);
-                    if (callbackQuery != null && callbackQuery.getId() != null) {
-                        producerService.producerAnswerCallbackQuery(callbackQuery.getId(), "Помилка завантаження відео");
-                    }
+                    appUserCache.save(appUser);
                     return;
                 }
 
@@ -1334,8 +1464,6 @@ public class MainServiceImpl implements MainService {
                 String videoConverterApiEndpoint = "/api/video/convert"; // Переконайся, що цей ендпоінт приймає 'format'
                 boolean videoConversionSuccess = false;
 
-                sendAnswer("Розпочинаю конвертацію ВІДЕО '" + originalFileNameForConversion + "' у формат " + targetFormat.toUpperCase() + "...", chatId);
-
                 try {
                     ResponseEntity<byte[]> response = converterClientService.convertVideoFile(videoFileResource, originalFileNameForConversion, targetFormat, videoConverterApiEndpoint);
 
@@ -1359,29 +1487,24 @@ public class MainServiceImpl implements MainService {
                     } else {
                         log.error("VIDEO conversion failed for '{}' to {}. Status: {}.",
                                 originalFileNameForConversion, targetFormat, response.getStatusCode());
-                        sendAnswer("Помилка конвертації ВІДЕО в " + targetFormat.toUpperCase() + ". Статус: " + response.getStatusCode(), chatId);
+                        updateProgress(progressId, "Помилка конвертації ВІДЕО в " + targetFormat.toUpperCase() + ". Статус: " + response.getStatusCode(), chatId);
                     }
                 } catch (Exception e) {
                     log.error("Critical exception during VIDEO conversion for file {}: {}", originalFileNameForConversion, e.getMessage(), e);
-                    sendAnswer("Критична помилка сервісу конвертації для вашого ВІДЕО.", chatId);
+                    updateProgress(progressId, "Критична помилка сервісу конвертації для вашого ВІДЕО.", chatId);
                 } finally {
-                    appUser.setPendingFileId(null);
-                    appUser.setPendingOriginalFileName(null);
-                    appUser.setPendingFileType(null); // Очищаємо тип
+                    sessionStore.clearPendingConversion(appUser.getId());
 
-                    String callbackResponseMessage;
                     if (videoConversionSuccess) {
+                        // Підказка про наступні кроки - окремим повідомленням під файлом, статус лише завершуємо
+                        finishProgress(progressId, "Готово", chatId);
                         sendPostConversionMessage(chatId);
-                        callbackResponseMessage = "Відео конвертовано в " + targetFormat.toUpperCase() + "!";
                     } else {
-                        sendAnswer("Не вдалося сконвертувати ВІДЕО. Спробуйте ще раз.", chatId);
-                        callbackResponseMessage = "Помилка конвертації відео";
+                        // Залишається конкретний текст помилки, інакше у вікні злиття його замінив би загальний
+                        finishProgress(progressId, null, chatId);
                     }
                     appUser.setState(AWAITING_FILE_FOR_CONVERSION);
-                    appUserDAO.save(appUser);
-                    if (callbackQuery != null && callbackQuery.getId() != null) {
-                        producerService.producerAnswerCallbackQuery(callbackQuery.getId(), callbackResponseMessage);
-                    }
+                    appUserCache.save(appUser);
                 }
 
             }else if (callbackData.startsWith("format_select_audio_") && "audio".equals(pendingFileType)) { // <--- НОВА ГІЛКА ДЛЯ АУДІО
@@ -1389,23 +1512,23 @@ public class MainServiceImpl implements MainService {
                 String targetFormat = callbackData.substring("format_select_audio_".length());
                 log.info("User selected AUDIO format '{}'. Pending file type: {}", targetFormat, pendingFileType);
 
-                String fileIdForConversion = appUser.getPendingFileId();
-                String originalFileNameForConversion = appUser.getPendingOriginalFileName();
+                String fileIdForConversion = pendingConversion.fileId();
+                String originalFileNameForConversion = pendingConversion.originalFileName();
 
                 if (fileIdForConversion == null || originalFileNameForConversion == null) {
                     log.error("Pending AUDIO file ID or original name is null for user {}...", appUser.getTelegramUserId());
                     sendAnswer("Помилка: не можу знайти АУДІОФАЙЛ, який ви хотіли конвертувати...", chatId);
-                    appUser.setPendingFileId(null);
-                    appUser.setPendingOriginalFileName(null);
-                    appUser.setPendingFileType(null);
+                    sessionStore.clearPendingConversion(appUser.getId());
                     appUser.setState(AWAITING_FILE_FOR_CONVERSION);
-                    appUserDAO.save(appUser);
+                    appUserCache.save(appUser);
                     if (callbackQuery != null && callbackQuery.getId() != null) {
                         producerService.producerAnswerCallbackQuery(callbackQuery.getId(), "Помилка: аудіофайл не знайдено");
                     }
                     return;
                 }
 
+                String progressId = acknowledgeConversion(callbackQuery, "Розпочинаю конвертацію АУДІО '" + originalFileNameForConversion + "' у формат " + targetFormat.toUpperCase() + "...", chatId);
+
                 byte[] fileData;
                 try {
                     fileData = fileService.downloadFileAsByteArray(fileIdForConversion);
@@ -1413,15 +1536,10 @@ public class MainServiceImpl implements MainService {
                     log.info("Successfully downloaded pending AUDIO for conversion: FileID='{}', OriginalName='{}', Size={}", fileIdForConversion, originalFileNameForConversion, fileData.length);
                 } catch (Exception e) {
                     log.error("Failed to download pending AUDIO file_id {} for conversion: {}", fileIdForConversion, e.getMessage(), e);
-                    sendAnswer("Не вдалося завантажити АУДІОФАЙЛ для конвертації...", chatId);
-                    appUser.setPendingFileId(null);
-                    appUser.setPendingOriginalFileName(null);
-                    appUser.setPendingFileType(null);
+                    finishProgress(progressId, "Не вдалося завантажити АУДІОФАЙЛ для конвертації...", chatId);
+                    sessionStore.clearPendingConversion(appUser.getId());
                     appUser.setState(AWAITING_FILE_FOR_CONVERSION);
-                    appUserDAO.save(appUser);
-                    if (callbackQuery != null && callbackQuery.getId() != null) {
-                        producerService.producerAnswerCallbackQuery(callbackQuery.getId(), "Помилка завантаження аудіо");
-                    }
+                    appUserCache.save(appUser);
                     return;
                 }
 
@@ -1433,8 +1551,6 @@ public class MainServiceImpl implements MainService {
                 String audioConverterApiEndpoint = "/api/audio/convert"; // Твій ендпоінт для аудіо
                 boolean audioConversionSuccess = false;
 
-                sendAnswer("Розпочинаю конвертацію АУДІО '" + originalFileNameForConversion + "' у формат " + targetFormat.toUpperCase() + "...", chatId);
-
                 try {
                     // Переконайся, що convertAudioFile в ConverterClientServiceImpl
                     // та AudioConverterController в converter-service приймають targetFormat
@@ -1460,46 +1576,38 @@ public class MainServiceImpl implements MainService {
                     } else {
                         log.error("AUDIO conversion failed for '{}' to {}. Status: {}.",
                                 originalFileNameForConversion, targetFormat, response.getStatusCode());
-                        sendAnswer("Помилка конвертації АУДІО в " + targetFormat.toUpperCase() + ". Статус: " + response.getStatusCode(), chatId);
+                        updateProgress(progressId, "Помилка конвертації АУДІО в " + targetFormat.toUpperCase() + ". Статус: " + response.getStatusCode(), chatId);
                     }
                 } catch (Exception e) {
                     log.error("Critical exception during AUDIO conversion for file {}: {}", originalFileNameForConversion, e.getMessage(), e);
-                    sendAnswer("Критична помилка сервісу конвертації для вашого АУДІО.", chatId);
+                    updateProgress(progressId, "Критична помилка сервісу конвертації для вашого АУДІО.", chatId);
                 } finally {
-                    appUser.setPendingFileId(null);
-                    appUser.setPendingOriginalFileName(null);
-                    appUser.setPendingFileType(null); // Очищаємо тип
+                    sessionStore.clearPendingConversion(appUser.getId());
 
-                    String callbackResponseMessage;
                     if (audioConversionSuccess) {
+                        finishProgress(progressId, "Готово", chatId);
                         sendPostConversionMessage(chatId);
-                        callbackResponseMessage = "Аудіо конвертовано в " + targetFormat.toUpperCase() + "!";
                     } else {
-                        sendAnswer("Не вдалося сконвертувати АУДІО. Спробуйте ще раз.", chatId);
-                        callbackResponseMessage = "Помилка конвертації аудіо";
+                        finishProgress(progressId, null, chatId);
                     }
                     appUser.setState(AWAITING_FILE_FOR_CONVERSION);
-                    appUserDAO.save(appUser);
-                    if (callbackQuery != null && callbackQuery.getId() != null) {
-                        producerService.producerAnswerCallbackQuery(callbackQuery.getId(), callbackResponseMessage);
-                    }
+                    appUserCache.save(appUser);
                 }
             }  else if (callbackData.startsWith("format_select_") && "photo".equals(pendingFileType)) {
                 // ОБРОБКА ВИБОРУ ФОРМАТУ ДЛЯ ФОТО (твій існуючий код)
                 String targetFormat = callbackData.substring("format_select_".length());
                 log.info("User selected PHOTO format '{}'. Pending file type: {}", targetFormat, pendingFileType);
 
-                String fileIdForConversion = appUser.getPendingFileId();
-                String originalFileNameForConversion = appUser.getPendingOriginalFileName();
+                String fileIdForConversion = pendingConversion.fileId();
+                String originalFileNameForConversion = pendingConversion.originalFileName();
 
                 if (fileIdForConversion == null || originalFileNameForConversion == null) {
                     log.error("Pending file ID or original name is null for user {} in AWAITING_TARGET_FORMAT_SELECTION state.", appUser.getTelegramUserId());
                     sendAnswer("Помилка: не можу знайти файл, який ви хотіли конвертувати. Будь ласка, надішліть його знову.", chatId);
                     // Скидаємо стан і "завислі" дані
-                    appUser.setPendingFileId(null);
-                    appUser.setPendingOriginalFileName(null);
+                    sessionStore.clearPendingConversion(appUser.getId());
                     appUser.setState(AWAITING_FILE_FOR_CONVERSION); // Повертаємо до стану очікування файлу
-                    appUserDAO.save(appUser);
+                    appUserCache.save(appUser);
                     if (callbackQuery != null && callbackQuery.getId() != null) { // Додано
                         producerService.producerAnswerCallbackQuery(callbackQuery.getId(), "Помилка: файл не знайдено");
                     }
@@ -1509,6 +1617,8 @@ public class MainServiceImpl implements MainService {
                 log.info("User {} selected format '{}' for file_id '{}', original_name '{}'",
                         appUser.getTelegramUserId(), targetFormat, fileIdForConversion, originalFileNameForConversion);
 
+                String progressId = acknowledgeConversion(callbackQuery, "Розпочинаю конвертацію ФОТО '" + originalFileNameForConversion + "' у формат " + targetFormat.toUpperCase() + "...", chatId);
+
                 byte[] fileData;
                 try {
                     // 1. Завантажити fileData за fileIdForConversion
@@ -1520,17 +1630,11 @@ public class MainServiceImpl implements MainService {
                             fileIdForConversion, originalFileNameForConversion, fileData.length);
                 } catch (Exception e) {
                     log.error("Failed to download pending file_id {} for conversion: {}", fileIdForConversion, e.getMessage(), e);
-                    sendAnswer("Не вдалося завантажити файл для конвертації. Спробуйте надіслати його знову.", chatId);
+                    finishProgress(progressId, "Не вдалося завантажити файл для конвертації. Спробуйте надіслати його знову.", chatId);
                     // Скидаємо стан і "завислі" дані
-                    appUser.setPendingFileId(null);
-                    appUser.setPendingOriginalFileName(null);
-                    appUser.setState(AWAITING_FILE_FOR_CONVERSION);
-                    appUserDAO.save(appUser);
+                    sessionStore.clearPendingConversion(appUser.getId());
                     appUser.setState(AWAITING_FILE_FOR_CONVERSION);
-                    appUserDAO.save(appUser);
-                    if (callbackQuery != null && callbackQuery.getId() != null) { // Додано
-                        producerService.producerAnswerCallbackQuery(callbackQuery.getId(), "Помилка завантаження файлу");
-                    }
+                    appUserCache.save(appUser);
                     return;
                 }
 
@@ -1547,8 +1651,6 @@ public class MainServiceImpl implements MainService {
                 String photoConverterApiEndpoint = "/api/convert";
                 boolean photoConversionSuccess = false;
 
-                sendAnswer("Розпочинаю конвертацію ФОТО '" + originalFileNameForConversion + "' у формат " + targetFormat.toUpperCase() + "...", chatId);
-
                 try {
                     // 3. Викликати converterClientService.convertFile(...) з новим targetFormat
                     ResponseEntity<byte[]> response = converterClientService.convertFile(fileResource, originalFileNameForConversion, targetFormat, photoConverterApiEndpoint);
@@ -1577,60 +1679,50 @@ public class MainServiceImpl implements MainService {
                         log.error("PHOTO conversion failed for '{}' to {}. Status: {}. Response body present: {}",
                                 originalFileNameForConversion, targetFormat,
                                 response.getStatusCode(), response.getBody() != null);
-                        sendAnswer("Помилка конвертації ФОТО в " + targetFormat.toUpperCase() + ". Статус: " + response.getStatusCode(), chatId);
+                        updateProgress(progressId, "Помилка конвертації ФОТО в " + targetFormat.toUpperCase() + ". Статус: " + response.getStatusCode(), chatId);
                     }
                 } catch (Exception e) {
                     log.error("Critical exception during PHOTO conversion call for file {}: {}", originalFileNameForConversion, e.getMessage(), e);
-                    sendAnswer("Критична помилка сервісу конвертації для вашого ФОТО.", chatId);
+                    updateProgress(progressId, "Критична помилка сервісу конвертації для вашого ФОТО.", chatId);
                 } finally {
                     // 6. Очистити pending поля
-                    appUser.setPendingFileId(null);
-                    appUser.setPendingOriginalFileName(null);
-                    appUser.setPendingFileType(null); // <--- ОЧИЩЕННЯ ТИПУ ФАЙЛУ ТУТ!
+                    sessionStore.clearPendingConversion(appUser.getId());
 
-                    String callbackResponseMessage;
                     if (photoConversionSuccess) {
-                        // 5. Надіслати повідомлення sendPostConversionMessage(chatId); у разі успіху
+                        // 5. Завершити статус; підказка про наступні кроки йде окремим повідомленням під файлом
+                        finishProgress(progressId, "Готово", chatId);
                         sendPostConversionMessage(chatId);
-                        callbackResponseMessage = "Фото конвертовано в " + targetFormat.toUpperCase() + "!";
                     } else {
-                        sendAnswer("Не вдалося сконвертувати ФОТО. Спробуйте ще раз або оберіть інший файл/формат.", chatId);
-                        callbackResponseMessage = "Помилка конвертації фото";
+                        finishProgress(progressId, null, chatId);
                     }
 
                     // 7. Встановити стан (завжди повертаємо в очікування нового файлу для конвертації в цьому режимі)
                     appUser.setState(AWAITING_FILE_FOR_CONVERSION);
                     // 8. Зберегти appUser
-                    appUserDAO.save(appUser);
-
-                    // 9. "Відповісти" на CallbackQuery
-                    if (callbackQuery != null && callbackQuery.getId() != null) {
-                        producerService.producerAnswerCallbackQuery(callbackQuery.getId(), callbackResponseMessage);
-                    }
+                    appUserCache.save(appUser);
                 }
-                // Не забудь очистити appUser.setPendingFileType(null); у блоці finally для фото також.
 
             } else if (callbackData.startsWith("format_select_doc_") && "document".equals(pendingFileType)) {
                 String targetFormat = callbackData.substring("format_select_doc_".length());
                 log.info("User {} selected DOCUMENT format '{}'. Pending file type: {}", appUser.getTelegramUserId(), targetFormat, pendingFileType);
 
-                String fileIdForConversion = appUser.getPendingFileId();
-                String originalFileNameForConversion = appUser.getPendingOriginalFileName();
+                String fileIdForConversion = pendingConversion.fileId();
+                String originalFileNameForConversion = pendingConversion.originalFileName();
 
                 if (fileIdForConversion == null || originalFileNameForConversion == null) {
                     log.error("Pending DOCUMENT file ID or original name is null for user {}...", appUser.getTelegramUserId());
                     sendAnswer("Помилка: не можу знайти документ, який ви хотіли конвертувати. Будь ласка, надішліть його знову.", chatId);
-                    appUser.setPendingFileId(null);
-                    appUser.setPendingOriginalFileName(null);
-                    appUser.setPendingFileType(null);
+                    sessionStore.clearPendingConversion(appUser.getId());
                     appUser.setState(AWAITING_FILE_FOR_CONVERSION);
-                    appUserDAO.save(appUser);
+                    appUserCache.save(appUser);
                     if (callbackQuery != null && callbackQuery.getId() != null) {
                         producerService.producerAnswerCallbackQuery(callbackQuery.getId(), "Помилка: документ не знайдено");
                     }
                     return;
                 }
 
+                String progressId = acknowledgeConversion(callbackQuery, "Файл '" + originalFileNameForConversion + "' отримано. Розпочинаю конвертацію у формат " + targetFormat.toUpperCase() + "...", chatId);
+
                 byte[] fileData;
                 try {
                     // Завантажуємо файл тут, перед конвертацією
@@ -1639,15 +1731,10 @@ public class MainServiceImpl implements MainService {
                     log.info("Successfully downloaded pending DOCUMENT for conversion: FileID='{}', OriginalName='{}', Size={}", fileIdForConversion, originalFileNameForConversion, fileData.length);
                 } catch (Exception e) {
                     log.error("Failed to download pending DOCUMENT file_id {} for conversion: {}", fileIdForConversion, e.getMessage(), e);
-                    sendAnswer("Не вдалося завантажити документ для конвертації. Спробуйте надіслати його знову.", chatId);
-                    appUser.setPendingFileId(null);
-                    appUser.setPendingOriginalFileName(null);
-                    appUser.setPendingFileType(null);
+                    finishProgress(progressId, "Не вдалося завантажити документ для конвертації. Спробуйте надіслати його знову.", chatId);
+                    sessionStore.clearPendingConversion(appUser.getId());
                     appUser.setState(AWAITING_FILE_FOR_CONVERSION);
-                    appUserDAO.save(appUser);
-                    if (callbackQuery != null && callbackQuery.getId() != null) {
-                        producerService.producerAnswerCallbackQuery(callbackQuery.getId(), "Помилка завантаження документа");
-                    }
+                    appUserCache.save(appUser);
                     return;
                 }
 
@@ -1658,9 +1745,6 @@ public class MainServiceImpl implements MainService {
 
                 String docConverterApiEndpoint = "/api/document/convert"; // Використовуємо існуючий ендпоінт
                 boolean docConversionSuccess = false;
-                String callbackResponseMessage = "Помилка конвертації документа"; // За замовчуванням
-
-                sendAnswer("Файл '" + originalFileNameForConversion + "' отримано. Розпочинаю конвертацію у формат " + targetFormat.toUpperCase() + "...", chatId);
 
                 try {
                     ResponseEntity<byte[]> response = converterClientService.convertFile(docFileResource, originalFileNameForConversion, targetFormat, docConverterApiEndpoint);
@@ -1679,33 +1763,26 @@ public class MainServiceImpl implements MainService {
                                 .caption("Сконвертований документ: " + originalFileNameForConversion + " -> " + targetFormat.toUpperCase())
                                 .build());
                         docConversionSuccess = true;
-                        callbackResponseMessage = "Документ конвертовано в " + targetFormat.toUpperCase() + "!";
                         log.info("Successfully converted and sent DOCUMENT '{}' (original: '{}') to format '{}' for user {}",
                                 convertedDocFileName, originalFileNameForConversion, targetFormat, appUser.getTelegramUserId());
                     } else {
                         log.error("DOCUMENT conversion failed for '{}' to {}. Status: {}. Response body present: {}",
                                 originalFileNameForConversion, targetFormat,
                                 response.getStatusCode(), response.getBody() != null);
-                        sendAnswer("Помилка конвертації документа в " + targetFormat.toUpperCase() + ". Статус: " + response.getStatusCode(), chatId);
-                        callbackResponseMessage = "Помилка конвертації: " + response.getStatusCode();
+                        updateProgress(progressId, "Помилка конвертації документа в " + targetFormat.toUpperCase() + ". Статус: " + response.getStatusCode(), chatId);
                     }
                 } catch (Exception e) {
                     log.error("Critical exception during DOCUMENT conversion for file {}: {}", originalFileNameForConversion, e.getMessage(), e);
-                    sendAnswer("Критична помилка сервісу конвертації для вашого документа.", chatId);
-                    callbackResponseMessage = "Критична помилка сервісу";
+                    updateProgress(progressId, "Критична помилка сервісу конвертації для вашого документа.", chatId);
                 } finally {
-                    appUser.setPendingFileId(null);
-                    appUser.setPendingOriginalFileName(null);
-                    appUser.setPendingFileType(null);
+                    sessionStore.clearPendingConversion(appUser.getId());
                     appUser.setState(AWAITING_FILE_FOR_CONVERSION); // Повертаємо до очікування нового файлу
-                    appUserDAO.save(appUser);
+                    appUserCache.save(appUser);
 
+                    // Підказка про наступні кроки - окремим повідомленням під файлом; у разі помилки залишається її текст
+                    finishProgress(progressId, docConversionSuccess ? "Готово" : null, chatId);
                     if (docConversionSuccess) {
-                        sendPostConversionMessage(chatId); // Повідомлення про успішну конвертацію та що робити далі
-                    }
-                    // Відповідаємо на callback query в будь-якому випадку
-                    if (callbackQuery != null && callbackQuery.getId() != null) {
-                        producerService.producerAnswerCallbackQuery(callbackQuery.getId(), callbackResponseMessage);
+                        sendPostConversionMessage(chatId);
                     }
                 }
                 // КІНЕЦЬ НОВОГО БЛОКУ ДЛЯ ДОКУМЕНТІВ else {
@@ -1713,11 +1790,9 @@ public class MainServiceImpl implements MainService {
                 log.warn("Mismatch or unknown callback_data: '{}' with pendingFileType: '{}' for user {} in state {}",
                         callbackData, pendingFileType, appUser.getTelegramUserId(), appUser.getState());
 //                sendAnswer("Сталася незрозуміла помилка з вибором формату. Спробуйте знову.", chatId);
-                appUser.setPendingFileId(null);
-                appUser.setPendingOriginalFileName(null);
-                appUser.setPendingFileType(null);
+                sessionStore.clearPendingConversion(appUser.getId());
                 appUser.setState(AWAITING_FILE_FOR_CONVERSION); // Або BASIC_STATE
-                appUserDAO.save(appUser);
+                appUserCache.save(appUser);
                 if (callbackQuery != null && callbackQuery.getId() != null) {
                     producerService.producerAnswerCallbackQuery(callbackQuery.getId(), "Помилка обробки");
                 }
@@ -1731,9 +1806,7 @@ public class MainServiceImpl implements MainService {
             sendAnswer("Здається, сталася помилка зі станом. Будь ласка, спробуйте надіслати файл для конвертації знову.", chatId);
             // Можна скинути стан до базового або до очікування файлу
             appUser.setState(BASIC_STATE);
-            appUserDAO.save(appUser);
-            appUser.setState(BASIC_STATE);
-            appUserDAO.save(appUser);
+            appUserCache.save(appUser);
             if (callbackQuery != null && callbackQuery.getId() != null) { // Додано
                 producerService.producerAnswerCallbackQuery(callbackQuery.getId(), "Помилка стану");
             }
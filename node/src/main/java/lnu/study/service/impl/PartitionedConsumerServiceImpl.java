@@ -0,0 +1,108 @@
+package lnu.study.service.impl;
+
+import lnu.study.service.MainService;
+import lnu.study.service.SqlStatsService;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListenerConfigurer;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistrar;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.List;
+
+import static lnu.study.model.RabbitQueue.*;
+
+/**
+ * Споживач для rabbit.routing.mode=PARTITIONED: по одному слухачу на розділ,
+ * тому оновлення одного чату обробляються послідовно і в порядку надходження.
+ */
+@Service
+@Log4j2
+@ConditionalOnProperty(name = "rabbit.routing.mode", havingValue = "PARTITIONED")
+public class PartitionedConsumerServiceImpl implements RabbitListenerConfigurer {
+
+    private final MainService mainService;
+    private final SqlStatsService sqlStatsService;
+    private final MessageConverter messageConverter;
+    private final int partitions;
+
+    public PartitionedConsumerServiceImpl(MainService mainService,
+                                          SqlStatsService sqlStatsService,
+                                          MessageConverter messageConverter,
+                                          @Value("${rabbit.partitions.count:4}") int partitions) {
+        this.mainService = mainService;
+        this.sqlStatsService = sqlStatsService;
+        this.messageConverter = messageConverter;
+        this.partitions = partitions;
+    }
+
+    @Override
+    public void configureRabbitListeners(RabbitListenerEndpointRegistrar registrar) {
+        for (int i = 0; i < partitions; i++) {
+            SimpleRabbitListenerEndpoint endpoint = new SimpleRabbitListenerEndpoint();
+            endpoint.setId("update-partition-" + i);
+            endpoint.setQueueNames(partitionQueue(i));
+            // Один потік на розділ - інакше порядок у межах чату не гарантується
+            endpoint.setConcurrency("1");
+            endpoint.setMessageListener(this::consume);
+            registrar.registerEndpoint(endpoint);
+        }
+        log.info("Registered {} partitioned update listeners", partitions);
+    }
+
+    private void consume(Message message) {
+        String type = message.getMessageProperties().getHeader(UPDATE_TYPE_HEADER);
+        if (MEDIA_GROUP_UPDATE.equals(type)) {
+            consumeMediaGroup(message);
+            return;
+        }
+        Update update = (Update) messageConverter.fromMessage(message);
+        log.debug("NODE: Update {} of type {} is received from queue {}",
+                update.getUpdateId(), type, message.getMessageProperties().getConsumerQueue());
+        // Dispatcher уже відповів на команду у відповіді вебхука
+        boolean answeredInline = Boolean.TRUE.equals(message.getMessageProperties().getHeader(ANSWERED_INLINE_HEADER));
+        try {
+            if (answeredInline) {
+                sqlStatsService.measure(type, () -> mainService.processAnsweredCommand(update));
+                return;
+            }
+            sqlStatsService.measure(type, () -> dispatch(type, update));
+        } catch (Exception e) {
+            log.error("Error processing partitioned update_id={} of type {}: {}", update.getUpdateId(), type, e.getMessage(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void consumeMediaGroup(Message message) {
+        // Тип елементів списку задає заголовок __ContentTypeId__, виставлений dispatcher
+        List<Update> updates = (List<Update>) messageConverter.fromMessage(message);
+        log.debug("NODE: Media group of {} updates is received from queue {}",
+                updates.size(), message.getMessageProperties().getConsumerQueue());
+        try {
+            sqlStatsService.measure(MEDIA_GROUP_UPDATE, () -> mainService.processMediaGroup(updates));
+        } catch (Exception e) {
+            log.error("Error processing partitioned media group: {}", e.getMessage(), e);
+        }
+    }
+
+    private void dispatch(String type, Update update) {
+        if (type == null) {
+            log.warn("Update {} has no {} header, skipping", update.getUpdateId(), UPDATE_TYPE_HEADER);
+            return;
+        }
+        switch (type) {
+            case TEXT_MESSAGE_UPDATE -> mainService.processTextMessage(update);
+            case DOC_MESSAGE_UPDATE -> mainService.processDocMessage(update);
+            case PHOTO_MESSAGE_UPDATE -> mainService.processPhotoMessage(update);
+            case VOICE_MESSAGE_UPDATE -> mainService.processVoiceMessage(update);
+            case CALLBACK_QUERY_UPDATE -> mainService.processCallbackQuery(update);
+            case AUDIO_MESSAGE_UPDATE -> mainService.processAudioFileMessage(update);
+            default -> log.warn("Unsupported update type {} for update {}", type, update.getUpdateId());
+        }
+    }
+}
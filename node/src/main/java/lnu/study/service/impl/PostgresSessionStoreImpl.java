@@ -0,0 +1,209 @@
+package lnu.study.service.impl;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lnu.study.dto.ArchiveFileDetailDTO;
+import lnu.study.service.SessionStore;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сесії в Postgres (session.store=POSTGRES): спільні для всіх реплік node і переживають рестарт.
+ * Рядок conversation_session на користувача тримає термін дії, лічильник файлів архіву і файл для конвертації;
+ * файли архіву - окремі рядки, тож додавання файлу - це одна вставка, а не перезапис усього списку.
+ * Запити виконуються в транзакції обробки оновлення разом зі зміною стану користувача.
+ */
+@Log4j2
+@Service
+@ConditionalOnProperty(name = "session.store", havingValue = "POSTGRES", matchIfMissing = true)
+public class PostgresSessionStoreImpl implements SessionStore {
+
+    private static final long LOCK_KEY = 0x73657373696F6EL;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final long ttlSeconds;
+    private final int maxArchiveFiles;
+    private final long sweepIntervalSeconds;
+    private final ScheduledExecutorService sweeper;
+
+    public PostgresSessionStoreImpl(JdbcTemplate jdbcTemplate,
+                                    TransactionTemplate transactionTemplate,
+                                    @Value("${session.ttl-minutes:360}") long ttlMinutes,
+                                    @Value("${session.archive.max-files:50}") int maxArchiveFiles,
+                                    @Value("${session.sweep-interval-seconds:300}") long sweepIntervalSeconds) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.ttlSeconds = TimeUnit.MINUTES.toSeconds(ttlMinutes);
+        this.maxArchiveFiles = maxArchiveFiles;
+        this.sweepIntervalSeconds = sweepIntervalSeconds;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate.executeWithoutResult(status -> {
+            // Репліки, що стартують одночасно, створюють таблиці по черзі
+            jdbcTemplate.query("SELECT pg_advisory_xact_lock(?)", (RowCallbackHandler) rs -> {
+            }, LOCK_KEY);
+            jdbcTemplate.execute("""
+                    CREATE TABLE IF NOT EXISTS conversation_session (
+                        app_user_id bigint PRIMARY KEY,
+                        archive_files integer,
+                        pending_file_id text,
+                        pending_original_file_name text,
+                        pending_file_type varchar(16),
+                        expires_at timestamptz NOT NULL
+                    )
+                    """);
+            jdbcTemplate.execute("""
+                    CREATE TABLE IF NOT EXISTS conversation_archive_file (
+                        id bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+                        app_user_id bigint NOT NULL REFERENCES conversation_session (app_user_id) ON DELETE CASCADE,
+                        telegram_file_id text NOT NULL,
+                        original_file_name text,
+                        file_type varchar(16)
+                    )
+                    """);
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS conversation_archive_file_user_idx ON conversation_archive_file (app_user_id, id)");
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS conversation_session_expires_idx ON conversation_session (expires_at)");
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, sweepIntervalSeconds, sweepIntervalSeconds, TimeUnit.SECONDS);
+        log.info("Postgres session store: ttl {} min, up to {} files per archive",
+                TimeUnit.SECONDS.toMinutes(ttlSeconds), maxArchiveFiles);
+    }
+
+    @Override
+    public void startArchive(Long appUserId) {
+        deleteIfExpired(appUserId);
+        jdbcTemplate.update("DELETE FROM conversation_archive_file WHERE app_user_id = ?", appUserId);
+        jdbcTemplate.update("""
+                INSERT INTO conversation_session (app_user_id, archive_files, expires_at)
+                VALUES (?, 0, now() + ? * interval '1 second')
+                ON CONFLICT (app_user_id) DO UPDATE SET archive_files = 0, expires_at = EXCLUDED.expires_at
+                """, appUserId, ttlSeconds);
+    }
+
+    @Override
+    public boolean appendArchiveFile(Long appUserId, ArchiveFileDetailDTO file) {
+        deleteIfExpired(appUserId);
+        // Лічильник у рядку сесії перевіряє ліміт без підрахунку файлів і блокує рядок до кінця транзакції
+        int updated = jdbcTemplate.update("""
+                INSERT INTO conversation_session (app_user_id, archive_files, expires_at)
+                VALUES (?, 1, now() + ? * interval '1 second')
+                ON CONFLICT (app_user_id) DO UPDATE
+                SET archive_files = COALESCE(conversation_session.archive_files, 0) + 1, expires_at = EXCLUDED.expires_at
+                WHERE COALESCE(conversation_session.archive_files, 0) < ?
+                """, appUserId, ttlSeconds, maxArchiveFiles);
+        if (updated == 0) {
+            return false;
+        }
+        jdbcTemplate.update("""
+                INSERT INTO conversation_archive_file (app_user_id, telegram_file_id, original_file_name, file_type)
+                VALUES (?, ?, ?, ?)
+                """, appUserId, file.getTelegramFileId(), file.getOriginalFileName(), file.getTelegramFileType());
+        return true;
+    }
+
+    @Override
+    public List<ArchiveFileDetailDTO> getArchiveFiles(Long appUserId) {
+        return jdbcTemplate.query("""
+                SELECT f.telegram_file_id, f.original_file_name, f.file_type
+                FROM conversation_archive_file f
+                JOIN conversation_session s ON s.app_user_id = f.app_user_id
+                WHERE f.app_user_id = ? AND s.expires_at > now()
+                ORDER BY f.id
+                """, (rs, rowNum) -> new ArchiveFileDetailDTO(
+                rs.getString("telegram_file_id"), rs.getString("original_file_name"), rs.getString("file_type")), appUserId);
+    }
+
+    @Override
+    public int clearArchive(Long appUserId) {
+        int removed = jdbcTemplate.update("DELETE FROM conversation_archive_file WHERE app_user_id = ?", appUserId);
+        int sessions = jdbcTemplate.update(
+                "UPDATE conversation_session SET archive_files = NULL WHERE app_user_id = ? AND archive_files IS NOT NULL", appUserId);
+        deleteIfEmpty(appUserId);
+        return sessions > 0 ? removed : -1;
+    }
+
+    @Override
+    public void setPendingConversion(Long appUserId, PendingConversion pendingConversion) {
+        // Інакше upsert продовжив би прострочену сесію разом зі старими файлами архіву
+        deleteIfExpired(appUserId);
+        jdbcTemplate.update("""
+                INSERT INTO conversation_session (app_user_id, pending_file_id, pending_original_file_name, pending_file_type, expires_at)
+                VALUES (?, ?, ?, ?, now() + ? * interval '1 second')
+                ON CONFLICT (app_user_id) DO UPDATE
+                SET pending_file_id = EXCLUDED.pending_file_id,
+                    pending_original_file_name = EXCLUDED.pending_original_file_name,
+                    pending_file_type = EXCLUDED.pending_file_type,
+                    expires_at = EXCLUDED.expires_at
+                """, appUserId, pendingConversion.fileId(), pendingConversion.originalFileName(),
+                pendingConversion.fileType(), ttlSeconds);
+    }
+
+    @Override
+    public Optional<PendingConversion> getPendingConversion(Long appUserId) {
+        return jdbcTemplate.query("""
+                SELECT pending_file_id, pending_original_file_name, pending_file_type
+                FROM conversation_session
+                WHERE app_user_id = ? AND expires_at > now() AND pending_file_id IS NOT NULL
+                """, (rs, rowNum) -> new PendingConversion(rs.getString("pending_file_id"),
+                rs.getString("pending_original_file_name"), rs.getString("pending_file_type")), appUserId)
+                .stream().findFirst();
+    }
+
+    @Override
+    public void clearPendingConversion(Long appUserId) {
+        jdbcTemplate.update("""
+                UPDATE conversation_session
+                SET pending_file_id = NULL, pending_original_file_name = NULL, pending_file_type = NULL
+                WHERE app_user_id = ?
+                """, appUserId);
+        deleteIfEmpty(appUserId);
+    }
+
+    // Прострочена сесія, яку ще не прибрав sweep, не повинна "воскреснути" разом зі старими файлами
+    private void deleteIfExpired(Long appUserId) {
+        jdbcTemplate.update("DELETE FROM conversation_session WHERE app_user_id = ? AND expires_at <= now()", appUserId);
+    }
+
+    private void deleteIfEmpty(Long appUserId) {
+        jdbcTemplate.update("""
+                DELETE FROM conversation_session
+                WHERE app_user_id = ? AND archive_files IS NULL AND pending_file_id IS NULL
+                """, appUserId);
+    }
+
+    private void sweep() {
+        try {
+            // Файли архіву видаляються каскадно
+            int removed = jdbcTemplate.update("DELETE FROM conversation_session WHERE expires_at <= now()");
+            if (removed > 0) {
+                log.info("Expired {} abandoned sessions", removed);
+            }
+        } catch (Exception e) {
+            log.error("Session sweep failed: {}", e.getMessage(), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+}
@@ -3,68 +3,145 @@ package lnu.study.service.impl;
 import lnu.study.dto.AudioToSendDTO;
 import lnu.study.dto.DocumentToSendDTO;
 import lnu.study.dto.PhotoToSendDTO;
+import lnu.study.dto.ProgressMessageDTO;
 import lnu.study.dto.VideoToSendDTO;
 import lnu.study.service.ProducerService;
+import lnu.study.utils.BlobStore;
+import lnu.study.utils.UrlSigner;
 import lombok.extern.log4j.Log4j2;
+import org.springframework.amqp.core.MessagePostProcessor;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
 import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Set;
 import static lnu.study.model.RabbitQueue.ANSWER_CALLBACK_QUEUE;
 
 import static lnu.study.model.RabbitQueue.ANSWER_MESSAGE;
+import static lnu.study.model.RabbitQueue.BROADCAST_MESSAGE;
+import static lnu.study.model.RabbitQueue.CHAT_ID_HEADER;
 
 @Log4j2
 @Service
 public class ProducerServiceImpl implements ProducerService {
+    // Ліміти Bot API для файлів, переданих посиланням: фото до 5 МБ, решта до 20 МБ
+    private static final long PHOTO_URL_LIMIT_BYTES = 5L * 1024 * 1024;
+    private static final long FILE_URL_LIMIT_BYTES = 20L * 1024 * 1024;
+    // sendDocument за посиланням працює лише для PDF, ZIP і GIF; аудіо - MP3 і M4A, відео - MP4
+    private static final Set<String> DOCUMENT_URL_EXTENSIONS = Set.of("pdf", "zip", "gif");
+    private static final Set<String> AUDIO_URL_EXTENSIONS = Set.of("mp3", "m4a");
+    private static final Set<String> VIDEO_URL_EXTENSIONS = Set.of("mp4");
+
     private final RabbitTemplate rabbitTemplate;
+    private final BlobStore blobStore;
+    private final boolean claimCheckEnabled;
+    private final int claimCheckThresholdBytes;
+    private final UrlSigner urlSigner;
+    private final boolean urlDeliveryEnabled;
+    private final int urlDeliveryMinBytes;
+    private final long urlDeliveryTtlSeconds;
+    private final String urlDeliveryBaseUrl;
+    private final boolean progressMessagesEnabled;
 
-    public ProducerServiceImpl(RabbitTemplate rabbitTemplate) {
+    public ProducerServiceImpl(RabbitTemplate rabbitTemplate,
+                               BlobStore blobStore,
+                               @Value("${answers.claim-check.enabled:false}") boolean claimCheckEnabled,
+                               @Value("${answers.claim-check.threshold-bytes:262144}") int claimCheckThresholdBytes,
+                               UrlSigner urlSigner,
+                               @Value("${answers.url-delivery.enabled:false}") boolean urlDeliveryEnabled,
+                               @Value("${answers.url-delivery.min-bytes:65536}") int urlDeliveryMinBytes,
+                               @Value("${answers.url-delivery.ttl-seconds:900}") long urlDeliveryTtlSeconds,
+                               @Value("${answers.url-delivery.base-url:${link.address}}") String urlDeliveryBaseUrl,
+                               @Value("${answers.progress-messages.enabled:true}") boolean progressMessagesEnabled) {
         this.rabbitTemplate = rabbitTemplate;
+        this.blobStore = blobStore;
+        this.claimCheckEnabled = claimCheckEnabled;
+        this.claimCheckThresholdBytes = claimCheckThresholdBytes;
+        this.urlSigner = urlSigner;
+        this.urlDeliveryEnabled = urlDeliveryEnabled && urlSigner.isConfigured();
+        this.urlDeliveryMinBytes = urlDeliveryMinBytes;
+        this.urlDeliveryTtlSeconds = urlDeliveryTtlSeconds;
+        this.urlDeliveryBaseUrl = urlDeliveryBaseUrl.replaceAll("/+$", "");
+        this.progressMessagesEnabled = progressMessagesEnabled;
+        if (urlDeliveryEnabled && !urlSigner.isConfigured()) {
+            log.warn("URL delivery is enabled but answers.url-delivery.secret is empty, media will be uploaded by dispatcher");
+        }
     }
 
     @Override
     public void producerAnswer(SendMessage sendMessage) {
         // Відправляємо в ту саму чергу, що й раніше
-        rabbitTemplate.convertAndSend(ANSWER_MESSAGE, sendMessage);
+        rabbitTemplate.convertAndSend(ANSWER_MESSAGE, sendMessage, withChatId(sendMessage.getChatId()));
     }
 
     @Override
     public void producerSendDocument(SendDocument sendDocument) {
         // Відправляємо в ту саму чергу ANSWER_MESSAGE
         // RabbitMQ (з Jackson message converter) має впоратися з серіалізацією SendDocument
-        rabbitTemplate.convertAndSend(ANSWER_MESSAGE, sendDocument);
+        rabbitTemplate.convertAndSend(ANSWER_MESSAGE, sendDocument, withChatId(sendDocument.getChatId()));
     }
 
     @Override
     public void producerSendPhoto(SendPhoto sendPhoto) {
         // Відправляємо в ту саму чергу ANSWER_MESSAGE
-        rabbitTemplate.convertAndSend(ANSWER_MESSAGE, sendPhoto);
+        rabbitTemplate.convertAndSend(ANSWER_MESSAGE, sendPhoto, withChatId(sendPhoto.getChatId()));
     }
 
     @Override
     public void producerSendPhotoDTO(PhotoToSendDTO photoToSendDTO) {
         // Відправляємо DTO в ту саму чергу ANSWER_MESSAGE.
         // RabbitMQ (з Jackson message converter) має серіалізувати PhotoToSendDTO.
-        rabbitTemplate.convertAndSend(ANSWER_MESSAGE, photoToSendDTO);
+        CheckIn checkIn = checkIn(photoToSendDTO.getPhotoBytes(), photoToSendDTO.getFileName(), PHOTO_URL_LIMIT_BYTES, null);
+        if (checkIn != null) {
+            photoToSendDTO.setBlobRef(checkIn.blobRef());
+            photoToSendDTO.setFileUrl(checkIn.fileUrl());
+            photoToSendDTO.setPhotoBytes(null);
+        }
+        rabbitTemplate.convertAndSend(ANSWER_MESSAGE, photoToSendDTO, withChatId(photoToSendDTO.getChatId()));
     }
 
     @Override
     public void producerSendDocumentDTO(DocumentToSendDTO documentToSendDTO) {
-        rabbitTemplate.convertAndSend(ANSWER_MESSAGE, documentToSendDTO);
+        CheckIn checkIn = checkIn(documentToSendDTO.getDocumentBytes(), documentToSendDTO.getFileName(),
+                FILE_URL_LIMIT_BYTES, DOCUMENT_URL_EXTENSIONS);
+        if (checkIn != null) {
+            documentToSendDTO.setBlobRef(checkIn.blobRef());
+            documentToSendDTO.setFileUrl(checkIn.fileUrl());
+            documentToSendDTO.setDocumentBytes(null);
+        }
+        rabbitTemplate.convertAndSend(ANSWER_MESSAGE, documentToSendDTO, withChatId(documentToSendDTO.getChatId()));
     }
 
     @Override
     public void producerSendAudioDTO(AudioToSendDTO audioToSendDTO) {
-
-        rabbitTemplate.convertAndSend(ANSWER_MESSAGE, audioToSendDTO);
+        CheckIn checkIn = checkIn(audioToSendDTO.getAudioBytes(), audioToSendDTO.getFileName(),
+                FILE_URL_LIMIT_BYTES, AUDIO_URL_EXTENSIONS);
+        if (checkIn != null) {
+            audioToSendDTO.setBlobRef(checkIn.blobRef());
+            audioToSendDTO.setFileUrl(checkIn.fileUrl());
+            audioToSendDTO.setAudioBytes(null);
+        }
+        rabbitTemplate.convertAndSend(ANSWER_MESSAGE, audioToSendDTO, withChatId(audioToSendDTO.getChatId()));
     }
 
     @Override
     public void producerSendVideoDTO(VideoToSendDTO dto) {
-        rabbitTemplate.convertAndSend(ANSWER_MESSAGE, dto);
+        CheckIn checkIn = checkIn(dto.getVideoBytes(), dto.getFileName(), FILE_URL_LIMIT_BYTES, VIDEO_URL_EXTENSIONS);
+        if (checkIn != null) {
+            dto.setBlobRef(checkIn.blobRef());
+            dto.setFileUrl(checkIn.fileUrl());
+            dto.setVideoBytes(null);
+        }
+        rabbitTemplate.convertAndSend(ANSWER_MESSAGE, dto, withChatId(dto.getChatId()));
     }
 
     @Override
@@ -81,4 +158,79 @@ public class ProducerServiceImpl implements ProducerService {
         log.debug("Producing AnswerCallbackQuery (id: {}, text: '{}') to queue '{}'", callbackQueryId, text, ANSWER_CALLBACK_QUEUE);
         rabbitTemplate.convertAndSend(ANSWER_CALLBACK_QUEUE, answer);
     }
-}
\ No newline at end of file
+
+    @Override
+    public void producerProgress(ProgressMessageDTO progressMessageDTO) {
+        if (!progressMessagesEnabled) {
+            // Без редагування на боці dispatcher кожен статус - окреме повідомлення, як раніше
+            if (progressMessageDTO.getText() == null) {
+                return;
+            }
+            SendMessage sendMessage = new SendMessage();
+            sendMessage.setChatId(progressMessageDTO.getChatId());
+            sendMessage.setText(progressMessageDTO.getText());
+            producerAnswer(sendMessage);
+            return;
+        }
+        rabbitTemplate.convertAndSend(ANSWER_MESSAGE, progressMessageDTO, withChatId(progressMessageDTO.getChatId()));
+    }
+
+    @Override
+    public void producerBroadcast(SendMessage sendMessage) {
+        rabbitTemplate.convertAndSend(BROADCAST_MESSAGE, sendMessage, withChatId(sendMessage.getChatId()));
+    }
+
+    // Claim-check: великий файл кладемо в спільне сховище, а через RabbitMQ передаємо лише посилання.
+    // Якщо файл підходить під обмеження Bot API, додаємо підписане посилання rest-service,
+    // і Telegram завантажує файл сам, без multipart-запиту з dispatcher
+    private CheckIn checkIn(byte[] content, String fileName, long urlLimitBytes, Set<String> urlExtensions) {
+        if (content == null) {
+            return null;
+        }
+        boolean byUrl = isUrlDeliverable(content.length, fileName, urlLimitBytes, urlExtensions);
+        if (!byUrl && (!claimCheckEnabled || content.length < claimCheckThresholdBytes)) {
+            return null;
+        }
+        try {
+            String blobRef = blobStore.put(content);
+            log.debug("Stored {} bytes in blob store as {}", content.length, blobRef);
+            return new CheckIn(blobRef, byUrl ? signedUrl(blobRef, fileName) : null);
+        } catch (IOException e) {
+            log.warn("Failed to store {} bytes in blob store, sending them inline: {}", content.length, e.getMessage());
+            return null;
+        }
+    }
+
+    private boolean isUrlDeliverable(int length, String fileName, long urlLimitBytes, Set<String> urlExtensions) {
+        if (!urlDeliveryEnabled || fileName == null || length < urlDeliveryMinBytes || length > urlLimitBytes) {
+            return false;
+        }
+        if (urlExtensions == null) {
+            return true;
+        }
+        int dot = fileName.lastIndexOf('.');
+        return dot >= 0 && urlExtensions.contains(fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private String signedUrl(String blobRef, String fileName) {
+        long expires = Instant.now().getEpochSecond() + urlDeliveryTtlSeconds;
+        // Telegram визначає ім'я файлу за останнім сегментом шляху
+        return urlDeliveryBaseUrl + "/file/get-blob/" + blobRef + "/"
+                + URLEncoder.encode(fileName, StandardCharsets.UTF_8).replace("+", "%20")
+                + "?expires=" + expires
+                + "&sig=" + urlSigner.sign(blobRef, expires);
+    }
+
+    private record CheckIn(String blobRef, String fileUrl) {
+    }
+
+    // Dispatcher за цим заголовком обирає смугу обробки, не розбираючи тіло повідомлення
+    private MessagePostProcessor withChatId(String chatId) {
+        return message -> {
+            if (chatId != null) {
+                message.getMessageProperties().setHeader(CHAT_ID_HEADER, chatId);
+            }
+            return message;
+        };
+    }
+}
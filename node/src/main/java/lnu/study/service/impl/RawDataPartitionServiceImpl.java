@@ -0,0 +1,251 @@
+package lnu.study.service.impl;
+
+import jakarta.annotation.PreDestroy;
+import lnu.study.service.RawDataPartitionService;
+import lnu.study.service.enums.PartitionInterval;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Розділення raw_data за created_at (PARTITION BY RANGE): кожен період - окрема таблиця,
+ * тож старі дані видаляються DROP TABLE розділу, без DELETE рядків і подальшого vacuum.
+ * Звичайну таблицю, створену Hibernate, при першому запуску перетворює на розділену:
+ * вона стає розділом з усіма наявними рядками. Репліки node узгоджуються через advisory lock.
+ */
+@Log4j2
+@Service
+public class RawDataPartitionServiceImpl implements RawDataPartitionService {
+
+    private static final long LOCK_KEY = 0x7261775F64617461L;
+    private static final String LEGACY_PARTITION = "raw_data_legacy";
+    private static final String DEFAULT_PARTITION = "raw_data_default";
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd").withZone(ZoneOffset.UTC);
+    // Верхня межа кожного розділу; для розділу DEFAULT - null
+    private static final String PARTITIONS_SQL = """
+            SELECT c.relname AS name,
+                   (regexp_match(pg_get_expr(c.relpartbound, c.oid), 'TO \\(''([^'']+)''\\)'))[1]::timestamptz AS upper_bound
+            FROM pg_inherits i
+            JOIN pg_class c ON c.oid = i.inhrelid
+            WHERE i.inhparent = 'raw_data'::regclass
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final PartitionInterval interval;
+    private final int premake;
+    private final int retentionDays;
+    private final String compression;
+    private final long maintenanceIntervalMinutes;
+    private final ScheduledExecutorService scheduler;
+
+    public RawDataPartitionServiceImpl(JdbcTemplate jdbcTemplate,
+                                       TransactionTemplate transactionTemplate,
+                                       @Value("${raw-data.partition.enabled:true}") boolean enabled,
+                                       @Value("${raw-data.partition.interval:DAILY}") PartitionInterval interval,
+                                       @Value("${raw-data.partition.premake:3}") int premake,
+                                       @Value("${raw-data.retention-days:30}") int retentionDays,
+                                       @Value("${raw-data.partition.compression:}") String compression,
+                                       @Value("${raw-data.partition.maintenance-interval-minutes:60}") long maintenanceIntervalMinutes) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.interval = interval;
+        this.premake = Math.max(1, premake);
+        this.retentionDays = retentionDays;
+        this.compression = compression.trim();
+        this.maintenanceIntervalMinutes = maintenanceIntervalMinutes;
+        if (!this.compression.isEmpty() && !this.compression.matches("pglz|lz4")) {
+            throw new IllegalArgumentException("raw-data.partition.compression must be pglz or lz4: " + compression);
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "raw-data-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void schedule() {
+        if (!enabled) {
+            log.info("raw_data partitioning disabled");
+            return;
+        }
+        scheduler.scheduleWithFixedDelay(this::maintainSafely, 0, maintenanceIntervalMinutes, TimeUnit.MINUTES);
+        log.info("raw_data partitioning: {} partitions, {} ahead, retention {} days, compression {}",
+                interval, premake, retentionDays > 0 ? retentionDays : "off", compression.isEmpty() ? "default" : compression);
+    }
+
+    private void maintainSafely() {
+        try {
+            maintain();
+        } catch (Exception e) {
+            log.error("raw_data partition maintenance failed, retrying in {} min: {}", maintenanceIntervalMinutes, e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void maintain() {
+        transactionTemplate.executeWithoutResult(status -> {
+            // Блокування до кінця транзакції: DDL виконує лише одна репліка
+            if (!Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT pg_try_advisory_xact_lock(?)", Boolean.class, LOCK_KEY))) {
+                log.debug("raw_data maintenance is running on another replica");
+                return;
+            }
+            List<String> kind = jdbcTemplate.queryForList(
+                    "SELECT c.relkind::text FROM pg_class c WHERE c.oid = to_regclass('raw_data')", String.class);
+            if (kind.isEmpty()) {
+                createPartitionedTable();
+            } else if ("r".equals(kind.get(0))) {
+                convertPlainTable();
+            }
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + DEFAULT_PARTITION + " PARTITION OF raw_data DEFAULT");
+            // Індекси на батьківській таблиці створюються і в кожному розділі
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS raw_data_chat_id_idx ON raw_data (chat_id, created_at)");
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS raw_data_update_type_idx ON raw_data (update_type, created_at)");
+            createUpcomingPartitions();
+            dropExpiredPartitions();
+        });
+    }
+
+    private void createPartitionedTable() {
+        jdbcTemplate.execute("""
+                CREATE TABLE raw_data (
+                    id bigint GENERATED BY DEFAULT AS IDENTITY,
+                    event jsonb,
+                    chat_id bigint,
+                    update_type varchar(16),
+                    created_at timestamptz NOT NULL DEFAULT now(),
+                    PRIMARY KEY (id, created_at)
+                ) PARTITION BY RANGE (created_at)
+                """);
+        if (!compression.isEmpty()) {
+            jdbcTemplate.execute("ALTER TABLE raw_data ALTER COLUMN event SET COMPRESSION " + compression);
+        }
+    }
+
+    private void convertPlainTable() {
+        long started = System.nanoTime();
+        log.warn("Converting plain raw_data table to a partitioned one, this locks raw_data until it completes");
+        List<String> primaryKey = jdbcTemplate.queryForList(
+                "SELECT conname::text FROM pg_constraint WHERE conrelid = 'raw_data'::regclass AND contype = 'p'", String.class);
+        jdbcTemplate.execute("ALTER TABLE raw_data RENAME TO " + LEGACY_PARTITION);
+        for (String constraint : primaryKey) {
+            jdbcTemplate.execute("ALTER TABLE " + LEGACY_PARTITION + " DROP CONSTRAINT \"" + constraint + "\"");
+        }
+        // Ідентифікатори далі видає послідовність батьківської таблиці
+        jdbcTemplate.execute("ALTER TABLE " + LEGACY_PARTITION + " ALTER COLUMN id DROP IDENTITY IF EXISTS");
+        jdbcTemplate.execute("ALTER TABLE " + LEGACY_PARTITION + " ADD COLUMN IF NOT EXISTS chat_id bigint");
+        jdbcTemplate.execute("ALTER TABLE " + LEGACY_PARTITION + " ADD COLUMN IF NOT EXISTS update_type varchar(16)");
+        jdbcTemplate.execute("ALTER TABLE " + LEGACY_PARTITION + " ADD COLUMN IF NOT EXISTS created_at timestamptz DEFAULT now()");
+        jdbcTemplate.execute("UPDATE " + LEGACY_PARTITION + " SET created_at = now() WHERE created_at IS NULL");
+        jdbcTemplate.execute("ALTER TABLE " + LEGACY_PARTITION + " ALTER COLUMN created_at SET NOT NULL");
+        jdbcTemplate.execute("ALTER TABLE " + LEGACY_PARTITION + " ADD PRIMARY KEY (id, created_at)");
+
+        createPartitionedTable();
+        // Старі рядки отримують розділ до кінця поточного періоду; далі - звичайні розділи за періодами
+        OffsetDateTime newest = jdbcTemplate.queryForObject("SELECT max(created_at) FROM " + LEGACY_PARTITION, OffsetDateTime.class);
+        Instant now = Instant.now();
+        Instant latest = newest != null && newest.toInstant().isAfter(now) ? newest.toInstant() : now;
+        Instant bound = interval.next(interval.periodStart(latest));
+        jdbcTemplate.execute("ALTER TABLE raw_data ATTACH PARTITION " + LEGACY_PARTITION
+                + " FOR VALUES FROM (MINVALUE) TO ('" + bound + "')");
+        jdbcTemplate.execute("SELECT setval(pg_get_serial_sequence('raw_data', 'id'), "
+                + "GREATEST((SELECT COALESCE(max(id), 0) FROM " + LEGACY_PARTITION + "), 1))");
+        log.warn("raw_data converted to a partitioned table in {} ms, existing rows kept in {} until {}",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), LEGACY_PARTITION, bound);
+    }
+
+    private void createUpcomingPartitions() {
+        Instant covered = null;
+        for (Partition partition : partitions()) {
+            if (partition.upperBound() != null && (covered == null || partition.upperBound().isAfter(covered))) {
+                covered = partition.upperBound();
+            }
+        }
+        Instant current = interval.periodStart(Instant.now());
+        Instant start = covered != null && covered.isAfter(current) ? covered : current;
+        Instant until = current;
+        for (int i = 0; i < premake; i++) {
+            until = interval.next(until);
+        }
+        for (; start.isBefore(until); start = interval.next(start)) {
+            String name = "raw_data_p" + SUFFIX.format(start);
+            createPartition(name, start, interval.next(start));
+            if (!compression.isEmpty()) {
+                jdbcTemplate.execute("ALTER TABLE " + name + " ALTER COLUMN event SET COMPRESSION " + compression);
+            }
+            log.info("Created raw_data partition {}", name);
+        }
+    }
+
+    private void createPartition(String name, Instant from, Instant to) {
+        String bounds = " PARTITION OF raw_data FOR VALUES FROM ('" + from + "') TO ('" + to + "')";
+        Boolean hasDefaultRows = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM " + DEFAULT_PARTITION + " WHERE created_at >= ? AND created_at < ?)",
+                Boolean.class, from.atOffset(ZoneOffset.UTC), to.atOffset(ZoneOffset.UTC));
+        if (!Boolean.TRUE.equals(hasDefaultRows)) {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + name + bounds);
+            return;
+        }
+        // PostgreSQL не створить розділ, поки в DEFAULT є рядки з його діапазону (наприклад, записані, поки
+        // node не працював): від'єднуємо DEFAULT, створюємо розділ, переносимо рядки і під'єднуємо DEFAULT назад
+        jdbcTemplate.execute("ALTER TABLE raw_data DETACH PARTITION " + DEFAULT_PARTITION);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + name + bounds);
+        int moved = jdbcTemplate.update("WITH moved AS (DELETE FROM " + DEFAULT_PARTITION
+                        + " WHERE created_at >= ? AND created_at < ? RETURNING id, event, chat_id, update_type, created_at) "
+                        + "INSERT INTO " + name + " (id, event, chat_id, update_type, created_at) SELECT * FROM moved",
+                from.atOffset(ZoneOffset.UTC), to.atOffset(ZoneOffset.UTC));
+        jdbcTemplate.execute("ALTER TABLE raw_data ATTACH PARTITION " + DEFAULT_PARTITION + " DEFAULT");
+        log.info("Moved {} rows from {} to new partition {}", moved, DEFAULT_PARTITION, name);
+    }
+
+    private void dropExpiredPartitions() {
+        if (retentionDays <= 0) {
+            return;
+        }
+        Instant cutoff = Instant.now().minus(Duration.ofDays(retentionDays));
+        for (Partition partition : partitions()) {
+            if (partition.upperBound() != null && !partition.upperBound().isAfter(cutoff)) {
+                jdbcTemplate.execute("DROP TABLE \"" + partition.name() + "\"");
+                log.info("Dropped expired raw_data partition {} (data before {})", partition.name(), partition.upperBound());
+            }
+        }
+        // Сюди потрапляють лише рядки поза створеними періодами (наприклад, поки node не працював) - їх мало
+        int deleted = jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + " WHERE created_at < ?",
+                cutoff.atOffset(ZoneOffset.UTC));
+        if (deleted > 0) {
+            log.info("Deleted {} expired rows from {}", deleted, DEFAULT_PARTITION);
+        }
+    }
+
+    private List<Partition> partitions() {
+        return jdbcTemplate.query(PARTITIONS_SQL, (rs, rowNum) -> {
+            OffsetDateTime upperBound = rs.getObject("upper_bound", OffsetDateTime.class);
+            return new Partition(rs.getString("name"), upperBound != null ? upperBound.toInstant() : null);
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private record Partition(String name, Instant upperBound) {
+    }
+}
@@ -0,0 +1,238 @@
+package lnu.study.service.impl;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lnu.study.dao.RawDataDAO;
+import lnu.study.entity.RawData;
+import lnu.study.service.RawDataService;
+import lnu.study.service.enums.RawDataType;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind для raw_data: оновлення складаються в обмежену чергу, а окремий потік
+ * записує їх пакетами JDBC, коли набирається batch-size або минає flush-interval-ms.
+ * Якщо черга переповнена, запис відкидається - це журнал аудиту, а не дані обробки.
+ */
+@Log4j2
+@Service
+public class RawDataServiceImpl implements RawDataService {
+
+    private static final String INSERT_SQL = "INSERT INTO raw_data (event, chat_id, update_type) VALUES (CAST(? AS jsonb), ?, ?)";
+
+    private final RawDataDAO rawDataDAO;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final boolean writeBehind;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long reportIntervalNanos;
+    private final Map<RawDataType, Double> sampling = new EnumMap<>(RawDataType.class);
+    private final BlockingQueue<Update> buffer;
+    private volatile boolean running = true;
+    private Thread writerThread;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong sampledOut = new AtomicLong();
+    // Лічильники нижче змінює лише потік запису
+    private long flushedRows;
+    private long flushedBatches;
+    private long failedRows;
+    private long flushNanosTotal;
+    private long flushNanosMax;
+
+    public RawDataServiceImpl(RawDataDAO rawDataDAO,
+                              JdbcTemplate jdbcTemplate,
+                              ObjectMapper objectMapper,
+                              @Value("${raw-data.write-behind.enabled:true}") boolean writeBehind,
+                              @Value("${raw-data.buffer-capacity:10000}") int capacity,
+                              @Value("${raw-data.batch-size:500}") int batchSize,
+                              @Value("${raw-data.flush-interval-ms:1000}") long flushIntervalMs,
+                              @Value("${raw-data.report-interval-seconds:60}") long reportIntervalSeconds,
+                              @Value("${raw-data.sampling:}") String samplingSpec,
+                              @Value("${raw-data.compact:true}") boolean compact) {
+        this.rawDataDAO = rawDataDAO;
+        this.jdbcTemplate = jdbcTemplate;
+        // Компактний JSON без null і порожніх полів: Update з нього відновлюється той самий, а рядок у кілька разів коротший
+        this.objectMapper = compact
+                ? objectMapper.copy().setSerializationInclusion(JsonInclude.Include.NON_EMPTY)
+                : objectMapper;
+        this.writeBehind = writeBehind;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMs = flushIntervalMs;
+        this.reportIntervalNanos = TimeUnit.SECONDS.toNanos(reportIntervalSeconds);
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        // Формат: ТИП=частка через кому, наприклад "PHOTO=0.1,DOC=0.5"; не вказані типи пишуться всі
+        for (String part : samplingSpec.split(",")) {
+            if (part.isBlank()) {
+                continue;
+            }
+            String[] pair = part.split("=");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Raw data sampling must be TYPE=rate: " + part);
+            }
+            sampling.put(RawDataType.valueOf(pair[0].trim().toUpperCase()), Double.parseDouble(pair[1].trim()));
+        }
+
+        if (writeBehind) {
+            writerThread = new Thread(this::writeLoop, "raw-data-writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+        log.info("Raw data sink: write-behind {}, capacity {}, batch {}, flush interval {} ms, sampling {}, compact {}",
+                writeBehind, capacity, this.batchSize, flushIntervalMs, sampling, compact);
+    }
+
+    @Override
+    public void record(Update update) {
+        if (update == null || update.getUpdateId() == null) {
+            return;
+        }
+        RawDataType type = RawDataType.of(update);
+        Double rate = sampling.get(type);
+        if (rate != null && rate < 1.0 && ThreadLocalRandom.current().nextDouble() >= rate) {
+            sampledOut.incrementAndGet();
+            return;
+        }
+        if (!writeBehind) {
+            rawDataDAO.save(RawData.builder()
+                    .event(update)
+                    .chatId(chatIdOf(update))
+                    .updateType(type.name())
+                    .build());
+            return;
+        }
+        if (!buffer.offer(update)) {
+            // Про втрати повідомляє періодичний звіт, щоб не засмічувати лог на кожне оновлення
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void writeLoop() {
+        List<Update> batch = new ArrayList<>(batchSize);
+        long deadline = 0;
+        long nextReport = System.nanoTime() + reportIntervalNanos;
+        while (running || !buffer.isEmpty() || !batch.isEmpty()) {
+            try {
+                long waitMs = batch.isEmpty() ? flushIntervalMs
+                        : Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+                Update update = buffer.poll(waitMs, TimeUnit.MILLISECONDS);
+                if (update != null) {
+                    if (batch.isEmpty()) {
+                        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                    }
+                    batch.add(update);
+                    buffer.drainTo(batch, batchSize - batch.size());
+                }
+                // Під час зупинки не чекаємо таймера - дописуємо все, що лишилось
+                if (!batch.isEmpty() && (batch.size() >= batchSize || System.nanoTime() >= deadline || !running)) {
+                    flush(batch);
+                    batch.clear();
+                }
+                if (System.nanoTime() >= nextReport) {
+                    report();
+                    nextReport = System.nanoTime() + reportIntervalNanos;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Raw data writer interrupted, {} buffered updates are lost", buffer.size() + batch.size());
+                return;
+            } catch (Exception e) {
+                log.error("Raw data writer failed: {}", e.getMessage(), e);
+                batch.clear();
+            }
+        }
+        report();
+    }
+
+    private void flush(List<Update> batch) {
+        List<Object[]> rows = new ArrayList<>(batch.size());
+        for (Update update : batch) {
+            try {
+                rows.add(new Object[]{objectMapper.writeValueAsString(update), chatIdOf(update), RawDataType.of(update).name()});
+            } catch (JsonProcessingException e) {
+                failedRows++;
+                log.error("Failed to serialize update_id={} for raw data: {}", update.getUpdateId(), e.getMessage());
+            }
+        }
+        long startedAt = System.nanoTime();
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+            flushedRows += rows.size();
+            flushedBatches++;
+        } catch (Exception e) {
+            failedRows += rows.size();
+            log.error("Failed to write batch of {} raw data rows: {}", rows.size(), e.getMessage());
+        }
+        long elapsed = System.nanoTime() - startedAt;
+        flushNanosTotal += elapsed;
+        flushNanosMax = Math.max(flushNanosMax, elapsed);
+        log.debug("Flushed {} raw data rows in {} ms", rows.size(), TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+
+    private Long chatIdOf(Update update) {
+        if (update.hasMessage()) {
+            return update.getMessage().getChatId();
+        }
+        if (update.hasCallbackQuery()) {
+            var callback = update.getCallbackQuery();
+            return callback.getMessage() != null ? callback.getMessage().getChatId() : callback.getFrom().getId();
+        }
+        return null;
+    }
+
+    private void report() {
+        long droppedNow = dropped.getAndSet(0);
+        long sampledOutNow = sampledOut.getAndSet(0);
+        if (flushedBatches == 0 && failedRows == 0 && droppedNow == 0 && sampledOutNow == 0) {
+            return;
+        }
+        double avgMs = flushedBatches > 0 ? TimeUnit.NANOSECONDS.toMicros(flushNanosTotal / flushedBatches) / 1000.0 : 0;
+        String message = String.format("Raw data sink: depth %d, flushed %d rows in %d batches, flush avg %.1f ms, max %d ms, "
+                        + "failed %d, dropped %d, sampled out %d",
+                buffer.size(), flushedRows, flushedBatches, avgMs, TimeUnit.NANOSECONDS.toMillis(flushNanosMax),
+                failedRows, droppedNow, sampledOutNow);
+        if (droppedNow > 0 || failedRows > 0) {
+            log.warn(message);
+        } else {
+            log.info(message);
+        }
+        flushedRows = 0;
+        flushedBatches = 0;
+        failedRows = 0;
+        flushNanosTotal = 0;
+        flushNanosMax = 0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (writerThread == null) {
+            return;
+        }
+        log.info("Flushing {} buffered raw data rows before shutdown", buffer.size());
+        running = false;
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            log.warn("Raw data writer did not finish in time, {} rows left unwritten", buffer.size());
+        }
+    }
+}
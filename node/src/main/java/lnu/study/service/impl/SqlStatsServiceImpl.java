@@ -0,0 +1,94 @@
+package lnu.study.service.impl;
+
+import jakarta.annotation.PreDestroy;
+import lnu.study.service.SqlStatsService;
+import lnu.study.utils.SqlStatementCounter;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Кількість SQL-запитів Hibernate на одне оновлення за типами (JdbcTemplate, зокрема запис raw_data, не враховується).
+ * Середнє і максимум періодично пишуться в лог; перевищення порогу - попередження з update_type,
+ * щоб зростання кількості запитів у обробнику було видно одразу.
+ */
+@Log4j2
+@Service
+public class SqlStatsServiceImpl implements SqlStatsService {
+
+    private final boolean enabled;
+    private final int warnStatements;
+    private final Map<String, TypeStats> stats = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService reporter;
+
+    public SqlStatsServiceImpl(@Value("${sql-stats.enabled:false}") boolean enabled,
+                               @Value("${sql-stats.warn-statements:0}") int warnStatements,
+                               @Value("${sql-stats.report-interval-seconds:300}") long reportIntervalSeconds) {
+        this.enabled = enabled;
+        this.warnStatements = warnStatements;
+        this.reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "sql-stats-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (enabled) {
+            reporter.scheduleAtFixedRate(this::report, reportIntervalSeconds, reportIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void measure(String updateType, Runnable handler) {
+        if (!enabled) {
+            handler.run();
+            return;
+        }
+        SqlStatementCounter.start();
+        int statements;
+        try {
+            handler.run();
+        } finally {
+            statements = SqlStatementCounter.stop();
+            stats.computeIfAbsent(Objects.requireNonNullElse(updateType, "unknown"), type -> new TypeStats()).record(statements);
+        }
+        log.debug("Update of type {} issued {} SQL statements", updateType, statements);
+        if (warnStatements > 0 && statements > warnStatements) {
+            log.warn("Update of type {} issued {} SQL statements, threshold is {}", updateType, statements, warnStatements);
+        }
+    }
+
+    private void report() {
+        stats.forEach((type, typeStats) -> {
+            long updates = typeStats.updates.sum();
+            if (updates > 0) {
+                log.info("SQL per update {}: {} updates, avg {}, max {}", type, updates,
+                        String.format("%.2f", typeStats.statements.sum() / (double) updates), typeStats.max.get());
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reporter.shutdownNow();
+    }
+
+    private static final class TypeStats {
+        private final LongAdder updates = new LongAdder();
+        private final LongAdder statements = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        private void record(int count) {
+            updates.increment();
+            statements.add(count);
+            max.accumulateAndGet(count, Math::max);
+        }
+    }
+}
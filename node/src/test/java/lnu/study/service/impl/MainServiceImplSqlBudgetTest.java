@@ -0,0 +1,240 @@
+package lnu.study.service.impl;
+
+import lnu.study.configuration.SqlStatsConfiguration;
+import lnu.study.dao.AppUserDAO;
+import lnu.study.entity.AppDocument;
+import lnu.study.entity.AppUser;
+import lnu.study.entity.enums.UserState;
+import lnu.study.service.AppUserService;
+import lnu.study.service.ConverterClientService;
+import lnu.study.service.FileService;
+import lnu.study.service.MainService;
+import lnu.study.service.ProducerService;
+import lnu.study.service.RawDataService;
+import lnu.study.service.SessionStore;
+import lnu.study.utils.SqlStatementCounter;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Document;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.PhotoSize;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.User;
+import org.telegram.telegrambots.meta.api.objects.Voice;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static lnu.study.entity.enums.UserState.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * Бюджет SQL-запитів Hibernate на одне оновлення кожного типу: MainServiceImpl з кешем AppUser
+ * проти H2, запити рахує той самий StatementInspector, що й у sql-stats.
+ * Транзакції тесту вимкнені, щоб запис стану користувача (unit of work) відбувався на коміті, як у роботі.
+ */
+@DataJpaTest(properties = {
+        "sql-stats.enabled=true",
+        "session.store=MEMORY",
+        "user-cache.enabled=true"
+})
+@Import({SqlStatsConfiguration.class, MainServiceImpl.class, AppUserCacheImpl.class, InMemorySessionStoreImpl.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class MainServiceImplSqlBudgetTest {
+
+    private static final AtomicLong TELEGRAM_IDS = new AtomicLong(1000);
+
+    @Autowired
+    private MainService mainService;
+    @Autowired
+    private AppUserDAO appUserDAO;
+    @Autowired
+    private SessionStore sessionStore;
+
+    @MockBean
+    private RawDataService rawDataService;
+    @MockBean
+    private ProducerService producerService;
+    @MockBean
+    private FileService fileService;
+    @MockBean
+    private AppUserService appUserService;
+    @MockBean
+    private ConverterClientService converterClientService;
+
+    @Test
+    void newUserIsInsertedOnce() {
+        long telegramId = TELEGRAM_IDS.incrementAndGet();
+
+        // SELECT користувача + INSERT
+        assertThat(statements(() -> mainService.processTextMessage(text(telegramId, "/start")))).isLessThanOrEqualTo(2);
+        assertThat(appUserDAO.findByTelegramUserId(telegramId)).isPresent();
+    }
+
+    @Test
+    void textWithoutStateChangeOnlyReadsUser() {
+        AppUser user = existingUser(BASIC_STATE);
+
+        // SELECT користувача; незмінений стан не записується
+        assertThat(statements(() -> mainService.processTextMessage(text(user.getTelegramUserId(), "/help")))).isLessThanOrEqualTo(1);
+        // Повторне оновлення бере користувача з кешу
+        assertThat(statements(() -> mainService.processTextMessage(text(user.getTelegramUserId(), "/help")))).isZero();
+    }
+
+    @Test
+    void stateChangeIsWrittenOnce() {
+        AppUser user = existingUser(BASIC_STATE);
+
+        // SELECT користувача + UPDATE стану на коміті
+        assertThat(statements(() -> mainService.processTextMessage(text(user.getTelegramUserId(), "/convert_file")))).isLessThanOrEqualTo(2);
+        assertThat(stateOf(user)).isEqualTo(AWAITING_FILE_FOR_CONVERSION);
+    }
+
+    @Test
+    void convertibleDocumentSwitchesStateWithOneWrite() {
+        AppUser user = existingUser(AWAITING_FILE_FOR_CONVERSION);
+        Update update = message(user.getTelegramUserId());
+        Document document = new Document();
+        document.setFileId("doc-file");
+        document.setFileName("report.docx");
+        document.setMimeType("application/vnd.openxmlformats-officedocument.wordprocessingml.document");
+        update.getMessage().setDocument(document);
+
+        assertThat(statements(() -> mainService.processDocMessage(update))).isLessThanOrEqualTo(2);
+        assertThat(stateOf(user)).isEqualTo(AWAITING_TARGET_FORMAT_SELECTION);
+    }
+
+    @Test
+    void documentForLinkOnlyReadsUser() {
+        AppUser user = existingUser(BASIC_STATE);
+        Update update = message(user.getTelegramUserId());
+        Document document = new Document();
+        document.setFileId("doc-file");
+        document.setFileName("notes.txt");
+        update.getMessage().setDocument(document);
+        when(fileService.processDoc(any())).thenReturn(AppDocument.builder().id(1L).docName("notes.txt").build());
+
+        // Запис самого файлу - у FileService; MainServiceImpl лише читає користувача
+        assertThat(statements(() -> mainService.processDocMessage(update))).isLessThanOrEqualTo(1);
+    }
+
+    @Test
+    void photoForArchiveOnlyReadsUser() {
+        AppUser user = existingUser(ARCHIVING_FILES);
+        sessionStore.startArchive(user.getId());
+        Update update = message(user.getTelegramUserId());
+        update.getMessage().setPhoto(List.of(photo("photo-file")));
+
+        assertThat(statements(() -> mainService.processPhotoMessage(update))).isLessThanOrEqualTo(1);
+        assertThat(sessionStore.getArchiveFiles(user.getId())).hasSize(1);
+    }
+
+    @Test
+    void voiceForLinkOnlyReadsUser() {
+        AppUser user = existingUser(BASIC_STATE);
+        Update update = message(user.getTelegramUserId());
+        Voice voice = new Voice();
+        voice.setFileId("voice-file");
+        update.getMessage().setVoice(voice);
+
+        assertThat(statements(() -> mainService.processVoiceMessage(update))).isLessThanOrEqualTo(1);
+    }
+
+    @Test
+    void cancelFormatSelectionCallbackWritesUserOnce() {
+        AppUser user = existingUser(AWAITING_TARGET_FORMAT_SELECTION);
+        Update update = new Update();
+        update.setUpdateId(1);
+        CallbackQuery callbackQuery = new CallbackQuery();
+        callbackQuery.setId("callback-" + user.getTelegramUserId());
+        callbackQuery.setData("cancel_format_selection");
+        callbackQuery.setFrom(telegramUser(user.getTelegramUserId()));
+        callbackQuery.setMessage(message(user.getTelegramUserId()).getMessage());
+        update.setCallbackQuery(callbackQuery);
+
+        // Обробник кілька разів читає і зберігає користувача, але в БД іде один запис
+        assertThat(statements(() -> mainService.processCallbackQuery(update))).isLessThanOrEqualTo(2);
+        assertThat(stateOf(user)).isEqualTo(AWAITING_FILE_FOR_CONVERSION);
+    }
+
+    @Test
+    void mediaGroupCostsTheSameAsOneItem() {
+        AppUser user = existingUser(ARCHIVING_FILES);
+        sessionStore.startArchive(user.getId());
+        List<Update> album = IntStream.range(0, 5).mapToObj(i -> {
+            Update update = message(user.getTelegramUserId());
+            update.getMessage().setPhoto(List.of(photo("album-" + i)));
+            update.getMessage().setMediaGroupId("album");
+            return update;
+        }).toList();
+
+        assertThat(statements(() -> mainService.processMediaGroup(album))).isLessThanOrEqualTo(1);
+        assertThat(sessionStore.getArchiveFiles(user.getId())).hasSize(5);
+    }
+
+    private static int statements(Runnable handler) {
+        SqlStatementCounter.start();
+        handler.run();
+        return SqlStatementCounter.stop();
+    }
+
+    private AppUser existingUser(UserState state) {
+        return appUserDAO.save(AppUser.builder()
+                .telegramUserId(TELEGRAM_IDS.incrementAndGet())
+                .firstName("Test")
+                .isActive(true)
+                .state(state)
+                .build());
+    }
+
+    private UserState stateOf(AppUser user) {
+        return appUserDAO.findById(user.getId()).orElseThrow().getState();
+    }
+
+    private static Update text(long telegramId, String text) {
+        Update update = message(telegramId);
+        update.getMessage().setText(text);
+        return update;
+    }
+
+    private static Update message(long telegramId) {
+        Chat chat = new Chat();
+        chat.setId(telegramId);
+        chat.setType("private");
+        Message message = new Message();
+        message.setMessageId(1);
+        message.setChat(chat);
+        message.setFrom(telegramUser(telegramId));
+        Update update = new Update();
+        update.setUpdateId(1);
+        update.setMessage(message);
+        return update;
+    }
+
+    private static User telegramUser(long telegramId) {
+        User user = new User();
+        user.setId(telegramId);
+        user.setFirstName("Test");
+        user.setIsBot(false);
+        return user;
+    }
+
+    private static PhotoSize photo(String fileId) {
+        PhotoSize photoSize = new PhotoSize();
+        photoSize.setFileId(fileId);
+        photoSize.setFileSize(1024);
+        photoSize.setWidth(100);
+        photoSize.setHeight(100);
+        return photoSize;
+    }
+}
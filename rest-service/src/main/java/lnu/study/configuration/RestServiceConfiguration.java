@@ -1,6 +1,8 @@
 package lnu.study.configuration;
 
+import lnu.study.utils.BlobStore;
 import lnu.study.utils.CryptoTool;
+import lnu.study.utils.UrlSigner;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -10,8 +12,25 @@ public class RestServiceConfiguration {
     @Value("${salt}")
     private String salt;
 
+    @Value("${answers.blob.dir}")
+    private String blobDir;
+
+    @Value("${answers.url-delivery.secret:}")
+    private String urlSecret;
+
     @Bean
     public CryptoTool getCryptoTool() {
         return new CryptoTool(salt);
     }
+
+    // Спільний з node і dispatcher каталог вкладень: звідси Telegram забирає файли за підписаними посиланнями
+    @Bean
+    public BlobStore blobStore() {
+        return new BlobStore(blobDir);
+    }
+
+    @Bean
+    public UrlSigner urlSigner() {
+        return new UrlSigner(urlSecret);
+    }
 }
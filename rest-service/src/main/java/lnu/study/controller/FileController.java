@@ -2,8 +2,12 @@ package lnu.study.controller;
 
 import jakarta.servlet.http.HttpServletResponse;
 import lnu.study.service.FileService;
+import lnu.study.utils.BlobStore;
+import lnu.study.utils.UrlSigner;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -11,17 +15,24 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.util.UriUtils;
 
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
 
 @Log4j2
 @RequestMapping("/file")
 @RestController
 public class FileController {
     private final FileService fileService;
+    private final BlobStore blobStore;
+    private final UrlSigner urlSigner;
 
-    public FileController(FileService fileService) {
+    public FileController(FileService fileService, BlobStore blobStore, UrlSigner urlSigner) {
         this.fileService = fileService;
+        this.blobStore = blobStore;
+        this.urlSigner = urlSigner;
     }
 
     @RequestMapping(method = RequestMethod.GET, value = "get-doc")
@@ -165,4 +176,47 @@ public class FileController {
             }
         }
     }
+
+    // Вкладення з BlobStore за короткоживучим підписаним посиланням: Telegram завантажує файл сам,
+    // тому байти не проходять через RabbitMQ і multipart-запит dispatcher-а. Ім'я в шляху - для Telegram
+    @RequestMapping(method = RequestMethod.GET, value = "get-blob/{ref}/{name:.+}")
+    public void getBlob(@PathVariable("ref") String ref,
+                        @PathVariable("name") String name,
+                        @RequestParam("expires") long expires,
+                        @RequestParam("sig") String signature,
+                        HttpServletResponse response) {
+        if (!urlSigner.verify(ref, expires, signature, Instant.now().getEpochSecond())) {
+            log.warn("Rejected blob request with invalid or expired signature, ref: {}", ref);
+            response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        File file;
+        try {
+            file = blobStore.resolve(ref);
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (!file.isFile()) {
+            // Dispatcher видаляє вкладення після відправки, тож пізні запити отримують 404
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        response.setContentType(MediaTypeFactory.getMediaType(name).orElse(MediaType.APPLICATION_OCTET_STREAM).toString());
+        response.setContentLengthLong(file.length());
+        response.setHeader("Content-Disposition", "attachment; filename*=UTF-8''" + UriUtils.encode(name, StandardCharsets.UTF_8));
+        response.setStatus(HttpServletResponse.SC_OK);
+
+        try {
+            var out = response.getOutputStream();
+            Files.copy(file.toPath(), out);
+            out.close();
+        } catch (IOException e) {
+            log.error("Помилка запису вкладення {} у вихідний потік: {}", ref, e.getMessage(), e);
+            if (!response.isCommitted()) {
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+        }
+    }
 }
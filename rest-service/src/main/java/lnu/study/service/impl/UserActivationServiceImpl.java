@@ -4,19 +4,25 @@ import lnu.study.dao.AppUserDAO;
 import lnu.study.service.UserActivationService;
 import lnu.study.utils.CryptoTool;
 import lombok.extern.log4j.Log4j2;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 @Log4j2
 @Service
 public class UserActivationServiceImpl implements UserActivationService {
     private final AppUserDAO appUserDAO;
     private final CryptoTool cryptoTool;
+    private final JdbcTemplate jdbcTemplate;
 
-    public UserActivationServiceImpl(AppUserDAO appUserDAO, CryptoTool cryptoTool) {
+    public UserActivationServiceImpl(AppUserDAO appUserDAO, CryptoTool cryptoTool, JdbcTemplate jdbcTemplate) {
         this.appUserDAO = appUserDAO;
         this.cryptoTool = cryptoTool;
+        this.jdbcTemplate = jdbcTemplate;
     }
     @Override
+    @Transactional
     public boolean activation(String cryptoUserId) {
         var userId = cryptoTool.idOf(cryptoUserId);
         if (userId == null) {
@@ -28,6 +34,9 @@ public class UserActivationServiceImpl implements UserActivationService {
             var user = optionalAppUser.get();
             user.setActive(true);
             appUserDAO.save(user);
+            // Кеш користувачів у node скидає запис після коміту цієї транзакції
+            jdbcTemplate.query("SELECT pg_notify(?, ?)", (RowCallbackHandler) rs -> {
+            }, AppUserDAO.CHANGE_CHANNEL, "rest-service:" + user.getTelegramUserId());
             return true;
         }
         return false;